@@ -12,6 +12,7 @@ import net.minecraft.world.item.BlockItem;
 import net.minecraft.world.item.CreativeModeTab;
 import net.minecraft.world.item.CreativeModeTabs;
 import net.minecraft.world.item.Item;
+import net.minecraft.world.level.Level;
 import net.minecraft.world.level.block.Block;
 import net.minecraft.world.level.block.Blocks;
 import net.minecraft.world.level.block.state.BlockBehaviour;
@@ -26,7 +27,9 @@ import net.neoforged.fml.event.lifecycle.FMLCommonSetupEvent;
 import net.neoforged.neoforge.common.NeoForge;
 import net.neoforged.neoforge.event.BuildCreativeModeTabContentsEvent;
 import net.neoforged.neoforge.event.RegisterCommandsEvent;
+import net.neoforged.neoforge.event.level.LevelEvent;
 import net.neoforged.neoforge.event.server.ServerStoppingEvent;
+import net.neoforged.neoforge.event.tick.ServerTickEvent;
 import com.example.examplemod.commands.CombatCommands;
 import com.example.examplemod.commands.SpellTestCommand;
 import com.example.examplemod.sounds.CombatSounds;
@@ -104,6 +107,9 @@ public class CombatMetaphysics {
 
         // Register our mod's ModConfigSpec so that FML can create and load the config file for us
         modContainer.registerConfig(ModConfig.Type.COMMON, Config.SPEC);
+        // Apply runtime settings (tick budget etc.) whenever the config is loaded or reloaded
+        modEventBus.addListener(Config::onLoad);
+        modEventBus.addListener(Config::onReload);
     }
 
     private void commonSetup(FMLCommonSetupEvent event) {
@@ -144,6 +150,23 @@ public class CombatMetaphysics {
         LOGGER.info("Combat commands registered for SINGLEPLAYER");
     }
 
+    // Выгрузка уровня - освободить пространственный индекс его измерения
+    @SubscribeEvent
+    public void onLevelUnload(LevelEvent.Unload event) {
+        if (event.getLevel() instanceof Level level && !level.isClientSide()) {
+            com.example.examplemod.core.CombatMagicSystem.getInstance().onLevelUnload(level.dimension());
+        }
+    }
+
+    // Конец тика - снять запрошенные копии секций, снепшоты коллизий этого тика больше не выдаются повторно (только как основа для refresh)
+    @SubscribeEvent
+    public void onServerTickPost(ServerTickEvent.Post event) {
+        for (Level level : event.getServer().getAllLevels()) {
+            com.example.examplemod.core.spells.collision.SectionSnapshotCache.publishRequested(level);
+        }
+        com.example.examplemod.core.spells.collision.CollisionSnapshotPool.getInstance().endTick();
+    }
+
     // Остановка сервера - завершить работу системы магии
     @SubscribeEvent
     public void onServerStopping(ServerStoppingEvent event) {
@@ -1,14 +1,21 @@
 package com.example.examplemod;
 
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import com.example.examplemod.core.CombatMagicSystem;
+import com.example.examplemod.core.formula.FormulaEngine;
+import com.example.examplemod.core.geometry.SpatialIndex;
+import com.example.examplemod.core.threads.MainThreadSynchronizer;
+
 import net.minecraft.core.registries.BuiltInRegistries;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.world.item.Item;
 import net.neoforged.bus.api.SubscribeEvent;
 import net.neoforged.fml.common.EventBusSubscriber;
+import net.neoforged.fml.config.ModConfig;
 import net.neoforged.fml.event.config.ModConfigEvent;
 import net.neoforged.neoforge.common.ModConfigSpec;
 
@@ -34,8 +41,61 @@ public class Config {
             .comment("A list of items to log on common setup.")
             .defineListAllowEmpty("items", List.of("minecraft:iron_ingot"), () -> "", Config::validateItemName);
 
+    // Main Thread budget for MainThreadSynchronizer tasks (out of the 50ms server tick)
+    public static final ModConfigSpec.LongValue MAIN_THREAD_TICK_BUDGET_NANOS = BUILDER
+            .comment("Time budget per server tick for MainThreadSynchronizer tasks, in nanoseconds")
+            .defineInRange("mainThreadTickBudgetNanos", MainThreadSynchronizer.DEFAULT_TICK_BUDGET_NANOS, 1_000_000L, 50_000_000L);
+
+    public static final ModConfigSpec.LongValue MAIN_THREAD_HIGH_PRIORITY_RESERVE_NANOS = BUILDER
+            .comment("Guaranteed time per server tick for HIGH priority tasks even when the budget is exhausted, in nanoseconds")
+            .defineInRange("mainThreadHighPriorityReserveNanos", MainThreadSynchronizer.DEFAULT_HIGH_PRIORITY_RESERVE_NANOS, 0L, 50_000_000L);
+
+    public static final ModConfigSpec.EnumValue<MainThreadSynchronizer.OverflowPolicy> MAIN_THREAD_OVERFLOW_POLICY = BUILDER
+            .comment("What to do when a MainThreadSynchronizer queue is full: REJECT, DROP_OLDEST_LOW or BLOCK")
+            .defineEnum("mainThreadOverflowPolicy", MainThreadSynchronizer.OverflowPolicy.DROP_OLDEST_LOW);
+
+    public static final ModConfigSpec.IntValue FORMULA_CACHE_SIZE = BUILDER
+            .comment("Maximum number of compiled formulas kept in the formula cache")
+            .defineInRange("formulaCacheSize", FormulaEngine.DEFAULT_CACHE_SIZE, 16, 100_000);
+
+    public static final ModConfigSpec.ConfigValue<String> FORMULA_FILE = BUILDER
+            .comment("JSON file with formula overrides and constants, loaded on startup and by /combat formulas reload")
+            .define("formulaFile", "config/combatmetaphysics-formulas.json");
+
+    public static final ModConfigSpec.BooleanValue FORMULA_HOT_RELOAD = BUILDER
+            .comment("Reload the formula file automatically when it changes on disk")
+            .define("formulaHotReload", false);
+
+    public static final ModConfigSpec.EnumValue<SpatialIndex.Type> SPATIAL_INDEX_TYPE = BUILDER
+            .comment("Spatial index structure for spell collisions: GRID (uniform 4-block grid) or AABB_TREE (better for mixed spell sizes)")
+            .defineEnum("spatialIndexType", SpatialIndex.Type.GRID);
+
     static final ModConfigSpec SPEC = BUILDER.build();
 
+    // Push runtime settings to the systems that use them once the config is (re)loaded.
+    // Unloading is deliberately not handled: the spec values cannot be read at that point
+    static void onLoad(final ModConfigEvent.Loading event) {
+        apply(event.getConfig());
+    }
+
+    static void onReload(final ModConfigEvent.Reloading event) {
+        apply(event.getConfig());
+    }
+
+    private static void apply(final ModConfig config) {
+        if (config.getSpec() != SPEC) {
+            return;
+        }
+
+        MainThreadSynchronizer.getInstance().configureTickBudget(
+                MAIN_THREAD_TICK_BUDGET_NANOS.get(),
+                MAIN_THREAD_HIGH_PRIORITY_RESERVE_NANOS.get());
+        MainThreadSynchronizer.getInstance().setOverflowPolicy(MAIN_THREAD_OVERFLOW_POLICY.get());
+        FormulaEngine.getInstance().setCacheMaximumSize(FORMULA_CACHE_SIZE.get());
+        CombatMagicSystem.getInstance().setSpatialIndexType(SPATIAL_INDEX_TYPE.get());
+        FormulaEngine.getInstance().configureFormulaFile(Paths.get(FORMULA_FILE.get()), FORMULA_HOT_RELOAD.get());
+    }
+
     private static boolean validateItemName(final Object obj) {
         return obj instanceof String itemName && BuiltInRegistries.ITEM.containsKey(ResourceLocation.parse(itemName));
     }
@@ -75,6 +75,22 @@ public interface IMainThreadSynchronizer {
      */
     void execute(String taskName, Runnable task, TaskPriority priority);
     
+    /**
+     * Выполнить задачу со слиянием по ключу
+     * Из нескольких ещё не выполненных задач с одинаковым ключом выполнится только последняя
+     * (например "SpellCore_SyncEntity_<id>" - достаточно применить последнее состояние)
+     * 
+     * @param coalescingKey Ключ слияния
+     */
+    void executeCoalesced(String taskName, String coalescingKey, Runnable task, TaskPriority priority);
+    
+    /**
+     * Выполнить задачу, которая теряет смысл через maxAgeMs
+     * Если к этому моменту задача не выполнена, она отбрасывается без выполнения.
+     * HIGH задачи никогда не устаревают
+     */
+    void executeWithDeadline(String taskName, Runnable task, long maxAgeMs, TaskPriority priority);
+    
     // === РАСШИРЕННЫЕ МЕТОДЫ ===
     
     /**
@@ -115,7 +131,7 @@ public interface IMainThreadSynchronizer {
     
     /**
      * Настроить веса планировщика для данного модуля
-     * Позволяет модулю запросить больше ресурсов определенного приоритета
+     * Вес определяет долю модуля внутри каждого класса приоритета (второй уровень WRR)
      */
     void configureModuleWeights(String moduleName, ModuleWeights weights);
     
@@ -209,6 +225,20 @@ public interface IMainThreadSynchronizer {
         return result;
     }
     
+    /**
+     * Получить перцентили end-to-end задержки каста (p50/p90/p99/p999/max)
+     */
+    default LatencyHistogram.Percentiles getCastLatency() {
+        return ThreadMonitoringService.getInstance().getCastLatency();
+    }
+    
+    /**
+     * Получить перцентили ожидания в очереди и выполнения по приоритетам
+     */
+    default java.util.Map<TaskPriority, ThreadMonitoringService.LatencyReport> getPriorityLatency() {
+        return ThreadMonitoringService.getInstance().getPriorityLatency();
+    }
+    
     // === ENUMS И ВСПОМОГАТЕЛЬНЫЕ КЛАССЫ ===
     
     enum TaskPriority {
@@ -245,6 +275,17 @@ public interface IMainThreadSynchronizer {
         void updateWeights(ModuleWeights weights);
         ModuleStats getStats();
         void setEnabled(boolean enabled);
+        
+        /**
+         * Выполнить задачу от имени модуля
+         * Задача попадает в очередь модуля и обслуживается пропорционально его весам
+         */
+        void execute(String taskName, Runnable task, TaskPriority priority);
+        
+        /**
+         * Выполнить задачу от имени модуля со слиянием по ключу
+         */
+        void executeCoalesced(String taskName, String coalescingKey, Runnable task, TaskPriority priority);
     }
     
     // === DATA CLASSES ===
@@ -283,7 +324,18 @@ public interface IMainThreadSynchronizer {
         int tasksProcessedThisTick,
         int registeredModules,
         long uptimeMs,
-        WRRWeights currentWeights
+        WRRWeights currentWeights,
+        java.util.Map<String, ModuleSchedulingStats> moduleScheduling
+    ) {}
+    
+    /**
+     * Статистика планирования модуля: сколько задач выполнено и сколько раз
+     * задачи модуля оставались в очереди на конец тика
+     */
+    record ModuleSchedulingStats(
+        long executedTasks,
+        long deferredTasks,
+        int pendingTasks
     ) {}
     
     record ModuleStats(
@@ -0,0 +1,156 @@
+package com.example.examplemod.api.threads;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free гистограмма задержек с логарифмическими корзинами (в стиле HdrHistogram)
+ *
+ * Каждая степень двойки делится на 16 под-корзин, поэтому относительная ошибка
+ * перцентиля не превышает ~6% во всём диапазоне от 1ns до ~18 минут.
+ *
+ * Запись (record) не выделяет память и не берёт блокировок: один инкремент
+ * в AtomicLongArray плюс обновление счётчиков. Поэтому гистограммы можно держать
+ * включёнными в production прямо на Main Thread.
+ */
+public final class LatencyHistogram {
+
+    // 2^4 = 16 под-корзин на каждую степень двойки
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    // Максимальное отслеживаемое значение: 2^40 ns (~18 минут), всё больше попадает в последнюю корзину
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong(0);
+    private final AtomicLong totalNanos = new AtomicLong(0);
+    private final AtomicLong maxNanos = new AtomicLong(0);
+
+    /**
+     * Записать значение (в наносекундах). Отрицательные значения игнорируются
+     */
+    public void record(long valueNanos) {
+        if (valueNanos < 0) {
+            return;
+        }
+
+        buckets.incrementAndGet(bucketIndex(valueNanos));
+        count.incrementAndGet();
+        totalNanos.addAndGet(valueNanos);
+        maxNanos.accumulateAndGet(valueNanos, Math::max);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Снять срез перцентилей
+     * Срез не атомарен относительно конкурентных record() - для мониторинга этого достаточно
+     */
+    public Percentiles snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+
+        if (total == 0) {
+            return Percentiles.EMPTY;
+        }
+
+        long max = maxNanos.get();
+        return new Percentiles(
+            total,
+            valueAtPercentile(counts, total, 50.0, max),
+            valueAtPercentile(counts, total, 90.0, max),
+            valueAtPercentile(counts, total, 99.0, max),
+            valueAtPercentile(counts, total, 99.9, max),
+            max,
+            (double) totalNanos.get() / Math.max(1, count.get())
+        );
+    }
+
+    /**
+     * Сбросить гистограмму (например, для окна мониторинга)
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    // === Внутренние методы ===
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * Наибольшее значение, попадающее в корзину (консервативная оценка перцентиля)
+     */
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+
+        int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKET_COUNT;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return ((long) (SUB_BUCKET_COUNT + subBucket) << (exponent - SUB_BUCKET_BITS)) + width - 1;
+    }
+
+    private static long valueAtPercentile(long[] counts, long total, double percentile, long max) {
+        long threshold = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= threshold) {
+                // Верхняя граница корзины не может быть больше реального максимума
+                return Math.min(bucketUpperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    // === Data Classes ===
+
+    /**
+     * Срез перцентилей в наносекундах
+     */
+    public record Percentiles(
+        long count,
+        long p50Nanos,
+        long p90Nanos,
+        long p99Nanos,
+        long p999Nanos,
+        long maxNanos,
+        double meanNanos
+    ) {
+        public static final Percentiles EMPTY = new Percentiles(0, 0, 0, 0, 0, 0, 0.0);
+
+        @Override
+        public String toString() {
+            return String.format("n=%d p50=%.3fms p90=%.3fms p99=%.3fms p999=%.3fms max=%.3fms",
+                    count, p50Nanos / 1_000_000.0, p90Nanos / 1_000_000.0, p99Nanos / 1_000_000.0,
+                    p999Nanos / 1_000_000.0, maxNanos / 1_000_000.0);
+        }
+    }
+}
@@ -120,6 +120,22 @@ public final class MainThreadSynchronizerAPI {
         getInstance().execute(taskName, task, priority);
     }
     
+    /**
+     * Выполнить задачу со слиянием по ключу (выполнится только последняя версия)
+     */
+    public static void executeCoalesced(String taskName, String coalescingKey, Runnable task, 
+                                        IMainThreadSynchronizer.TaskPriority priority) {
+        getInstance().executeCoalesced(taskName, coalescingKey, task, priority);
+    }
+    
+    /**
+     * Выполнить задачу, которая устаревает через maxAgeMs
+     */
+    public static void executeWithDeadline(String taskName, Runnable task, long maxAgeMs, 
+                                           IMainThreadSynchronizer.TaskPriority priority) {
+        getInstance().executeWithDeadline(taskName, task, maxAgeMs, priority);
+    }
+    
     /**
      * Получить статистику работы синхронизатора
      */
@@ -1,8 +1,10 @@
 package com.example.examplemod.api.threads;
 
 import com.example.examplemod.core.threads.MainThreadSynchronizer;
+import com.example.examplemod.core.threads.SchedulerModule;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.Supplier;
 import java.util.Map;
 import java.util.UUID;
@@ -30,6 +32,7 @@ class MainThreadSynchronizerAdapter implements IMainThreadSynchronizer {
     private final AtomicLong totalTasksSubmitted = new AtomicLong(0);
     private final AtomicLong totalTasksCompleted = new AtomicLong(0);
     private final AtomicLong totalTasksFailed = new AtomicLong(0);
+    private final AtomicLong totalTasksDiscarded = new AtomicLong(0);
     
     public MainThreadSynchronizerAdapter(MainThreadSynchronizer underlying) {
         this.underlying = underlying;
@@ -56,7 +59,7 @@ class MainThreadSynchronizerAdapter implements IMainThreadSynchronizer {
                 future.completeExceptionally(e);
                 recordTaskCompletion(moduleName, false);
             }
-        }, TaskPriority.NORMAL);
+        }, TaskPriority.NORMAL, future);
         
         return future;
     }
@@ -73,8 +76,32 @@ class MainThreadSynchronizerAdapter implements IMainThreadSynchronizer {
     
     @Override
     public void execute(String taskName, Runnable task, TaskPriority priority) {
-        String moduleName = extractModuleName(taskName);
+        execute(taskName, task, priority, null);
+    }
+    
+    /**
+     * Запланировать задачу, результат которой отдаётся через future:
+     * если задача не будет выполнена, future завершается исключением
+     */
+    private void execute(String taskName, Runnable task, TaskPriority priority, CompletableFuture<?> future) {
+        executeInternal(resolveModule(taskName), taskName, task, priority, null, 0L, future);
+    }
+    
+    @Override
+    public void executeCoalesced(String taskName, String coalescingKey, Runnable task, TaskPriority priority) {
+        executeInternal(resolveModule(taskName), taskName, task, priority, coalescingKey, 0L, null);
+    }
+    
+    @Override
+    public void executeWithDeadline(String taskName, Runnable task, long maxAgeMs, TaskPriority priority) {
+        executeInternal(resolveModule(taskName), taskName, task, priority, null, maxAgeMs, null);
+    }
+    
+    private void executeInternal(SchedulerModule schedulerModule, String taskName, Runnable task, TaskPriority priority, 
+                                 String coalescingKey, long maxAgeMs, CompletableFuture<?> future) {
+        String moduleName = schedulerModule.getName();
         long taskId = taskIdGenerator.incrementAndGet();
+        long enqueuedAtNs = System.nanoTime();
         
         // Обертываем задачу для сбора статистики
         Runnable wrappedTask = () -> {
@@ -94,15 +121,16 @@ class MainThreadSynchronizerAdapter implements IMainThreadSynchronizer {
                 recordTaskDuration(moduleName, durationNs / 1_000_000); // to milliseconds for legacy
                 
                 // Записываем в систему мониторинга
-                monitoring.recordTaskExecution(moduleName, taskName, priority, durationNs, success);
+                monitoring.recordTaskExecution(moduleName, taskName, priority, startTimeNs - enqueuedAtNs, durationNs, success);
             }
         };
         
-        // Планируем в основном синхронизаторе
-        switch (priority) {
-            case HIGH -> underlying.scheduleHighPriority(taskName, wrappedTask);
-            case NORMAL -> underlying.scheduleNormal(taskName, wrappedTask);
-            case LOW -> underlying.scheduleLowPriority(taskName, wrappedTask);
+        // Планируем в основном синхронизаторе; отказ от задачи (сейчас или позже) приходит в onTaskDiscarded
+        boolean accepted = underlying.schedule(schedulerModule, taskName, wrappedTask, toCorePriority(priority), coalescingKey, maxAgeMs,
+            reason -> onTaskDiscarded(moduleName, taskName, priority, reason, future));
+        
+        if (!accepted) {
+            return;
         }
         
         // Обновляем статистику
@@ -110,6 +138,33 @@ class MainThreadSynchronizerAdapter implements IMainThreadSynchronizer {
         updateModuleStats(moduleName, taskName);
     }
     
+    /**
+     * Синхронизатор отказался от задачи - она уже не будет выполнена
+     */
+    private void onTaskDiscarded(String moduleName, String taskName, TaskPriority priority,
+                                 MainThreadSynchronizer.DiscardReason reason, CompletableFuture<?> future) {
+        switch (reason) {
+            case REJECTED, DROPPED -> {
+                String message = "Task '" + taskName + "' " 
+                    + (reason == MainThreadSynchronizer.DiscardReason.REJECTED ? "rejected" : "dropped")
+                    + " (" + priority + " queue full)";
+                monitoring.recordModuleError(moduleName, "queue_overflow", message);
+                recordTaskCompletion(moduleName, false);
+                if (future != null) {
+                    future.completeExceptionally(new RejectedExecutionException(message));
+                }
+            }
+            case SUPERSEDED, EXPIRED -> {
+                // Штатная оптимизация очереди, а не сбой: задачу заменила новая версия или она устарела
+                monitoring.recordTaskDiscarded(moduleName, reason.name());
+                recordTaskDiscarded(moduleName);
+                if (future != null) {
+                    future.cancel(false);
+                }
+            }
+        }
+    }
+    
     // === РАСШИРЕННЫЕ МЕТОДЫ ===
     
     @Override
@@ -125,7 +180,7 @@ class MainThreadSynchronizerAdapter implements IMainThreadSynchronizer {
             } catch (Exception e) {
                 future.completeExceptionally(e);
             }
-        }, priority);
+        }, priority, future);
         
         // Устанавливаем таймаут
         CompletableFuture.delayedExecutor(timeoutMs, java.util.concurrent.TimeUnit.MILLISECONDS)
@@ -166,7 +221,7 @@ class MainThreadSynchronizerAdapter implements IMainThreadSynchronizer {
                         "Task '" + taskName + "' failed after " + (maxRetries + 1) + " attempts", e));
                 }
             }
-        }, priority);
+        }, priority, future);
     }
     
     @Override
@@ -195,7 +250,7 @@ class MainThreadSynchronizerAdapter implements IMainThreadSynchronizer {
             } catch (Exception e) {
                 future.completeExceptionally(e);
             }
-        }, priority);
+        }, priority, future);
         
         return future;
     }
@@ -206,14 +261,14 @@ class MainThreadSynchronizerAdapter implements IMainThreadSynchronizer {
     public void configureModuleWeights(String moduleName, ModuleWeights weights) {
         RegisteredModule module = registeredModules.get(moduleName);
         if (module != null) {
-            module.weights = weights;
+            module.setWeights(weights);
             System.out.println("Updated weights for module " + moduleName + ": " + weights);
         }
     }
     
     @Override
     public IModuleHandle registerModule(String moduleName, ModuleInfo moduleInfo) {
-        RegisteredModule module = new RegisteredModule(moduleInfo);
+        RegisteredModule module = new RegisteredModule(moduleInfo, underlying.getOrCreateModule(moduleName));
         registeredModules.put(moduleName, module);
         
         System.out.println("Registered module: " + moduleName + " v" + moduleInfo.version());
@@ -237,7 +292,8 @@ class MainThreadSynchronizerAdapter implements IMainThreadSynchronizer {
             underlyingStats.tasksPerTick(),
             registeredModules.size(),
             System.currentTimeMillis() - startTime,
-            new WRRWeights(weights.highWeight(), weights.normalWeight(), weights.lowWeight())
+            new WRRWeights(weights.highWeight(), weights.normalWeight(), weights.lowWeight()),
+            toModuleSchedulingStats(underlyingStats.moduleStats())
         );
     }
     
@@ -262,8 +318,11 @@ class MainThreadSynchronizerAdapter implements IMainThreadSynchronizer {
     
     @Override
     public int getPendingTaskCount(String moduleName) {
-        // Приближенная оценка - в реальной реализации может быть более точной
-        return 0;
+        RegisteredModule module = registeredModules.get(moduleName);
+        if (module == null) {
+            return 0;
+        }
+        return underlying.getPendingTaskCount(module.schedulerModule);
     }
     
     @Override
@@ -282,6 +341,25 @@ class MainThreadSynchronizerAdapter implements IMainThreadSynchronizer {
     
     // === ВНУТРЕННИЕ КЛАССЫ И УТИЛИТЫ ===
     
+    private Map<String, ModuleSchedulingStats> toModuleSchedulingStats(
+            Map<String, MainThreadSynchronizer.ModuleSchedulingStats> coreStats) {
+        Map<String, ModuleSchedulingStats> result = new java.util.HashMap<>();
+        for (var entry : coreStats.entrySet()) {
+            var stats = entry.getValue();
+            result.put(entry.getKey(), new ModuleSchedulingStats(stats.executedTasks(), stats.deferredTasks(), stats.pendingTasks()));
+        }
+        return result;
+    }
+    
+    /**
+     * Найти модуль задачи без зарегистрированного handle (формат имени "ModuleName_TaskName")
+     * Префиксы незарегистрированных модулей попадают в модуль по умолчанию - своих очередей
+     * модуль получает только через registerModule
+     */
+    private SchedulerModule resolveModule(String taskName) {
+        return underlying.getModuleOrDefault(extractModuleName(taskName));
+    }
+    
     /**
      * Извлечь имя модуля из имени задачи (предполагается формат "ModuleName_TaskName")
      */
@@ -290,6 +368,14 @@ class MainThreadSynchronizerAdapter implements IMainThreadSynchronizer {
         return underscoreIndex > 0 ? taskName.substring(0, underscoreIndex) : "Unknown";
     }
     
+    private static MainThreadSynchronizer.TaskPriority toCorePriority(TaskPriority priority) {
+        return switch (priority) {
+            case HIGH -> MainThreadSynchronizer.TaskPriority.HIGH;
+            case NORMAL -> MainThreadSynchronizer.TaskPriority.NORMAL;
+            case LOW -> MainThreadSynchronizer.TaskPriority.LOW;
+        };
+    }
+    
     /**
      * Записать завершение задачи
      */
@@ -311,6 +397,19 @@ class MainThreadSynchronizerAdapter implements IMainThreadSynchronizer {
         }
     }
     
+    /**
+     * Записать задачу, отброшенную планировщиком без выполнения
+     */
+    private void recordTaskDiscarded(String moduleName) {
+        totalTasksDiscarded.incrementAndGet();
+        
+        RegisteredModule module = registeredModules.get(moduleName);
+        if (module != null) {
+            module.totalDiscarded.incrementAndGet();
+            module.lastActivityTime = System.currentTimeMillis();
+        }
+    }
+    
     /**
      * Записать время выполнения задачи
      */
@@ -343,6 +442,7 @@ class MainThreadSynchronizerAdapter implements IMainThreadSynchronizer {
     
     private static class RegisteredModule {
         final ModuleInfo info;
+        final SchedulerModule schedulerModule;
         volatile ModuleWeights weights;
         volatile boolean enabled = true;
         volatile long lastActivityTime = System.currentTimeMillis();
@@ -350,12 +450,20 @@ class MainThreadSynchronizerAdapter implements IMainThreadSynchronizer {
         final AtomicLong totalSubmitted = new AtomicLong(0);
         final AtomicLong totalCompleted = new AtomicLong(0);
         final AtomicLong totalFailed = new AtomicLong(0);
+        final AtomicLong totalDiscarded = new AtomicLong(0);
         final AtomicLong totalExecutionTime = new AtomicLong(0);
         final AtomicLong executionCount = new AtomicLong(0);
         
-        RegisteredModule(ModuleInfo info) {
+        RegisteredModule(ModuleInfo info, SchedulerModule schedulerModule) {
             this.info = info;
-            this.weights = info.defaultWeights();
+            this.schedulerModule = schedulerModule;
+            setWeights(info.defaultWeights());
+        }
+        
+        void setWeights(ModuleWeights weights) {
+            this.weights = weights;
+            // Веса модуля используются планировщиком внутри каждого класса приоритета
+            schedulerModule.setWeights(weights.highPriorityWeight(), weights.normalPriorityWeight(), weights.lowPriorityWeight());
         }
         
         void addExecutionTime(long duration) {
@@ -380,13 +488,24 @@ class MainThreadSynchronizerAdapter implements IMainThreadSynchronizer {
         
         @Override
         public void unregister() {
-            registeredModules.remove(moduleName);
+            registeredModules.remove(moduleName, module);
+            underlying.unregisterModule(module.schedulerModule);
             System.out.println("Unregistered module: " + moduleName);
         }
         
         @Override
         public void updateWeights(ModuleWeights weights) {
-            module.weights = weights;
+            module.setWeights(weights);
+        }
+        
+        @Override
+        public void execute(String taskName, Runnable task, TaskPriority priority) {
+            executeInternal(module.schedulerModule, taskName, task, priority, null, 0L, null);
+        }
+        
+        @Override
+        public void executeCoalesced(String taskName, String coalescingKey, Runnable task, TaskPriority priority) {
+            executeInternal(module.schedulerModule, taskName, task, priority, coalescingKey, 0L, null);
         }
         
         @Override
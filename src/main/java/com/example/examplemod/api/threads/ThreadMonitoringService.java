@@ -31,6 +31,10 @@ public class ThreadMonitoringService {
     // === История производительности (последние 100 записей) ===
     private final CircularBuffer<PerformanceSample> performanceHistory = new CircularBuffer<>(100);
     
+    // === Гистограммы задержек (lock-free, без аллокаций при записи) ===
+    // End-to-end задержка каста: SpellCoreModule.castSpell -> применение в Main Thread
+    private final LatencyHistogram castLatency = new LatencyHistogram();
+    
     private ThreadMonitoringService() {
         // Инициализация метрик приоритетов
         for (IMainThreadSynchronizer.TaskPriority priority : IMainThreadSynchronizer.TaskPriority.values()) {
@@ -57,6 +61,17 @@ public class ThreadMonitoringService {
     public void recordTaskExecution(String moduleName, String taskName, 
                                   IMainThreadSynchronizer.TaskPriority priority,
                                   long executionTimeNs, boolean success) {
+        recordTaskExecution(moduleName, taskName, priority, -1L, executionTimeNs, success);
+    }
+    
+    /**
+     * Записать выполнение задачи вместе со временем ожидания в очереди
+     * 
+     * @param queueWaitNs Время от постановки в очередь до начала выполнения (отрицательное - неизвестно)
+     */
+    public void recordTaskExecution(String moduleName, String taskName, 
+                                  IMainThreadSynchronizer.TaskPriority priority,
+                                  long queueWaitNs, long executionTimeNs, boolean success) {
         // Глобальные метрики
         totalTasksExecuted.incrementAndGet();
         totalExecutionTimeNs.addAndGet(executionTimeNs);
@@ -67,15 +82,31 @@ public class ThreadMonitoringService {
         
         // Метрики модуля
         moduleMetrics.computeIfAbsent(moduleName, k -> new ModuleMetrics())
-                    .recordExecution(executionTimeNs, success);
+                    .recordExecution(queueWaitNs, executionTimeNs, success);
         
         // Метрики приоритета
-        priorityMetrics.get(priority).recordExecution(executionTimeNs, success);
+        priorityMetrics.get(priority).recordExecution(queueWaitNs, executionTimeNs, success);
         
         // Обновляем историю производительности
         updatePerformanceHistory();
     }
     
+    /**
+     * Записать end-to-end задержку каста (от castSpell до применения в Main Thread)
+     */
+    public void recordCastLatency(long latencyNs) {
+        castLatency.record(latencyNs);
+    }
+    
+    /**
+     * Записать задачу, которую планировщик отбросил без выполнения (вытеснена, устарела).
+     * Это не ошибка: на failure rate не влияет
+     */
+    public void recordTaskDiscarded(String moduleName, String reason) {
+        moduleMetrics.computeIfAbsent(moduleName, k -> new ModuleMetrics())
+                    .recordDiscard(reason);
+    }
+    
     /**
      * Записать ошибку модуля
      */
@@ -139,6 +170,32 @@ public class ThreadMonitoringService {
         return stats;
     }
     
+    /**
+     * Перцентили end-to-end задержки каста
+     */
+    public LatencyHistogram.Percentiles getCastLatency() {
+        return castLatency.snapshot();
+    }
+    
+    /**
+     * Перцентили ожидания в очереди и выполнения по приоритетам
+     */
+    public Map<IMainThreadSynchronizer.TaskPriority, LatencyReport> getPriorityLatency() {
+        Map<IMainThreadSynchronizer.TaskPriority, LatencyReport> report = new ConcurrentHashMap<>();
+        for (Map.Entry<IMainThreadSynchronizer.TaskPriority, PriorityMetrics> entry : priorityMetrics.entrySet()) {
+            report.put(entry.getKey(), entry.getValue().getLatencyReport());
+        }
+        return report;
+    }
+    
+    /**
+     * Перцентили ожидания в очереди и выполнения для модуля
+     */
+    public LatencyReport getModuleLatency(String moduleName) {
+        ModuleMetrics metrics = moduleMetrics.get(moduleName);
+        return metrics != null ? metrics.getLatencyReport() : null;
+    }
+    
     /**
      * Получить список проблемных модулей
      */
@@ -224,12 +281,17 @@ public class ThreadMonitoringService {
         private final AtomicLong totalExecutionTimeNs = new AtomicLong(0);
         private final AtomicLong tasksFailed = new AtomicLong(0);
         private final Map<String, AtomicLong> errorsByType = new ConcurrentHashMap<>();
+        private final Map<String, AtomicLong> discardedByReason = new ConcurrentHashMap<>();
         private final CircularBuffer<Long> recentErrors = new CircularBuffer<>(50);
+        private final LatencyHistogram queueWait = new LatencyHistogram();
+        private final LatencyHistogram execution = new LatencyHistogram();
         private volatile long lastActivity = System.currentTimeMillis();
         
-        void recordExecution(long executionTimeNs, boolean success) {
+        void recordExecution(long queueWaitNs, long executionTimeNs, boolean success) {
             tasksExecuted.incrementAndGet();
             totalExecutionTimeNs.addAndGet(executionTimeNs);
+            queueWait.record(queueWaitNs);
+            execution.record(executionTimeNs);
             lastActivity = System.currentTimeMillis();
             
             if (!success) {
@@ -243,6 +305,10 @@ public class ThreadMonitoringService {
             recentErrors.add(System.currentTimeMillis());
         }
         
+        void recordDiscard(String reason) {
+            discardedByReason.computeIfAbsent(reason, k -> new AtomicLong(0)).incrementAndGet();
+        }
+        
         double getFailureRate() {
             long total = tasksExecuted.get();
             return total > 0 ? (double) tasksFailed.get() / total : 0.0;
@@ -258,6 +324,10 @@ public class ThreadMonitoringService {
             return (int) recentErrors.getStream().filter(timestamp -> timestamp > fiveMinutesAgo).count();
         }
         
+        LatencyReport getLatencyReport() {
+            return new LatencyReport(queueWait.snapshot(), execution.snapshot());
+        }
+        
         DetailedModuleStats generateDetailedStats(String moduleName) {
             return new DetailedModuleStats(
                 moduleName,
@@ -267,7 +337,8 @@ public class ThreadMonitoringService {
                 getAverageExecutionTimeMs(),
                 lastActivity,
                 new ConcurrentHashMap<>(errorsByType),
-                getRecentErrorCount()
+                getRecentErrorCount(),
+                new ConcurrentHashMap<>(discardedByReason)
             );
         }
     }
@@ -279,16 +350,24 @@ public class ThreadMonitoringService {
         private final AtomicLong tasksExecuted = new AtomicLong(0);
         private final AtomicLong totalExecutionTimeNs = new AtomicLong(0);
         private final AtomicLong tasksFailed = new AtomicLong(0);
+        private final LatencyHistogram queueWait = new LatencyHistogram();
+        private final LatencyHistogram execution = new LatencyHistogram();
         
-        void recordExecution(long executionTimeNs, boolean success) {
+        void recordExecution(long queueWaitNs, long executionTimeNs, boolean success) {
             tasksExecuted.incrementAndGet();
             totalExecutionTimeNs.addAndGet(executionTimeNs);
+            queueWait.record(queueWaitNs);
+            execution.record(executionTimeNs);
             
             if (!success) {
                 tasksFailed.incrementAndGet();
             }
         }
         
+        LatencyReport getLatencyReport() {
+            return new LatencyReport(queueWait.snapshot(), execution.snapshot());
+        }
+        
         PriorityStats getStats() {
             long total = tasksExecuted.get();
             return new PriorityStats(
@@ -321,7 +400,8 @@ public class ThreadMonitoringService {
         double averageExecutionTimeMs,
         long lastActivityTime,
         Map<String, AtomicLong> errorsByType,
-        int recentErrorCount
+        int recentErrorCount,
+        Map<String, AtomicLong> discardedByReason
     ) {}
     
     public record PriorityStats(
@@ -331,6 +411,14 @@ public class ThreadMonitoringService {
         double averageExecutionTimeMs
     ) {}
     
+    /**
+     * Перцентили задержек: ожидание в очереди Main Thread и время выполнения
+     */
+    public record LatencyReport(
+        LatencyHistogram.Percentiles queueWait,
+        LatencyHistogram.Percentiles execution
+    ) {}
+    
     private record PerformanceSample(
         long timestamp,
         double tasksPerSecond,
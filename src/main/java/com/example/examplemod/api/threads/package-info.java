@@ -13,6 +13,7 @@
  * • {@link com.example.examplemod.api.threads.MainThreadSynchronizerAPI} - Статический доступ
  * • {@link com.example.examplemod.api.threads.MainThreadSynchronizerAdapter} - Реализация с расширенными функциями
  * • {@link com.example.examplemod.api.threads.ThreadMonitoringService} - Мониторинг производительности
+ * • {@link com.example.examplemod.api.threads.LatencyHistogram} - Lock-free гистограммы задержек
  * 
  * === БЫСТРЫЙ СТАРТ ===
  * 
@@ -63,6 +64,8 @@
  * • **Delayed** - Отложенное выполнение
  * • **Repeating** - Периодические задачи
  * • **Batch** - Пакетные операции
+ * • **Coalesced** - Слияние задач по ключу (выполняется только последняя версия)
+ * • **Deadline** - Отбрасывание устаревших NORMAL/LOW задач
  * 
  * <pre>{@code
  * // Задача с таймаутом
@@ -74,6 +77,12 @@
  * // Отложенная задача
  * api.scheduleDelayed("DelayedTask", task, 2000, TaskPriority.LOW);
  * 
+ * // Синхронизация состояния - выполнится только последняя версия для сущности
+ * api.executeCoalesced("SpellCore_SyncEntity", "SyncEntity_" + entityId, task, TaskPriority.NORMAL);
+ * 
+ * // Визуальный эффект, бессмысленный через 500ms
+ * api.executeWithDeadline("Effects_Particles", task, 500, TaskPriority.LOW);
+ * 
  * // Повторяющаяся задача
  * IScheduledTask repeating = api.scheduleRepeating("PeriodicTask", task, 1000, TaskPriority.LOW);
  * // ... позже
@@ -97,6 +106,10 @@
  * // Статистика по приоритетам
  * Map<TaskPriority, PriorityStats> priorityStats = 
  *     MainThreadSynchronizerAPI.getInstance().getPriorityStats();
+ * 
+ * // Хвостовые задержки (p50/p90/p99/p999/max) - средние значения скрывают лаги
+ * LatencyHistogram.Percentiles castLatency = MainThreadSynchronizerAPI.getInstance().getCastLatency();
+ * Map<TaskPriority, LatencyReport> latency = MainThreadSynchronizerAPI.getInstance().getPriorityLatency();
  * }</pre>
  * 
  * === УПРАВЛЕНИЕ МОДУЛЯМИ ===
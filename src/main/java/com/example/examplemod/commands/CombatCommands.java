@@ -1,6 +1,9 @@
 package com.example.examplemod.commands;
 
+import com.example.examplemod.core.formula.FormulaEngine;
+import com.example.examplemod.core.geometry.SpatialIndexBenchmark;
 import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
 import com.mojang.brigadier.arguments.StringArgumentType;
 import com.mojang.brigadier.context.CommandContext;
 import net.minecraft.commands.CommandSourceStack;
@@ -8,6 +11,8 @@ import net.minecraft.commands.Commands;
 import net.minecraft.network.chat.Component;
 import net.minecraft.world.entity.player.Player;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Команды для тестирования системы боевой магии
  */
@@ -23,6 +28,20 @@ public class CombatCommands {
                 .then(Commands.literal("cast")
                     .then(Commands.argument("spellname", StringArgumentType.word())
                         .executes(CombatCommands::castSpell)))
+                .then(Commands.literal("formula")
+                    .requires(source -> source.hasPermission(2))
+                    .then(Commands.argument("key", StringArgumentType.word())
+                        .executes(CombatCommands::describeFormula)))
+                .then(Commands.literal("formulas")
+                    .then(Commands.literal("reload")
+                        .requires(source -> source.hasPermission(2))
+                        .executes(CombatCommands::reloadFormulas)))
+                .then(Commands.literal("spatial")
+                    .then(Commands.literal("bench")
+                        .requires(source -> source.hasPermission(2))
+                        .executes(context -> benchmarkSpatialIndex(context, SpatialIndexBenchmark.DEFAULT_SPELL_COUNT))
+                        .then(Commands.argument("count", IntegerArgumentType.integer(100, 50_000))
+                            .executes(context -> benchmarkSpatialIndex(context, IntegerArgumentType.getInteger(context, "count"))))))
         );
     }
 
@@ -112,4 +131,75 @@ public class CombatCommands {
             return 0;
         }
     }
+
+    private static int describeFormula(CommandContext<CommandSourceStack> context) {
+        CommandSourceStack source = context.getSource();
+        String key = StringArgumentType.getString(context, "key");
+        
+        // Замер стоимости формулы - сотни тысяч вычислений, не на Main Thread
+        CompletableFuture.supplyAsync(() -> FormulaEngine.getInstance().describeFormula(key))
+            .whenComplete((report, error) -> source.getServer().execute(() -> {
+                if (error != null) {
+                    Throwable cause = error.getCause() != null ? error.getCause() : error;
+                    source.sendFailure(Component.literal("Ошибка разбора формулы: " + cause.getMessage()));
+                    return;
+                }
+                source.sendSuccess(() -> Component.literal("Формула '" + report.key() + "': " + report.expression()), false);
+                for (String line : report.program()) {
+                    source.sendSuccess(() -> Component.literal("  " + line), false);
+                }
+                source.sendSuccess(() -> Component.literal(String.format("Узлов: %d -> %d, общих подвыражений: %d, ~%.1f нс на вычисление (пакетом ~%.1f нс на строку)",
+                    report.sourceNodes(), report.optimizedNodes(), report.sharedSubexpressions(),
+                    report.nanosPerEvaluation(), report.batchNanosPerRow())), false);
+                source.sendSuccess(() -> Component.literal("Параметры: " + String.join(", ", report.parameters())), false);
+                source.sendSuccess(() -> Component.literal("Источник формул: " + FormulaEngine.getInstance().getTableSource()), false);
+                
+                var cacheStats = FormulaEngine.getInstance().getCacheStats();
+                source.sendSuccess(() -> Component.literal(String.format("Кэш формул: %d/%d, попаданий %.1f%%, вытеснено %d, отклонено %d",
+                    cacheStats.size(), cacheStats.maxSize(), cacheStats.hitRate() * 100, cacheStats.evictions(), cacheStats.rejections())), false);
+            }));
+        
+        return 1;
+    }
+
+    private static int reloadFormulas(CommandContext<CommandSourceStack> context) {
+        CommandSourceStack source = context.getSource();
+        
+        source.sendSuccess(() -> Component.literal("Перезагрузка формул..."), false);
+        
+        // Компиляция идёт вне Main Thread, ответ отправляем обратно на сервер
+        FormulaEngine.getInstance().reloadAsync().thenAccept(result ->
+            source.getServer().execute(() -> {
+                if (result.success()) {
+                    source.sendSuccess(() -> Component.literal(result.message() + " (версия " + result.version() + ")"), true);
+                } else {
+                    source.sendFailure(Component.literal("Формулы не перезагружены, действует прежний набор: " + result.message()));
+                }
+            }));
+        
+        return 1;
+    }
+
+    private static int benchmarkSpatialIndex(CommandContext<CommandSourceStack> context, int spellCount) {
+        CommandSourceStack source = context.getSource();
+        
+        source.sendSuccess(() -> Component.literal("Замер пространственных индексов на " + spellCount + " заклинаниях..."), false);
+        
+        // Замер занимает заметное время - не на Main Thread
+        CompletableFuture.supplyAsync(() -> SpatialIndexBenchmark.run(spellCount, System.nanoTime()))
+            .whenComplete((results, error) -> source.getServer().execute(() -> {
+                if (error != null) {
+                    source.sendFailure(Component.literal("Ошибка замера: " + error.getMessage()));
+                    return;
+                }
+                for (SpatialIndexBenchmark.Result result : results) {
+                    source.sendSuccess(() -> Component.literal(String.format(
+                        "%s: вставка %.0f нс, движение %.0f нс, пересечения %.0f нс, 5 ближайших %.0f нс, ячеек/узлов %d, сумма %d",
+                        result.type(), result.insertNanos(), result.updateNanos(), result.intersectNanos(),
+                        result.nearestNanos(), result.stats().totalCells(), result.checksum())), false);
+                }
+            }));
+        
+        return 1;
+    }
 }
\ No newline at end of file
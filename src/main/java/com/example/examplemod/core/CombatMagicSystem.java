@@ -4,14 +4,20 @@ import com.example.examplemod.core.spells.*;
 import com.example.examplemod.core.spells.forms.impl.*;
 import com.example.examplemod.core.spells.forms.SpellFormType;
 import com.example.examplemod.core.resources.*;
+import com.example.examplemod.core.formula.FormulaEngine;
 import com.example.examplemod.core.geometry.SpatialIndex;
+import com.example.examplemod.core.spells.collision.CollisionSnapshotPool;
+import com.example.examplemod.core.spells.collision.SectionSnapshotCache;
+import net.minecraft.resources.ResourceKey;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.network.chat.Component;
 import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.level.Level;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
 
@@ -23,13 +29,17 @@ public class CombatMagicSystem {
     private static final Logger LOGGER = LoggerFactory.getLogger(CombatMagicSystem.class);
     private static CombatMagicSystem INSTANCE;
 
+    private static final double SPATIAL_CELL_SIZE = 4.0; // 4-блочные ячейки
+
     // Core Modules
     private final SpellDefinitionRegistry spellRegistry;
     private final SpellFactory spellFactory;
     private final SpellLifecycleManager lifecycleManager;
     private final SpellStateCache stateCache;
     private final ResourceTransactionManager transactionManager;
-    private final SpatialIndex spatialIndex;
+    // Свой индекс на каждое измерение: создаётся при первом обращении, удаляется при выгрузке уровня
+    private final Map<ResourceKey<Level>, SpatialIndex> spatialIndices = new ConcurrentHashMap<>();
+    private volatile SpatialIndex.Type spatialIndexType = SpatialIndex.Type.GRID;
 
     // Player data
     private final Map<UUID, ManaPool> playerManaPools = new ConcurrentHashMap<>();
@@ -42,7 +52,6 @@ public class CombatMagicSystem {
         this.lifecycleManager = new SpellLifecycleManager();
         this.stateCache = new SpellStateCache();
         this.transactionManager = new ResourceTransactionManager();
-        this.spatialIndex = new SpatialIndex(4.0); // 4-блочные ячейки
     }
 
     public static synchronized CombatMagicSystem getInstance() {
@@ -79,7 +88,8 @@ public class CombatMagicSystem {
         try {
             lifecycleManager.shutdown();
             transactionManager.clearAllTransactions();
-            spatialIndex.clear();
+            spatialIndices.values().forEach(SpatialIndex::clear);
+            spatialIndices.clear();
             stateCache.clear();
             playerManaPools.clear();
             
@@ -90,6 +100,58 @@ public class CombatMagicSystem {
         }
     }
 
+    /**
+     * Пространственный индекс измерения (создаётся при первом обращении)
+     */
+    public SpatialIndex getSpatialIndex(ResourceKey<Level> dimension) {
+        return spatialIndices.computeIfAbsent(dimension, key -> {
+            LOGGER.debug("Created {} spatial index for {}", spatialIndexType, key.location());
+            return SpatialIndex.create(spatialIndexType, SPATIAL_CELL_SIZE);
+        });
+    }
+
+    /**
+     * Индекс измерения, если он уже есть; для запросов, которым незачем создавать пустой индекс
+     */
+    public SpatialIndex findSpatialIndex(ResourceKey<Level> dimension) {
+        return spatialIndices.get(dimension);
+    }
+
+    /**
+     * Уровень выгружен: освободить его индекс и кэш модификаторов формул
+     */
+    public void onLevelUnload(ResourceKey<Level> dimension) {
+        SpatialIndex removed = spatialIndices.remove(dimension);
+        if (removed != null) {
+            removed.clear();
+            LOGGER.debug("Dropped spatial index for unloaded level {}", dimension.location());
+        }
+        FormulaEngine.getInstance().forgetDimension(dimension);
+        SectionSnapshotCache.forgetDimension(dimension);
+        CollisionSnapshotPool.getInstance().forgetDimension(dimension);
+    }
+
+    /**
+     * Сменить структуру пространственных индексов (из конфига).
+     * Заклинания переносятся в новые индексы; запись в старый во время переноса может потеряться
+     * до следующего updateSpell, поэтому менять структуру лучше без активного боя
+     */
+    public synchronized void setSpatialIndexType(SpatialIndex.Type type) {
+        if (type == spatialIndexType) {
+            return;
+        }
+
+        spatialIndexType = type;
+        int moved = 0;
+        for (Map.Entry<ResourceKey<Level>, SpatialIndex> entry : spatialIndices.entrySet()) {
+            SpatialIndex replacement = SpatialIndex.create(type, SPATIAL_CELL_SIZE);
+            entry.getValue().forEachSpell(replacement::addSpell);
+            entry.setValue(replacement);
+            moved += replacement.getStats().totalSpells();
+        }
+        LOGGER.info("Spatial index switched to {} ({} spells moved)", type, moved);
+    }
+
     /**
      * Регистрация базовых заклинаний
      */
@@ -194,7 +256,6 @@ public class CombatMagicSystem {
     public SpellLifecycleManager getLifecycleManager() { return lifecycleManager; }
     public SpellStateCache getStateCache() { return stateCache; }
     public ResourceTransactionManager getTransactionManager() { return transactionManager; }
-    public SpatialIndex getSpatialIndex() { return spatialIndex; }
 
     public boolean isInitialized() { return initialized; }
 
@@ -202,12 +263,15 @@ public class CombatMagicSystem {
      * Получить статистику системы
      */
     public SystemStats getStats() {
+        Map<ResourceKey<Level>, SpatialIndex.IndexStats> spatialStats = new HashMap<>();
+        spatialIndices.forEach((dimension, index) -> spatialStats.put(dimension, index.getStats()));
+        
         return new SystemStats(
             spellRegistry.size(),
             lifecycleManager.getActiveSpellCount(),
             playerManaPools.size(),
             transactionManager.getActivePransactionCount(),
-            spatialIndex.getStats()
+            spatialStats
         );
     }
 
@@ -216,6 +280,6 @@ public class CombatMagicSystem {
         int activeSpells,
         int playersWithMana,
         int activeTransactions,
-        SpatialIndex.IndexStats spatialStats
+        Map<ResourceKey<Level>, SpatialIndex.IndexStats> spatialStats
     ) {}
 }
\ No newline at end of file
@@ -1,29 +1,143 @@
 package com.example.examplemod.core.formula;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
 
 public final class CompiledFormula implements Formula {
     
     private final String expression;
     private final String[] requiredParameters;
-    private final Function<Map<String, Double>, Double> compiledFunction;
+    private final int[] requiredSlots;
+    private final FormulaNode root;
     
-    public CompiledFormula(String expression, String[] requiredParameters, 
-                          Function<Map<String, Double>, Double> compiledFunction) {
+    // Пролог: общие подвыражения, вычисляемые до корня (в порядке зависимостей)
+    private final FormulaNode.Shared[] shared;
+    
+    // Число узлов дерева до оптимизации (для отладочного вывода)
+    private final int sourceNodeCount;
+    
+    // Минимальный размер фрейма для этой формулы
+    private final int frameSize;
+    
+    // Первый параметр, который не заполняет ParameterResolver (null если все встроенные)
+    private final String unresolvedParameter;
+    
+    public CompiledFormula(String expression, String[] requiredParameters, FormulaNode root) {
+        this(expression, requiredParameters, root, new FormulaNode.Shared[0], FormulaOptimizer.countNodes(root));
+    }
+    
+    public CompiledFormula(String expression, String[] requiredParameters, FormulaNode root,
+                          FormulaNode.Shared[] shared, int sourceNodeCount) {
         this.expression = expression;
         this.requiredParameters = requiredParameters.clone();
-        this.compiledFunction = compiledFunction;
+        this.root = root;
+        this.shared = shared.clone();
+        this.sourceNodeCount = sourceNodeCount;
+        this.requiredSlots = new int[requiredParameters.length];
+        
+        int maxSlot = -1;
+        for (FormulaNode.Shared node : this.shared) {
+            maxSlot = Math.max(maxSlot, node.slot);
+        }
+        String unresolved = null;
+        for (int i = 0; i < requiredParameters.length; i++) {
+            int slot = FormulaVariables.slotOf(requiredParameters[i]);
+            requiredSlots[i] = slot;
+            maxSlot = Math.max(maxSlot, slot);
+            if (unresolved == null && !FormulaVariables.isBuiltin(slot)) {
+                unresolved = requiredParameters[i];
+            }
+        }
+        this.frameSize = maxSlot + 1;
+        this.unresolvedParameter = unresolved;
     }
     
     @Override
     public double evaluate(Map<String, Double> parameters) {
-        for (String param : requiredParameters) {
-            if (!parameters.containsKey(param)) {
-                throw new IllegalArgumentException("Отсутствует параметр: " + param);
+        double[] frame = new double[frameSize];
+        for (int i = 0; i < requiredParameters.length; i++) {
+            Double value = parameters.get(requiredParameters[i]);
+            if (value == null) {
+                throw new IllegalArgumentException("Отсутствует параметр: " + requiredParameters[i]);
             }
+            frame[requiredSlots[i]] = value;
+        }
+        return evaluate(frame);
+    }
+    
+    /**
+     * Вычислить формулу без карт и упаковки.
+     * Фрейм размечен слотами FormulaVariables и должен быть не короче getFrameSize()
+     */
+    public double evaluate(double[] frame) {
+        for (FormulaNode.Shared node : shared) {
+            frame[node.slot] = node.definition.evaluate(frame);
+        }
+        return root.evaluate(frame);
+    }
+    
+    /**
+     * Вычислить формулу для всех строк пакета: out[i] - результат для строки i
+     */
+    public void evaluateBatch(FormulaBatch batch, double[] out) {
+        if (out.length < batch.size()) {
+            throw new IllegalArgumentException("Массив результатов меньше пакета: " + out.length + " < " + batch.size());
+        }
+        for (FormulaNode.Shared node : shared) {
+            node.definition.evaluateBatch(batch, batch.column(node.slot));
         }
-        return compiledFunction.apply(parameters);
+        root.evaluateBatch(batch, out);
+    }
+    
+    /**
+     * Скомпилированное дерево формулы
+     */
+    public FormulaNode getRoot() {
+        return root;
+    }
+    
+    public int getFrameSize() {
+        return frameSize;
+    }
+    
+    /**
+     * Число узлов, обходимых при одном вычислении (после оптимизации)
+     */
+    public int getNodeCount() {
+        int count = FormulaOptimizer.countNodes(root);
+        for (FormulaNode.Shared node : shared) {
+            count += FormulaOptimizer.countNodes(node.definition);
+        }
+        return count;
+    }
+    
+    public int getSourceNodeCount() {
+        return sourceNodeCount;
+    }
+    
+    public int getSharedCount() {
+        return shared.length;
+    }
+    
+    /**
+     * Оптимизированная программа построчно: пролог общих подвыражений и результат
+     */
+    public List<String> describeProgram() {
+        List<String> lines = new ArrayList<>();
+        for (FormulaNode.Shared node : shared) {
+            lines.add(node.name + " = " + node.definition);
+        }
+        lines.add("result = " + root);
+        return lines;
+    }
+    
+    /**
+     * Параметр, который не заполняется ParameterResolver и должен быть передан явно
+     * @return null если формулу можно вычислять по фрейму резолвера
+     */
+    public String getUnresolvedParameter() {
+        return unresolvedParameter;
     }
     
     @Override
@@ -1,83 +1,285 @@
 package com.example.examplemod.core.formula;
 
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Ограниченный кэш скомпилированных формул (W-TinyLFU: окно допуска + TinyLFU + CLOCK)
+ *
+ * - Чтение без блокировок: ConcurrentHashMap.get + отметка "недавно использована" и
+ *   инкремент насыщаемого счётчика частоты в FrequencySketch
+ * - Промах компилирует формулу один раз на ключ (computeIfAbsent)
+ * - Новая формула сначала попадает в маленькое FIFO окно допуска (~1% кэша) и
+ *   обслуживает повторные обращения оттуда, не перекомпилируясь
+ * - Вышедшая из окна формула соревнуется с жертвой основной области, которую ищет
+ *   CLOCK-стрелка (второй шанс недавно использованным): остаётся только если встречалась
+ *   чаще жертвы (TinyLFU), иначе вытесняется сама и не трогает популярные формулы
+ * - Блокировка берётся только на пути вытеснения (запись), не на чтении
+ */
 public class FormulaCache {
     
-    private final ConcurrentHashMap<String, CompiledFormula> cache = new ConcurrentHashMap<>();
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
-    private final int maxCacheSize;
+    public static final int DEFAULT_MAX_CACHE_SIZE = 1000;
+    
+    private final ConcurrentHashMap<String, Entry> cache = new ConcurrentHashMap<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private volatile int maxCacheSize;
+    private volatile FrequencySketch sketch;
     private final FormulaParser parser = new FormulaParser();
     private final FormulaCompiler compiler = new FormulaCompiler();
     
+    // Окно допуска в порядке добавления и CLOCK-стрелка основной области (только под evictionLock)
+    private final ArrayDeque<Entry> window = new ArrayDeque<>();
+    private Iterator<Entry> clockHand;
+    
+    // Статистика
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    
     public FormulaCache(int maxCacheSize) {
+        if (maxCacheSize < 1) {
+            throw new IllegalArgumentException("Размер кэша формул должен быть положительным: " + maxCacheSize);
+        }
         this.maxCacheSize = maxCacheSize;
+        this.sketch = new FrequencySketch(maxCacheSize);
     }
     
     public FormulaCache() {
-        this(1000);
+        this(DEFAULT_MAX_CACHE_SIZE);
     }
     
     public CompiledFormula getOrCompile(String expression) {
-        lock.readLock().lock();
+        int hash = expression.hashCode();
+        sketch.increment(hash);
+        
+        Entry entry = cache.get(expression);
+        if (entry != null) {
+            entry.markReferenced();
+            hits.increment();
+            return entry.formula;
+        }
+        
+        misses.increment();
+        Entry created = cache.computeIfAbsent(expression, this::compileEntry);
+        admit(created);
+        
+        return created.formula;
+    }
+    
+    public void precompile(String expression) {
+        getOrCompile(expression);
+    }
+    
+    /**
+     * Установить константы FormulaConfig и сбросить формулы, скомпилированные со старыми значениями
+     */
+    public void setConstants(Map<String, Double> constants) {
+        evictionLock.lock();
         try {
-            CompiledFormula cached = cache.get(expression);
-            if (cached != null) {
-                return cached;
-            }
+            compiler.setConstants(constants);
+            cache.clear();
+            window.clear();
+            clockHand = null;
         } finally {
-            lock.readLock().unlock();
+            evictionLock.unlock();
+        }
+    }
+    
+    /**
+     * Изменить предельный размер (например, из конфига); лишние формулы вытесняются сразу
+     */
+    public void setMaximumSize(int maxCacheSize) {
+        if (maxCacheSize < 1) {
+            throw new IllegalArgumentException("Размер кэша формул должен быть положительным: " + maxCacheSize);
         }
         
-        lock.writeLock().lock();
+        evictionLock.lock();
         try {
-            CompiledFormula cached = cache.get(expression);
-            if (cached != null) {
-                return cached;
-            }
-            
-            if (cache.size() >= maxCacheSize) {
-                evictOldest();
+            if (this.maxCacheSize != maxCacheSize) {
+                this.maxCacheSize = maxCacheSize;
+                this.sketch = new FrequencySketch(maxCacheSize);
             }
-            
-            FormulaParser.ParsedFormula parsed = parser.parse(expression);
-            CompiledFormula compiled = compiler.compile(parsed);
-            cache.put(expression, compiled);
-            
-            return compiled;
+            shrinkWindow();
+            evictOverflow(null);
         } finally {
-            lock.writeLock().unlock();
+            evictionLock.unlock();
         }
     }
     
-    public void precompile(String expression) {
-        getOrCompile(expression);
+    public int getMaximumSize() {
+        return maxCacheSize;
     }
     
     public void clear() {
-        lock.writeLock().lock();
+        evictionLock.lock();
         try {
             cache.clear();
+            window.clear();
+            clockHand = null;
         } finally {
-            lock.writeLock().unlock();
+            evictionLock.unlock();
         }
     }
     
     public int size() {
-        lock.readLock().lock();
+        return cache.size();
+    }
+    
+    public CacheStats getStats() {
+        return new CacheStats(
+            hits.sum(),
+            misses.sum(),
+            evictions.sum(),
+            rejections.sum(),
+            cache.size(),
+            maxCacheSize
+        );
+    }
+    
+    // === Вытеснение ===
+    
+    private Entry compileEntry(String expression) {
+        FormulaParser.ParsedFormula parsed = parser.parse(expression);
+        return new Entry(expression, compiler.compile(parsed));
+    }
+    
+    /**
+     * Поставить только что скомпилированную формулу в окно допуска
+     */
+    private void admit(Entry entry) {
+        evictionLock.lock();
         try {
-            return cache.size();
+            // Конкурентный промах по тому же ключу уже поставил её, или кэш успели очистить
+            if (entry.queued || cache.get(entry.expression) != entry) {
+                return;
+            }
+            entry.queued = true;
+            window.addLast(entry);
+            
+            shrinkWindow();
+            evictOverflow(null);
         } finally {
-            lock.readLock().unlock();
+            evictionLock.unlock();
+        }
+    }
+    
+    /**
+     * Вывести из окна допуска старейшие формулы сверх его ёмкости в основную область
+     */
+    private void shrinkWindow() {
+        int capacity = Math.max(1, maxCacheSize / 100);
+        while (window.size() > capacity) {
+            Entry candidate = window.pollFirst();
+            if (cache.get(candidate.expression) != candidate) {
+                continue;
+            }
+            candidate.inWindow = false;
+            evictOverflow(candidate);
+        }
+    }
+    
+    /**
+     * Вытеснять, пока кэш переполнен
+     * 
+     * @param candidate Формула, только что вышедшая из окна (null - без кандидата):
+     *                  TinyLFU оставляет её, только если к ней обращались чаще, чем к жертве
+     */
+    private void evictOverflow(Entry candidate) {
+        while (cache.size() > maxCacheSize) {
+            Entry victim = nextVictim(candidate);
+            if (victim == null) {
+                // Основная область пуста (очень маленький кэш) - вытесняем из окна
+                victim = window.pollFirst();
+                if (victim == null) {
+                    return;
+                }
+            }
+            
+            FrequencySketch currentSketch = sketch;
+            if (candidate != null
+                    && currentSketch.frequency(candidate.expression.hashCode()) <= currentSketch.frequency(victim.expression.hashCode())) {
+                if (cache.remove(candidate.expression, candidate)) {
+                    rejections.increment();
+                }
+                candidate = null;
+                continue;
+            }
+            
+            if (cache.remove(victim.expression, victim)) {
+                evictions.increment();
+            }
+        }
+    }
+    
+    /**
+     * CLOCK по основной области: пропускаем (и сбрасываем) недавно использованные записи,
+     * возвращаем первую остальную. Записи окна допуска не рассматриваются
+     */
+    private Entry nextVictim(Entry candidate) {
+        int limit = 2 * cache.size() + 1;
+        for (int step = 0; step < limit; step++) {
+            if (clockHand == null || !clockHand.hasNext()) {
+                clockHand = cache.values().iterator();
+                if (!clockHand.hasNext()) {
+                    return null;
+                }
+            }
+            
+            Entry entry = clockHand.next();
+            if (entry == candidate || entry.inWindow) {
+                continue;
+            }
+            if (entry.referenced) {
+                entry.referenced = false;
+                continue;
+            }
+            return entry;
+        }
+        return null;
+    }
+    
+    private static final class Entry {
+        final String expression;
+        final CompiledFormula formula;
+        volatile boolean referenced;
+        
+        // Положение в кэше (только под evictionLock): новая запись считается частью окна,
+        // пока admit не поставит её в очередь окна, чтобы CLOCK её не выбрал
+        boolean queued;
+        boolean inWindow = true;
+        
+        Entry(String expression, CompiledFormula formula) {
+            this.expression = expression;
+            this.formula = formula;
+        }
+        
+        void markReferenced() {
+            // Читаем перед записью, чтобы горячие записи не гоняли кэш-линию между ядрами
+            if (!referenced) {
+                referenced = true;
+            }
         }
     }
     
-    private void evictOldest() {
-        if (!cache.isEmpty()) {
-            String firstKey = cache.keys().nextElement();
-            cache.remove(firstKey);
+    /**
+     * Статистика кэша формул
+     */
+    public record CacheStats(
+        long hits,
+        long misses,
+        long evictions,
+        long rejections,
+        int size,
+        int maxSize
+    ) {
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
         }
     }
 }
\ No newline at end of file
@@ -1,13 +1,19 @@
 package com.example.examplemod.core.formula;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Stack;
-import java.util.function.Function;
+import java.util.Set;
+import java.util.function.DoubleUnaryOperator;
 
 public class FormulaCompiler {
     
-    private static final Map<String, Function<Double, Double>> FUNCTIONS = new HashMap<>();
+    private static final Map<String, DoubleUnaryOperator> FUNCTIONS = new HashMap<>();
+    
+    // Встроенные функции нескольких аргументов (компилируются в отдельные узлы)
+    private static final Set<String> INTRINSICS = Set.of("min", "max", "pow", "clamp", "lerp", "smoothstep");
     
     static {
         FUNCTIONS.put("sin", Math::sin);
@@ -19,51 +25,73 @@ public class FormulaCompiler {
         FUNCTIONS.put("abs", Math::abs);
     }
     
+    // Константы FormulaConfig, подставляемые при компиляции
+    private volatile Map<String, Double> constants = Map.of();
+    
+    /**
+     * Установить константы, которые сворачиваются в формулы при компиляции.
+     * Уже скомпилированные формулы не меняются - кэш нужно очистить
+     */
+    public void setConstants(Map<String, Double> constants) {
+        this.constants = constants != null ? Map.copyOf(constants) : Map.of();
+    }
+    
+    public Map<String, Double> getConstants() {
+        return constants;
+    }
+    
+    /**
+     * Скомпилировать формулу в дерево узлов один раз и оптимизировать его.
+     * Параметры привязываются к глобальным слотам FormulaVariables
+     */
     public CompiledFormula compile(FormulaParser.ParsedFormula parsed) {
         String normalized = parsed.getNormalizedExpression();
-        String[] parameters = parsed.getRequiredParameters();
         
-        Function<Map<String, Double>, Double> compiledFunction = createCompiledFunction(normalized, parameters);
+        FormulaNode root;
+        try {
+            root = new AstBuilder(normalized).build();
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Ошибка компиляции формулы: " + parsed.getOriginalExpression(), e);
+        }
         
-        return new CompiledFormula(parsed.getOriginalExpression(), parameters, compiledFunction);
-    }
-    
-    private Function<Map<String, Double>, Double> createCompiledFunction(String expression, String[] parameters) {
-        return paramMap -> {
-            String processedExpression = expression;
-            
-            for (String param : parameters) {
-                String placeholder = "{" + param + "}";
-                Double value = paramMap.get(param);
-                if (value == null) {
-                    throw new IllegalArgumentException("Отсутствует параметр: " + param);
-                }
-                processedExpression = processedExpression.replace(placeholder, value.toString());
-            }
-            
-            return evaluateExpression(processedExpression);
-        };
+        FormulaOptimizer.Result optimized = new FormulaOptimizer(constants).optimize(root);
+        
+        // Параметры, подставленные как константы, больше не требуются
+        Set<String> parameters = new LinkedHashSet<>();
+        collectParameters(optimized.root(), parameters);
+        for (FormulaNode.Shared shared : optimized.shared()) {
+            collectParameters(shared.definition, parameters);
+        }
+        
+        return new CompiledFormula(parsed.getOriginalExpression(), parameters.toArray(new String[0]),
+                                   optimized.root(), optimized.shared(), FormulaOptimizer.countNodes(root));
     }
     
-    private double evaluateExpression(String expression) {
-        try {
-            return new ExpressionEvaluator().evaluate(expression);
-        } catch (Exception e) {
-            throw new RuntimeException("Ошибка вычисления формулы: " + expression, e);
+    private static void collectParameters(FormulaNode node, Set<String> parameters) {
+        if (node instanceof FormulaNode.Variable variable) {
+            parameters.add(variable.name);
+        }
+        for (FormulaNode child : node.children()) {
+            collectParameters(child, parameters);
         }
     }
     
-    private static class ExpressionEvaluator {
+    /**
+     * Рекурсивный спуск по нормализованному выражению, строящий дерево вместо вычисления
+     */
+    private static class AstBuilder {
         
+        private final String expression;
         private int pos = -1;
         private int ch;
-        private String expression;
         
-        public double evaluate(String expr) {
-            this.expression = expr;
-            this.pos = -1;
+        AstBuilder(String expression) {
+            this.expression = expression;
+        }
+        
+        FormulaNode build() {
             nextChar();
-            double result = parseExpression();
+            FormulaNode result = parseExpression();
             if (pos < expression.length()) {
                 throw new RuntimeException("Неожиданный символ: " + (char)ch);
             }
@@ -83,55 +111,126 @@ public class FormulaCompiler {
             return false;
         }
         
-        private double parseExpression() {
-            double x = parseTerm();
+        private FormulaNode parseExpression() {
+            FormulaNode x = parseTerm();
             for (;;) {
-                if (eat('+')) x += parseTerm();
-                else if (eat('-')) x -= parseTerm();
+                if (eat('+')) x = new FormulaNode.Add(x, parseTerm());
+                else if (eat('-')) x = new FormulaNode.Subtract(x, parseTerm());
                 else return x;
             }
         }
         
-        private double parseTerm() {
-            double x = parseFactor();
+        private FormulaNode parseTerm() {
+            FormulaNode x = parseFactor();
             for (;;) {
-                if (eat('*')) x *= parseFactor();
-                else if (eat('/')) x /= parseFactor();
+                if (eat('*')) x = new FormulaNode.Multiply(x, parseFactor());
+                else if (eat('/')) x = new FormulaNode.Divide(x, parseFactor());
                 else return x;
             }
         }
         
-        private double parseFactor() {
+        private FormulaNode parseFactor() {
             if (eat('+')) return parseFactor();
-            if (eat('-')) return -parseFactor();
+            if (eat('-')) return new FormulaNode.Negate(parseFactor());
             
-            double x;
+            FormulaNode x;
             int startPos = this.pos;
             
             if (eat('(')) {
                 x = parseExpression();
-                eat(')');
+                if (!eat(')')) {
+                    throw new RuntimeException("Ожидалась ')' в позиции " + pos);
+                }
+            } else if (eat('{')) {
+                int nameStart = this.pos;
+                while (ch != '}' && ch != -1) nextChar();
+                String name = expression.substring(nameStart, this.pos);
+                if (!eat('}')) {
+                    throw new RuntimeException("Незакрытый параметр: " + name);
+                }
+                x = new FormulaNode.Variable(name, FormulaVariables.slotOf(name));
             } else if ((ch >= '0' && ch <= '9') || ch == '.') {
                 while ((ch >= '0' && ch <= '9') || ch == '.') nextChar();
-                x = Double.parseDouble(expression.substring(startPos, this.pos));
+                x = new FormulaNode.Constant(Double.parseDouble(expression.substring(startPos, this.pos)));
             } else if (ch >= 'a' && ch <= 'z') {
                 while (ch >= 'a' && ch <= 'z') nextChar();
                 String func = expression.substring(startPos, this.pos);
-                x = parseFactor();
                 
-                Function<Double, Double> function = FUNCTIONS.get(func);
-                if (function != null) {
-                    x = function.apply(x);
-                } else {
+                if (INTRINSICS.contains(func)) {
+                    x = parseIntrinsic(func);
+                    if (eat('^')) x = new FormulaNode.Power(x, parseFactor());
+                    return x;
+                }
+                
+                DoubleUnaryOperator function = FUNCTIONS.get(func);
+                if (function == null) {
                     throw new RuntimeException("Неизвестная функция: " + func);
                 }
+                x = new FormulaNode.Call(func, function, parseFactor());
             } else {
                 throw new RuntimeException("Неожиданный символ: " + (char)ch);
             }
             
-            if (eat('^')) x = Math.pow(x, parseFactor());
+            if (eat('^')) x = new FormulaNode.Power(x, parseFactor());
             
             return x;
         }
+        
+        /**
+         * Встроенная функция нескольких аргументов: name(arg1, arg2, ...)
+         */
+        private FormulaNode parseIntrinsic(String func) {
+            if (!eat('(')) {
+                throw new RuntimeException("Ожидалась '(' после " + func);
+            }
+            
+            List<FormulaNode> args = new ArrayList<>();
+            do {
+                args.add(parseExpression());
+            } while (eat(','));
+            
+            if (!eat(')')) {
+                throw new RuntimeException("Ожидалась ')' после аргументов " + func);
+            }
+            
+            switch (func) {
+                case "min", "max" -> {
+                    if (args.size() < 2) {
+                        throw new RuntimeException(func + " требует минимум 2 аргумента, получено " + args.size());
+                    }
+                    // min(a, b, c) = min(min(a, b), c)
+                    FormulaNode result = args.get(0);
+                    for (int i = 1; i < args.size(); i++) {
+                        result = func.equals("min")
+                            ? new FormulaNode.Min(result, args.get(i))
+                            : new FormulaNode.Max(result, args.get(i));
+                    }
+                    return result;
+                }
+                case "pow" -> {
+                    requireArity(func, args, 2);
+                    return new FormulaNode.Power(args.get(0), args.get(1));
+                }
+                case "clamp" -> {
+                    requireArity(func, args, 3);
+                    return new FormulaNode.Clamp(args.get(0), args.get(1), args.get(2));
+                }
+                case "lerp" -> {
+                    requireArity(func, args, 3);
+                    return new FormulaNode.Lerp(args.get(0), args.get(1), args.get(2));
+                }
+                case "smoothstep" -> {
+                    requireArity(func, args, 3);
+                    return new FormulaNode.SmoothStep(args.get(0), args.get(1), args.get(2));
+                }
+                default -> throw new RuntimeException("Неизвестная функция: " + func);
+            }
+        }
+        
+        private static void requireArity(String func, List<FormulaNode> args, int arity) {
+            if (args.size() != arity) {
+                throw new RuntimeException(func + " требует " + arity + " аргумента, получено " + args.size());
+            }
+        }
     }
-}
\ No newline at end of file
+}
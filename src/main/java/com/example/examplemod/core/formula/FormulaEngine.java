@@ -1,23 +1,67 @@
 package com.example.examplemod.core.formula;
 
 import com.example.examplemod.core.spells.parameters.SpellParameters;
+import net.minecraft.resources.ResourceKey;
 import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.level.Level;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class FormulaEngine {
     
+    private static final Logger LOGGER = LoggerFactory.getLogger(FormulaEngine.class);
+    
     private static FormulaEngine instance;
-    private final FormulaCache cache;
+    
+    public static final int DEFAULT_CACHE_SIZE = 2000;
+    
+    // Итерации замера в describeFormula
+    private static final int BENCHMARK_WARMUP_ITERATIONS = 20_000;
+    private static final int BENCHMARK_ITERATIONS = 100_000;
+    private static final int BENCHMARK_BATCH_SIZE = 256;
+    
     private final ParameterResolver resolver;
+    private final FormulaLoader loader = new FormulaLoader();
+    
+    // Встроенные формулы и формулы, зарегистрированные из кода (основа для каждой перезагрузки)
     private final Map<String, String> defaultFormulas;
     
+    // Текущий набор формул; подменяется целиком (hot reload), читается без блокировок
+    private volatile FormulaTable table;
+    private final Object tableLock = new Object();
+    private int registrationCount; // под tableLock: сколько раз вызывался registerFormula
+    private volatile int cacheMaximumSize = DEFAULT_CACHE_SIZE;
+    
+    // Перезагрузка файла формул вне Main Thread
+    private final ExecutorService reloadExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "FormulaReloader");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile Path formulaFile;
+    private FormulaFileWatcher fileWatcher; // под tableLock
+    
+    // Переиспользуемый фрейм переменных на поток (calculate вызывается из worker-потоков)
+    private final ThreadLocal<double[]> frames = ThreadLocal.withInitial(FormulaVariables::newFrame);
+    
     private FormulaEngine() {
-        this.cache = new FormulaCache(2000);
         this.resolver = new ParameterResolver();
         this.defaultFormulas = new ConcurrentHashMap<>();
         initializeDefaultFormulas();
+        this.table = new FormulaTable(defaultFormulas, Map.of(), new FormulaCache(cacheMaximumSize), "builtin", "1.0");
     }
     
     public static FormulaEngine getInstance() {
@@ -46,41 +90,350 @@ public class FormulaEngine {
     }
     
     public double calculate(String formulaKey, SpellParameters spellParams, Player caster) {
-        String formulaExpression = defaultFormulas.get(formulaKey);
+        CompiledFormula formula = lookup(table, formulaKey);
+        if (formula.getUnresolvedParameter() != null) {
+            throw new IllegalArgumentException("Отсутствует параметр: " + formula.getUnresolvedParameter());
+        }
+        
+        double[] frame = frameFor(formula);
+        resolver.resolveInto(frame, spellParams, caster);
+        
+        return formula.evaluate(frame);
+    }
+    
+    /**
+     * Массовое вычисление формулы для всех строк пакета (например, всех кастов тика)
+     * @param out out[i] - результат для строки i
+     */
+    public void calculateBatch(String formulaKey, FormulaBatch batch, double[] out) {
+        CompiledFormula formula = lookup(table, formulaKey);
+        if (formula.getUnresolvedParameter() != null) {
+            throw new IllegalArgumentException("Отсутствует параметр: " + formula.getUnresolvedParameter());
+        }
+        
+        formula.evaluateBatch(batch, out);
+    }
+    
+    /**
+     * Добавить в пакет строку с параметрами каста
+     * @return индекс строки
+     */
+    public int addCast(FormulaBatch batch, SpellParameters spellParams, Player caster) {
+        double[] frame = frames.get();
+        resolver.resolveInto(frame, spellParams, caster);
+        return batch.addRow(frame);
+    }
+    
+    /**
+     * Скомпилированная формула по ключу из снимка таблицы
+     */
+    private static CompiledFormula lookup(FormulaTable current, String formulaKey) {
+        String formulaExpression = current.formulas.get(formulaKey);
         if (formulaExpression == null) {
             throw new IllegalArgumentException("Неизвестная формула: " + formulaKey);
         }
+        return current.cache.getOrCompile(formulaExpression);
+    }
+    
+    /**
+     * Фрейм текущего потока; растёт, если после его создания появились новые слоты
+     */
+    private double[] frameFor(CompiledFormula formula) {
+        double[] frame = frames.get();
+        if (frame.length < formula.getFrameSize()) {
+            frame = FormulaVariables.newFrame();
+            frames.set(frame);
+        }
+        return frame;
+    }
+    
+    /**
+     * Применить конфигурацию формул: константы сворачиваются в формулы при компиляции.
+     * Все формулы компилируются заранее; при любой ошибке текущая таблица остаётся в силе
+     * @throws IllegalArgumentException со списком всех ошибочных формул
+     */
+    public void applyConfig(FormulaLoader.FormulaConfig config) {
+        applyConfig(config, "config");
+    }
+    
+    private void applyConfig(FormulaLoader.FormulaConfig config, String source) {
+        // Таблица собирается без блокировки; если за это время registerFormula добавил
+        // формулу, собираем заново, иначе она пропала бы из новой таблицы
+        FormulaTable next;
+        while (true) {
+            int seenRegistrations;
+            synchronized (tableLock) {
+                seenRegistrations = registrationCount;
+            }
+            next = buildTable(config, source);
+            synchronized (tableLock) {
+                if (registrationCount == seenRegistrations) {
+                    table = next;
+                    break;
+                }
+            }
+        }
+        LOGGER.info("Formula table {} (version {}) applied: {} formulas, {} constants",
+                source, next.version, next.formulas.size(), next.constants.size());
+    }
+    
+    /**
+     * Собрать и полностью скомпилировать новую таблицу, не трогая текущую
+     */
+    private FormulaTable buildTable(FormulaLoader.FormulaConfig config, String source) {
+        if (config == null || !config.isValid()) {
+            throw new IllegalArgumentException("Некорректная конфигурация формул в " + source + ": нет секции formulas");
+        }
         
-        CompiledFormula formula = cache.getOrCompile(formulaExpression);
-        Map<String, Double> parameters = resolver.resolveParameters(spellParams, caster);
+        Map<String, Double> constants = new HashMap<>();
+        if (config.constants != null) {
+            for (Map.Entry<String, Double> entry : config.constants.entrySet()) {
+                if (entry.getValue() == null || !Double.isFinite(entry.getValue())) {
+                    throw new IllegalArgumentException("Константа '" + entry.getKey() + "' в " + source + " не является конечным числом");
+                }
+                constants.put(entry.getKey(), entry.getValue());
+            }
+        }
+        
+        // Встроенные и зарегистрированные из кода формулы, поверх - формулы файла
+        Map<String, String> formulas = new HashMap<>(defaultFormulas);
+        formulas.putAll(config.formulas);
+        
+        FormulaCache cache = new FormulaCache(cacheMaximumSize);
+        cache.setConstants(constants);
+        
+        List<String> errors = new ArrayList<>();
+        for (Map.Entry<String, String> entry : config.formulas.entrySet()) {
+            String expression = entry.getValue();
+            if (expression == null || expression.isBlank()) {
+                errors.add("'" + entry.getKey() + "': пустое выражение");
+                continue;
+            }
+            try {
+                cache.precompile(expression);
+            } catch (RuntimeException e) {
+                errors.add("'" + entry.getKey() + "': " + describeError(e));
+            }
+        }
+        
+        if (!errors.isEmpty()) {
+            throw new IllegalArgumentException("Ошибки в формулах " + source + ": " + String.join("; ", errors));
+        }
+        
+        // Встроенные формулы тоже компилируем с новыми константами
+        for (String expression : formulas.values()) {
+            cache.precompile(expression);
+        }
         
-        return formula.evaluate(parameters);
+        return new FormulaTable(formulas, constants, cache, source,
+                config.version != null ? config.version : "1.0");
+    }
+    
+    private static String describeError(Throwable error) {
+        StringBuilder message = new StringBuilder(String.valueOf(error.getMessage()));
+        for (Throwable cause = error.getCause(); cause != null; cause = cause.getCause()) {
+            message.append(" -> ").append(cause.getMessage());
+        }
+        return message.toString();
+    }
+    
+    // === HOT RELOAD ===
+    
+    /**
+     * Настроить файл формул: загрузить его, если он существует, и (опционально) следить за изменениями
+     */
+    public void configureFormulaFile(Path file, boolean watch) {
+        this.formulaFile = file;
+        
+        synchronized (tableLock) {
+            if (fileWatcher != null && (!watch || !fileWatcher.getFile().equals(file.toAbsolutePath()))) {
+                fileWatcher.stop();
+                fileWatcher = null;
+            }
+            if (watch && fileWatcher == null) {
+                try {
+                    fileWatcher = FormulaFileWatcher.start(file, () -> reloadExecutor.execute(this::reloadAndLog));
+                } catch (IOException e) {
+                    LOGGER.warn("Cannot watch formula file {}: {}", file, e.getMessage());
+                }
+            }
+        }
+        
+        if (Files.exists(file)) {
+            reloadExecutor.execute(this::reloadAndLog);
+        }
+    }
+    
+    /**
+     * Перезагрузить настроенный файл формул в фоновом потоке.
+     * Вычисления не блокируются: до успешной компиляции работает старая таблица
+     */
+    public CompletableFuture<ReloadResult> reloadAsync() {
+        Path file = formulaFile;
+        if (file == null) {
+            return CompletableFuture.completedFuture(ReloadResult.failure("Файл формул не настроен"));
+        }
+        return CompletableFuture.supplyAsync(() -> reload(file), reloadExecutor);
+    }
+    
+    /**
+     * Загрузить, проверить и атомарно применить файл формул
+     */
+    public ReloadResult reload(Path file) {
+        try {
+            FormulaLoader.FormulaConfig config = loader.loadConfigFromJson(file);
+            applyConfig(config, file.toString());
+            FormulaTable current = table;
+            return new ReloadResult(true, "Загружено " + current.formulas.size() + " формул из " + file,
+                    current.formulas.size(), current.version);
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.warn("Formula reload rejected, keeping previous table: {}", e.getMessage());
+            return ReloadResult.failure(e.getMessage());
+        }
+    }
+    
+    private void reloadAndLog() {
+        Path file = formulaFile;
+        if (file != null) {
+            reload(file);
+        }
+    }
+    
+    /**
+     * Отладочное описание формулы: оптимизированная программа и её стоимость.
+     * Замер занимает заметное время - вызывать не из Main Thread
+     */
+    public FormulaReport describeFormula(String formulaKey) {
+        FormulaTable current = table;
+        CompiledFormula formula = lookup(current, formulaKey);
+        String formulaExpression = current.formulas.get(formulaKey);
+        
+        // Замер на фрейме из единиц (без реального игрока): порядок стоимости, не точное значение
+        double[] frame = new double[formula.getFrameSize()];
+        Arrays.fill(frame, 1.0);
+        double sink = 0;
+        for (int i = 0; i < BENCHMARK_WARMUP_ITERATIONS; i++) {
+            sink += formula.evaluate(frame);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            sink += formula.evaluate(frame);
+        }
+        double nanosPerEvaluation = (double) (System.nanoTime() - start) / BENCHMARK_ITERATIONS;
+        
+        // Тот же замер в пакетном режиме (стоимость одной строки)
+        FormulaBatch batch = new FormulaBatch(BENCHMARK_BATCH_SIZE);
+        for (int row = 0; row < BENCHMARK_BATCH_SIZE; row++) {
+            batch.addRow(frame);
+        }
+        double[] out = new double[BENCHMARK_BATCH_SIZE];
+        int batchRounds = BENCHMARK_ITERATIONS / BENCHMARK_BATCH_SIZE;
+        for (int i = 0; i < batchRounds; i++) {
+            formula.evaluateBatch(batch, out);
+        }
+        start = System.nanoTime();
+        for (int i = 0; i < batchRounds; i++) {
+            formula.evaluateBatch(batch, out);
+            sink += out[i % BENCHMARK_BATCH_SIZE];
+        }
+        double batchNanosPerRow = (double) (System.nanoTime() - start) / (batchRounds * (long) BENCHMARK_BATCH_SIZE);
+        
+        return new FormulaReport(
+            formulaKey,
+            formulaExpression,
+            formula.describeProgram(),
+            formula.getRequiredParameters(),
+            formula.getSourceNodeCount(),
+            formula.getNodeCount(),
+            formula.getSharedCount(),
+            nanosPerEvaluation,
+            batchNanosPerRow,
+            sink
+        );
     }
     
     public void registerFormula(String key, String expression) {
-        cache.precompile(expression);
-        defaultFormulas.put(key, expression);
+        synchronized (tableLock) {
+            FormulaTable current = table;
+            current.cache.precompile(expression);
+            defaultFormulas.put(key, expression);
+            registrationCount++;
+            table = current.withFormula(key, expression);
+        }
     }
     
     public void precompileAllFormulas() {
-        for (String expression : defaultFormulas.values()) {
-            cache.precompile(expression);
+        FormulaTable current = table;
+        for (String expression : current.formulas.values()) {
+            current.cache.precompile(expression);
         }
     }
     
     public boolean hasFormula(String key) {
-        return defaultFormulas.containsKey(key);
+        return table.formulas.containsKey(key);
     }
     
     public String getFormula(String key) {
-        return defaultFormulas.get(key);
+        return table.formulas.get(key);
     }
     
     public void clearCache() {
-        cache.clear();
+        table.cache.clear();
     }
     
     public int getCacheSize() {
-        return cache.size();
+        return table.cache.size();
     }
+    
+    /**
+     * Изменить предельный размер кэша скомпилированных формул
+     */
+    public void setCacheMaximumSize(int maxSize) {
+        cacheMaximumSize = maxSize;
+        table.cache.setMaximumSize(maxSize);
+    }
+    
+    public FormulaCache.CacheStats getCacheStats() {
+        return table.cache.getStats();
+    }
+    
+    /**
+     * Забыть кэшированные модификаторы мира выгруженного измерения
+     */
+    public void forgetDimension(ResourceKey<Level> dimension) {
+        resolver.forgetDimension(dimension);
+    }
+    
+    /**
+     * Откуда загружены текущие формулы и какой версии
+     */
+    public String getTableSource() {
+        FormulaTable current = table;
+        return current.source + " v" + current.version;
+    }
+    
+    /**
+     * Результат перезагрузки формул
+     */
+    public record ReloadResult(boolean success, String message, int formulaCount, String version) {
+        static ReloadResult failure(String message) {
+            return new ReloadResult(false, message, 0, null);
+        }
+    }
+    
+    /**
+     * Отладочная информация о скомпилированной формуле
+     */
+    public record FormulaReport(
+        String key,
+        String expression,
+        List<String> program,
+        String[] parameters,
+        int sourceNodes,
+        int optimizedNodes,
+        int sharedSubexpressions,
+        double nanosPerEvaluation,
+        double batchNanosPerRow,
+        double checksum // Сумма результатов замера, чтобы JIT не выкинул вычисления
+    ) {}
 }
\ No newline at end of file
@@ -0,0 +1,96 @@
+package com.example.examplemod.core.formula;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+/**
+ * Следит за файлом формул и перезагружает его при изменении
+ *
+ * Редакторы часто пишут файл в несколько приёмов, поэтому после первого события
+ * ждём DEBOUNCE_MILLIS и схлопываем все накопившиеся события в одну перезагрузку.
+ */
+final class FormulaFileWatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FormulaFileWatcher.class);
+
+    private static final long DEBOUNCE_MILLIS = 500;
+
+    private final Path file;
+    private final Runnable onChange;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    private FormulaFileWatcher(Path file, Runnable onChange) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.onChange = onChange;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.file.getParent().register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+        this.thread = new Thread(this::run, "FormulaFileWatcher");
+        this.thread.setDaemon(true);
+    }
+
+    static FormulaFileWatcher start(Path file, Runnable onChange) throws IOException {
+        FormulaFileWatcher watcher = new FormulaFileWatcher(file, onChange);
+        watcher.thread.start();
+        LOGGER.info("Watching formula file {}", watcher.file);
+        return watcher;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    void stop() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to close formula file watcher: {}", e.getMessage());
+        }
+        thread.interrupt();
+    }
+
+    private void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.take();
+                boolean changed = drainEvents(key);
+
+                if (changed) {
+                    // Debounce: ждём, пока запись файла закончится, и забираем хвост событий
+                    Thread.sleep(DEBOUNCE_MILLIS);
+                    WatchKey pending;
+                    while ((pending = watchService.poll()) != null) {
+                        drainEvents(pending);
+                    }
+                    onChange.run();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Остановлен
+        } catch (Exception e) {
+            LOGGER.error("Formula file watcher stopped unexpectedly", e);
+        }
+    }
+
+    private boolean drainEvents(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.context() instanceof Path changedPath && file.getFileName().equals(changedPath)) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+}
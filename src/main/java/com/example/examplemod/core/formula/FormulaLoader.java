@@ -2,10 +2,15 @@ package com.example.examplemod.core.formula;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
 
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -14,9 +19,13 @@ public class FormulaLoader {
     private static final Gson GSON = new Gson();
     
     public Map<String, String> loadFormulasFromJson(String filePath) throws IOException {
+        return loadFormulasFromJson(Paths.get(filePath));
+    }
+    
+    public Map<String, String> loadFormulasFromJson(Path file) throws IOException {
         Map<String, String> formulas = new HashMap<>();
         
-        try (FileReader reader = new FileReader(filePath)) {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
             JsonObject root = JsonParser.parseReader(reader).getAsJsonObject();
             
             if (root.has("formulas")) {
@@ -26,15 +35,33 @@ public class FormulaLoader {
                     formulas.put(key, expression);
                 }
             }
+        } catch (JsonParseException | IllegalStateException e) {
+            throw new IOException("Ошибка JSON в " + file + ": " + e.getMessage(), e);
         }
         
         return formulas;
     }
     
     public FormulaConfig loadConfigFromJson(String filePath) throws IOException {
-        try (FileReader reader = new FileReader(filePath)) {
-            return GSON.fromJson(reader, FormulaConfig.class);
+        return loadConfigFromJson(Paths.get(filePath));
+    }
+    
+    /**
+     * Прочитать конфигурацию формул
+     * @throws IOException если файл не читается или JSON некорректен (сообщение содержит строку и столбец)
+     */
+    public FormulaConfig loadConfigFromJson(Path file) throws IOException {
+        FormulaConfig config;
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            config = GSON.fromJson(reader, FormulaConfig.class);
+        } catch (JsonParseException e) {
+            throw new IOException("Ошибка JSON в " + file + ": " + e.getMessage(), e);
+        }
+        
+        if (config == null) {
+            throw new IOException("Пустой файл формул: " + file);
         }
+        return config;
     }
     
     public static class FormulaConfig {
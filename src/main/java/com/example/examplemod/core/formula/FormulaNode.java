@@ -0,0 +1,555 @@
+package com.example.examplemod.core.formula;
+
+import java.util.Arrays;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Узел скомпилированного дерева формулы
+ *
+ * Формула разбирается один раз, дальше каждое вычисление - это обход дерева
+ * на примитивных double без строк, парсинга и упаковки. Переменные привязаны
+ * к индексам (слотам) во фрейме double[].
+ */
+public abstract class FormulaNode {
+
+    static final FormulaNode[] NO_CHILDREN = new FormulaNode[0];
+
+    FormulaNode() {
+    }
+
+    /**
+     * Вычислить узел для значений переменных во фрейме
+     */
+    public abstract double evaluate(double[] frame);
+
+    /**
+     * Вычислить узел для всех строк пакета в out[0..batch.size()):
+     * один плотный цикл на узел вместо обхода дерева на каждую строку
+     */
+    abstract void evaluateBatch(FormulaBatch batch, double[] out);
+
+    /**
+     * Операнды узла (для оптимизатора и обходов дерева)
+     */
+    FormulaNode[] children() {
+        return NO_CHILDREN;
+    }
+
+    /**
+     * Тот же узел с другими операндами; листья возвращают себя
+     */
+    FormulaNode withChildren(FormulaNode[] children) {
+        return this;
+    }
+
+    // === Листья ===
+
+    static final class Constant extends FormulaNode {
+        final double value;
+
+        Constant(double value) {
+            this.value = value;
+        }
+
+        @Override
+        public double evaluate(double[] frame) {
+            return value;
+        }
+
+        @Override
+        void evaluateBatch(FormulaBatch batch, double[] out) {
+            Arrays.fill(out, 0, batch.size(), value);
+        }
+
+        @Override
+        public String toString() {
+            return Double.toString(value);
+        }
+    }
+
+    static final class Variable extends FormulaNode {
+        final String name;
+        final int slot;
+
+        Variable(String name, int slot) {
+            this.name = name;
+            this.slot = slot;
+        }
+
+        @Override
+        public double evaluate(double[] frame) {
+            return frame[slot];
+        }
+
+        @Override
+        void evaluateBatch(FormulaBatch batch, double[] out) {
+            System.arraycopy(batch.column(slot), 0, out, 0, batch.size());
+        }
+
+        @Override
+        public String toString() {
+            return "{" + name + "}";
+        }
+    }
+
+    // === Унарные операции ===
+
+    static final class Negate extends FormulaNode {
+        final FormulaNode operand;
+
+        Negate(FormulaNode operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        public double evaluate(double[] frame) {
+            return -operand.evaluate(frame);
+        }
+
+        @Override
+        void evaluateBatch(FormulaBatch batch, double[] out) {
+            operand.evaluateBatch(batch, out);
+            int count = batch.size();
+            for (int i = 0; i < count; i++) {
+                out[i] = -out[i];
+            }
+        }
+
+        @Override
+        FormulaNode[] children() {
+            return new FormulaNode[] { operand };
+        }
+
+        @Override
+        FormulaNode withChildren(FormulaNode[] children) {
+            return new Negate(children[0]);
+        }
+
+        @Override
+        public String toString() {
+            return "-(" + operand + ")";
+        }
+    }
+
+    /**
+     * Общее подвыражение (CSE): вычисляется один раз в прологе формулы и читается из своего слота
+     */
+    static final class Shared extends FormulaNode {
+        final String name;
+        final int slot;
+        final FormulaNode definition;
+
+        Shared(String name, int slot, FormulaNode definition) {
+            this.name = name;
+            this.slot = slot;
+            this.definition = definition;
+        }
+
+        @Override
+        public double evaluate(double[] frame) {
+            return frame[slot];
+        }
+
+        @Override
+        void evaluateBatch(FormulaBatch batch, double[] out) {
+            System.arraycopy(batch.column(slot), 0, out, 0, batch.size());
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    static final class Call extends FormulaNode {
+        final String function;
+        final DoubleUnaryOperator operator;
+        final FormulaNode argument;
+
+        Call(String function, DoubleUnaryOperator operator, FormulaNode argument) {
+            this.function = function;
+            this.operator = operator;
+            this.argument = argument;
+        }
+
+        @Override
+        public double evaluate(double[] frame) {
+            return operator.applyAsDouble(argument.evaluate(frame));
+        }
+
+        @Override
+        void evaluateBatch(FormulaBatch batch, double[] out) {
+            argument.evaluateBatch(batch, out);
+            int count = batch.size();
+            for (int i = 0; i < count; i++) {
+                out[i] = operator.applyAsDouble(out[i]);
+            }
+        }
+
+        @Override
+        FormulaNode[] children() {
+            return new FormulaNode[] { argument };
+        }
+
+        @Override
+        FormulaNode withChildren(FormulaNode[] children) {
+            return new Call(function, operator, children[0]);
+        }
+
+        @Override
+        public String toString() {
+            return function + "(" + argument + ")";
+        }
+    }
+
+    // === Бинарные операции (отдельный класс на оператор - без switch в горячем пути) ===
+
+    abstract static class Binary extends FormulaNode {
+        final FormulaNode left;
+        final FormulaNode right;
+
+        Binary(FormulaNode left, FormulaNode right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        abstract char symbol();
+
+        /**
+         * Тот же оператор с другими операндами (для оптимизатора)
+         */
+        abstract Binary withOperands(FormulaNode left, FormulaNode right);
+
+        /**
+         * out[i] = out[i] (op) right[i] для строк пакета
+         */
+        abstract void combine(double[] out, double[] right, int count);
+
+        @Override
+        void evaluateBatch(FormulaBatch batch, double[] out) {
+            int mark = batch.mark();
+            left.evaluateBatch(batch, out);
+            combine(out, batch.operand(right), batch.size());
+            batch.reset(mark);
+        }
+
+        @Override
+        FormulaNode[] children() {
+            return new FormulaNode[] { left, right };
+        }
+
+        @Override
+        FormulaNode withChildren(FormulaNode[] children) {
+            return withOperands(children[0], children[1]);
+        }
+
+        @Override
+        public String toString() {
+            return "(" + left + " " + symbol() + " " + right + ")";
+        }
+    }
+
+    static final class Add extends Binary {
+        Add(FormulaNode left, FormulaNode right) { super(left, right); }
+
+        @Override
+        Binary withOperands(FormulaNode left, FormulaNode right) { return new Add(left, right); }
+
+        @Override
+        void combine(double[] out, double[] right, int count) {
+            for (int i = 0; i < count; i++) {
+                out[i] += right[i];
+            }
+        }
+
+        @Override
+        public double evaluate(double[] frame) {
+            return left.evaluate(frame) + right.evaluate(frame);
+        }
+
+        @Override
+        char symbol() { return '+'; }
+    }
+
+    static final class Subtract extends Binary {
+        Subtract(FormulaNode left, FormulaNode right) { super(left, right); }
+
+        @Override
+        Binary withOperands(FormulaNode left, FormulaNode right) { return new Subtract(left, right); }
+
+        @Override
+        void combine(double[] out, double[] right, int count) {
+            for (int i = 0; i < count; i++) {
+                out[i] -= right[i];
+            }
+        }
+
+        @Override
+        public double evaluate(double[] frame) {
+            return left.evaluate(frame) - right.evaluate(frame);
+        }
+
+        @Override
+        char symbol() { return '-'; }
+    }
+
+    static final class Multiply extends Binary {
+        Multiply(FormulaNode left, FormulaNode right) { super(left, right); }
+
+        @Override
+        Binary withOperands(FormulaNode left, FormulaNode right) { return new Multiply(left, right); }
+
+        @Override
+        void combine(double[] out, double[] right, int count) {
+            for (int i = 0; i < count; i++) {
+                out[i] *= right[i];
+            }
+        }
+
+        @Override
+        public double evaluate(double[] frame) {
+            return left.evaluate(frame) * right.evaluate(frame);
+        }
+
+        @Override
+        char symbol() { return '*'; }
+    }
+
+    static final class Divide extends Binary {
+        Divide(FormulaNode left, FormulaNode right) { super(left, right); }
+
+        @Override
+        Binary withOperands(FormulaNode left, FormulaNode right) { return new Divide(left, right); }
+
+        @Override
+        void combine(double[] out, double[] right, int count) {
+            for (int i = 0; i < count; i++) {
+                out[i] /= right[i];
+            }
+        }
+
+        @Override
+        public double evaluate(double[] frame) {
+            return left.evaluate(frame) / right.evaluate(frame);
+        }
+
+        @Override
+        char symbol() { return '/'; }
+    }
+
+    static final class Power extends Binary {
+        Power(FormulaNode left, FormulaNode right) { super(left, right); }
+
+        @Override
+        Binary withOperands(FormulaNode left, FormulaNode right) { return new Power(left, right); }
+
+        @Override
+        void combine(double[] out, double[] right, int count) {
+            for (int i = 0; i < count; i++) {
+                out[i] = Math.pow(out[i], right[i]);
+            }
+        }
+
+        @Override
+        public double evaluate(double[] frame) {
+            return Math.pow(left.evaluate(frame), right.evaluate(frame));
+        }
+
+        @Override
+        char symbol() { return '^'; }
+    }
+
+    // === Встроенные функции нескольких аргументов (прямые вызовы Math без упаковки) ===
+
+    abstract static class BinaryFunction extends Binary {
+        BinaryFunction(FormulaNode left, FormulaNode right) { super(left, right); }
+
+        abstract String function();
+
+        @Override
+        char symbol() { return ','; }
+
+        @Override
+        public String toString() {
+            return function() + "(" + left + ", " + right + ")";
+        }
+    }
+
+    static final class Min extends BinaryFunction {
+        Min(FormulaNode left, FormulaNode right) { super(left, right); }
+
+        @Override
+        Binary withOperands(FormulaNode left, FormulaNode right) { return new Min(left, right); }
+
+        @Override
+        void combine(double[] out, double[] right, int count) {
+            for (int i = 0; i < count; i++) {
+                out[i] = Math.min(out[i], right[i]);
+            }
+        }
+
+        @Override
+        public double evaluate(double[] frame) {
+            return Math.min(left.evaluate(frame), right.evaluate(frame));
+        }
+
+        @Override
+        String function() { return "min"; }
+    }
+
+    static final class Max extends BinaryFunction {
+        Max(FormulaNode left, FormulaNode right) { super(left, right); }
+
+        @Override
+        Binary withOperands(FormulaNode left, FormulaNode right) { return new Max(left, right); }
+
+        @Override
+        void combine(double[] out, double[] right, int count) {
+            for (int i = 0; i < count; i++) {
+                out[i] = Math.max(out[i], right[i]);
+            }
+        }
+
+        @Override
+        public double evaluate(double[] frame) {
+            return Math.max(left.evaluate(frame), right.evaluate(frame));
+        }
+
+        @Override
+        String function() { return "max"; }
+    }
+
+    abstract static class Ternary extends FormulaNode {
+        final FormulaNode first;
+        final FormulaNode second;
+        final FormulaNode third;
+
+        Ternary(FormulaNode first, FormulaNode second, FormulaNode third) {
+            this.first = first;
+            this.second = second;
+            this.third = third;
+        }
+
+        abstract String function();
+
+        abstract Ternary withOperands(FormulaNode first, FormulaNode second, FormulaNode third);
+
+        /**
+         * out[i] = f(out[i], second[i], third[i]) для строк пакета
+         */
+        abstract void combine(double[] out, double[] second, double[] third, int count);
+
+        @Override
+        void evaluateBatch(FormulaBatch batch, double[] out) {
+            int mark = batch.mark();
+            first.evaluateBatch(batch, out);
+            double[] secondValues = batch.operand(second);
+            double[] thirdValues = batch.operand(third);
+            combine(out, secondValues, thirdValues, batch.size());
+            batch.reset(mark);
+        }
+
+        @Override
+        FormulaNode[] children() {
+            return new FormulaNode[] { first, second, third };
+        }
+
+        @Override
+        FormulaNode withChildren(FormulaNode[] children) {
+            return withOperands(children[0], children[1], children[2]);
+        }
+
+        @Override
+        public String toString() {
+            return function() + "(" + first + ", " + second + ", " + third + ")";
+        }
+    }
+
+    /**
+     * clamp(x, min, max)
+     */
+    static final class Clamp extends Ternary {
+        Clamp(FormulaNode value, FormulaNode min, FormulaNode max) { super(value, min, max); }
+
+        @Override
+        Ternary withOperands(FormulaNode first, FormulaNode second, FormulaNode third) { return new Clamp(first, second, third); }
+
+        @Override
+        void combine(double[] out, double[] second, double[] third, int count) {
+            for (int i = 0; i < count; i++) {
+                out[i] = Math.min(Math.max(out[i], second[i]), third[i]);
+            }
+        }
+
+        @Override
+        public double evaluate(double[] frame) {
+            return Math.min(Math.max(first.evaluate(frame), second.evaluate(frame)), third.evaluate(frame));
+        }
+
+        @Override
+        String function() { return "clamp"; }
+    }
+
+    /**
+     * lerp(a, b, t) = a + (b - a) * t
+     */
+    static final class Lerp extends Ternary {
+        Lerp(FormulaNode from, FormulaNode to, FormulaNode t) { super(from, to, t); }
+
+        @Override
+        Ternary withOperands(FormulaNode first, FormulaNode second, FormulaNode third) { return new Lerp(first, second, third); }
+
+        @Override
+        void combine(double[] out, double[] second, double[] third, int count) {
+            for (int i = 0; i < count; i++) {
+                out[i] = out[i] + (second[i] - out[i]) * third[i];
+            }
+        }
+
+        @Override
+        public double evaluate(double[] frame) {
+            double from = first.evaluate(frame);
+            return from + (second.evaluate(frame) - from) * third.evaluate(frame);
+        }
+
+        @Override
+        String function() { return "lerp"; }
+    }
+
+    /**
+     * smoothstep(edge0, edge1, x): 0 до edge0, 1 после edge1, кубическая интерполяция между ними
+     */
+    static final class SmoothStep extends Ternary {
+        SmoothStep(FormulaNode edge0, FormulaNode edge1, FormulaNode value) { super(edge0, edge1, value); }
+
+        @Override
+        Ternary withOperands(FormulaNode first, FormulaNode second, FormulaNode third) { return new SmoothStep(first, second, third); }
+
+        @Override
+        void combine(double[] out, double[] second, double[] third, int count) {
+            for (int i = 0; i < count; i++) {
+                out[i] = smoothStep(out[i], second[i], third[i]);
+            }
+        }
+
+        @Override
+        public double evaluate(double[] frame) {
+            return smoothStep(first.evaluate(frame), second.evaluate(frame), third.evaluate(frame));
+        }
+
+        /**
+         * При совпадающих границах переход вырождается в ступеньку (без деления на ноль)
+         */
+        private static double smoothStep(double edge0, double edge1, double value) {
+            if (edge0 == edge1) {
+                return value < edge0 ? 0.0 : 1.0;
+            }
+            double t = (value - edge0) / (edge1 - edge0);
+            t = Math.min(Math.max(t, 0.0), 1.0);
+            return t * t * (3.0 - 2.0 * t);
+        }
+
+        @Override
+        String function() { return "smoothstep"; }
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.examplemod.core.formula;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Оптимизатор дерева формулы (выполняется один раз при компиляции)
+ *
+ * 1. Подстановка констант FormulaConfig вместо переменных
+ * 2. Свёртка констант: узел с константными операндами заменяется значением
+ * 3. Алгебраические тождества: x+0, x-0, x*1, x/1, x^1 -> x; x^0 -> 1; -(-x) -> x
+ *    (x*0 не сворачивается: для бесконечности и NaN результат не 0)
+ * 4. Устранение общих подвыражений: одинаковые поддеревья вычисляются один раз
+ *    в прологе формулы и сохраняются в служебный слот фрейма
+ */
+final class FormulaOptimizer {
+
+    // Префикс служебных слотов общих подвыражений (не пересекается с именами {param})
+    private static final String SHARED_PREFIX = "$t";
+
+    private static final double[] NO_FRAME = new double[0];
+
+    private final Map<String, Double> constants;
+
+    FormulaOptimizer(Map<String, Double> constants) {
+        this.constants = constants;
+    }
+
+    Result optimize(FormulaNode root) {
+        FormulaNode simplified = simplify(root);
+
+        // Хеш-консинг: структурно одинаковые поддеревья становятся одним объектом
+        Map<String, FormulaNode> interned = new HashMap<>();
+        FormulaNode canonical = intern(simplified, interned);
+
+        // Сколько родителей ссылается на каждый узел получившегося DAG
+        IdentityHashMap<FormulaNode, Integer> references = new IdentityHashMap<>();
+        countReferences(canonical, references, new IdentityHashMap<>());
+
+        List<FormulaNode.Shared> shared = new ArrayList<>();
+        FormulaNode optimized = extractShared(canonical, references, new IdentityHashMap<>(), shared);
+
+        return new Result(optimized, shared.toArray(new FormulaNode.Shared[0]));
+    }
+
+    /**
+     * Число узлов, которые обходятся при одном вычислении (стоимость формулы)
+     */
+    static int countNodes(FormulaNode node) {
+        int count = 1;
+        for (FormulaNode child : node.children()) {
+            count += countNodes(child);
+        }
+        return count;
+    }
+
+    // === Свёртка и тождества ===
+
+    private FormulaNode simplify(FormulaNode node) {
+        if (node instanceof FormulaNode.Variable variable) {
+            Double value = constants.get(variable.name);
+            return value != null ? new FormulaNode.Constant(value) : node;
+        }
+
+        if (node instanceof FormulaNode.Negate negate) {
+            FormulaNode operand = simplify(negate.operand);
+            if (operand instanceof FormulaNode.Constant constant) {
+                return new FormulaNode.Constant(-constant.value);
+            }
+            if (operand instanceof FormulaNode.Negate inner) {
+                return inner.operand;
+            }
+            return new FormulaNode.Negate(operand);
+        }
+
+        FormulaNode[] children = node.children();
+        if (children.length == 0) {
+            return node;
+        }
+
+        boolean allConstant = true;
+        FormulaNode[] simplified = new FormulaNode[children.length];
+        for (int i = 0; i < children.length; i++) {
+            simplified[i] = simplify(children[i]);
+            allConstant &= simplified[i] instanceof FormulaNode.Constant;
+        }
+
+        FormulaNode rebuilt = node.withChildren(simplified);
+        if (allConstant) {
+            return fold(rebuilt);
+        }
+        return rebuilt instanceof FormulaNode.Binary binary ? applyIdentities(binary) : rebuilt;
+    }
+
+    private FormulaNode applyIdentities(FormulaNode.Binary node) {
+        FormulaNode left = node.left;
+        FormulaNode right = node.right;
+
+        if (node instanceof FormulaNode.Add) {
+            if (isConstant(right, 0.0)) return left;
+            if (isConstant(left, 0.0)) return right;
+        } else if (node instanceof FormulaNode.Subtract) {
+            if (isConstant(right, 0.0)) return left;
+            if (isConstant(left, 0.0)) return new FormulaNode.Negate(right);
+        } else if (node instanceof FormulaNode.Multiply) {
+            if (isConstant(right, 1.0)) return left;
+            if (isConstant(left, 1.0)) return right;
+            if (isConstant(right, -1.0)) return new FormulaNode.Negate(left);
+            if (isConstant(left, -1.0)) return new FormulaNode.Negate(right);
+        } else if (node instanceof FormulaNode.Divide) {
+            if (isConstant(right, 1.0)) return left;
+        } else if (node instanceof FormulaNode.Power) {
+            if (isConstant(right, 1.0)) return left;
+            if (isConstant(right, 0.0)) return new FormulaNode.Constant(1.0);
+        }
+        return node;
+    }
+
+    private static FormulaNode.Constant fold(FormulaNode node) {
+        return new FormulaNode.Constant(node.evaluate(NO_FRAME));
+    }
+
+    private static boolean isConstant(FormulaNode node, double value) {
+        return node instanceof FormulaNode.Constant constant && constant.value == value;
+    }
+
+    // === Общие подвыражения ===
+
+    private FormulaNode intern(FormulaNode node, Map<String, FormulaNode> interned) {
+        FormulaNode[] children = node.children();
+        FormulaNode rebuilt = node;
+        if (children.length > 0) {
+            FormulaNode[] canonical = new FormulaNode[children.length];
+            for (int i = 0; i < children.length; i++) {
+                canonical[i] = intern(children[i], interned);
+            }
+            rebuilt = node.withChildren(canonical);
+        }
+
+        // toString() полностью расставляет скобки, поэтому однозначно описывает структуру
+        FormulaNode existing = interned.putIfAbsent(rebuilt.toString(), rebuilt);
+        return existing != null ? existing : rebuilt;
+    }
+
+    private void countReferences(FormulaNode node, IdentityHashMap<FormulaNode, Integer> references,
+                                 IdentityHashMap<FormulaNode, Boolean> visited) {
+        if (visited.put(node, Boolean.TRUE) != null) {
+            return;
+        }
+        for (FormulaNode child : node.children()) {
+            references.merge(child, 1, Integer::sum);
+            countReferences(child, references, visited);
+        }
+    }
+
+    private FormulaNode extractShared(FormulaNode node, IdentityHashMap<FormulaNode, Integer> references,
+                                      IdentityHashMap<FormulaNode, FormulaNode> rewritten,
+                                      List<FormulaNode.Shared> shared) {
+        FormulaNode done = rewritten.get(node);
+        if (done != null) {
+            return done;
+        }
+
+        FormulaNode[] children = node.children();
+        FormulaNode rebuilt = node;
+        if (children.length > 0) {
+            FormulaNode[] extracted = new FormulaNode[children.length];
+            for (int i = 0; i < children.length; i++) {
+                extracted[i] = extractShared(children[i], references, rewritten, shared);
+            }
+            rebuilt = node.withChildren(extracted);
+        }
+
+        // Листья дешевле прочитать заново, чем сохранять; общими делаем только операции
+        if (children.length > 0 && references.getOrDefault(node, 0) > 1) {
+            // Внутренние общие узлы создаются раньше внешних, поэтому пролог уже в порядке вычисления
+            String name = SHARED_PREFIX + shared.size();
+            FormulaNode.Shared sharedNode = new FormulaNode.Shared(name, FormulaVariables.slotOf(name), rebuilt);
+            shared.add(sharedNode);
+            rebuilt = sharedNode;
+        }
+
+        rewritten.put(node, rebuilt);
+        return rebuilt;
+    }
+
+    /**
+     * Оптимизированная программа: пролог общих подвыражений и корень
+     */
+    record Result(FormulaNode root, FormulaNode.Shared[] shared) {
+    }
+}
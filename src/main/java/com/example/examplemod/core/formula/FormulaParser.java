@@ -9,7 +9,7 @@ public class FormulaParser {
     private static final Pattern PARAMETER_PATTERN = Pattern.compile("\\{([a-zA-Z_][a-zA-Z0-9_]*)\\}");
     private static final Pattern OPERATOR_PATTERN = Pattern.compile("[+\\-*/()^]");
     private static final Pattern NUMBER_PATTERN = Pattern.compile("\\d+(\\.\\d+)?");
-    private static final Pattern FUNCTION_PATTERN = Pattern.compile("(sin|cos|tan|sqrt|log|exp|abs|min|max|pow)\\(");
+    private static final Pattern FUNCTION_PATTERN = Pattern.compile("(sin|cos|tan|sqrt|log|exp|abs|min|max|pow|clamp|lerp|smoothstep)\\(");
     
     public ParsedFormula parse(String expression) {
         if (expression == null || expression.trim().isEmpty()) {
@@ -0,0 +1,40 @@
+package com.example.examplemod.core.formula;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Неизменяемый набор формул вместе с кэшем, скомпилированным под его константы
+ *
+ * FormulaEngine держит текущую таблицу в volatile поле и при перезагрузке подменяет
+ * её целиком: вычисления, начавшиеся со старой таблицей, спокойно завершаются на ней,
+ * новые сразу видят новую. Частично применённого набора формул не бывает.
+ */
+final class FormulaTable {
+
+    final Map<String, String> formulas;
+    final Map<String, Double> constants;
+    final FormulaCache cache;
+    final String source;
+    final String version;
+    final long loadedAt;
+
+    FormulaTable(Map<String, String> formulas, Map<String, Double> constants, FormulaCache cache,
+                 String source, String version) {
+        this.formulas = Map.copyOf(formulas);
+        this.constants = Map.copyOf(constants);
+        this.cache = cache;
+        this.source = source;
+        this.version = version;
+        this.loadedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Копия таблицы с добавленной формулой (константы и кэш общие)
+     */
+    FormulaTable withFormula(String key, String expression) {
+        Map<String, String> updated = new HashMap<>(formulas);
+        updated.put(key, expression);
+        return new FormulaTable(updated, constants, cache, source, version);
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.examplemod.core.formula;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Глобальная раскладка переменных формул по слотам фрейма double[]
+ *
+ * Каждое имя переменной получает постоянный целочисленный слот. Формулы привязывают
+ * переменные к слотам при компиляции, ParameterResolver пишет значения прямо в слоты,
+ * поэтому при вычислении нет ни поиска по карте, ни упаковки в Double.
+ *
+ * Встроенные переменные (их заполняет ParameterResolver) регистрируются первыми;
+ * остальные имена получают слоты по мере компиляции формул и не заполняются резолвером.
+ */
+public final class FormulaVariables {
+
+    private static final ConcurrentHashMap<String, Integer> SLOTS = new ConcurrentHashMap<>();
+    private static volatile String[] names = new String[0];
+
+    // === Параметры заклинания ===
+    public static final int BASE_DAMAGE = register("base_damage");
+    public static final int BASE_HEALING = register("base_healing");
+    public static final int BASE_RANGE = register("base_range");
+    public static final int BASE_RADIUS = register("base_radius");
+    public static final int BASE_SPEED = register("base_speed");
+    public static final int BASE_DURATION = register("base_duration");
+    public static final int BASE_DURABILITY = register("base_durability");
+    public static final int BOUNCE_COUNT = register("bounce_count");
+    public static final int PIERCE_COUNT = register("pierce_count");
+    public static final int PENETRATION = register("penetration");
+    public static final int HOMING_STRENGTH = register("homing_strength");
+
+    public static final int FIRE_ELEMENT = register("fire_element");
+    public static final int ICE_ELEMENT = register("ice_element");
+    public static final int LIGHTNING_ELEMENT = register("lightning_element");
+    public static final int EARTH_ELEMENT = register("earth_element");
+    public static final int WATER_ELEMENT = register("water_element");
+
+    // === Атрибуты игрока ===
+    public static final int PLAYER_LEVEL = register("player_level");
+    public static final int PLAYER_HEALTH = register("player_health");
+    public static final int PLAYER_MAX_HEALTH = register("player_max_health");
+    public static final int PLAYER_MANA = register("player_mana");
+    public static final int PLAYER_MAX_MANA = register("player_max_mana");
+    public static final int SPELL_POWER = register("spell_power");
+    public static final int MAGIC_RESISTANCE = register("magic_resistance");
+    public static final int CAST_SPEED = register("cast_speed");
+    public static final int MANA_EFFICIENCY = register("mana_efficiency");
+
+    // === Модификаторы мира ===
+    public static final int TIME_OF_DAY = register("time_of_day");
+    public static final int WEATHER = register("weather");
+    public static final int BIOME = register("biome");
+    public static final int DIMENSION = register("dimension");
+    public static final int GLOBAL_MAGIC_LEVEL = register("global_magic_level");
+    public static final int ANTIMAGIC_FIELD = register("antimagic_field");
+    public static final int MANA_DENSITY = register("mana_density");
+
+    // Слоты [0, BUILTIN_COUNT) заполняются ParameterResolver
+    public static final int BUILTIN_COUNT = SLOTS.size();
+
+    private FormulaVariables() {
+    }
+
+    /**
+     * Слот переменной; неизвестное имя получает новый слот
+     */
+    public static int slotOf(String name) {
+        Integer slot = SLOTS.get(name);
+        return slot != null ? slot : register(name);
+    }
+
+    public static boolean isBuiltin(int slot) {
+        return slot < BUILTIN_COUNT;
+    }
+
+    public static String nameOf(int slot) {
+        return names[slot];
+    }
+
+    /**
+     * Текущее количество слотов (размер полного фрейма)
+     */
+    public static int size() {
+        return names.length;
+    }
+
+    /**
+     * Новый фрейм на все известные слоты
+     */
+    public static double[] newFrame() {
+        return new double[size()];
+    }
+
+    private static synchronized int register(String name) {
+        Integer existing = SLOTS.get(name);
+        if (existing != null) {
+            return existing;
+        }
+
+        int slot = names.length;
+        String[] updated = Arrays.copyOf(names, slot + 1);
+        updated[slot] = name;
+        names = updated;
+        SLOTS.put(name, slot);
+        return slot;
+    }
+}
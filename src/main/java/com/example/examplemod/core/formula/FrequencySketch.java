@@ -0,0 +1,101 @@
+package com.example.examplemod.core.formula;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Приближённый счётчик частоты обращений (Count-Min Sketch, 4-битные счётчики) для TinyLFU
+ *
+ * Каждый long хранит 16 счётчиков по 4 бита, ключ попадает в 4 счётчика разных строк,
+ * частота - минимум из них. Счётчики насыщаются на 15: горячие ключи после насыщения
+ * только читаются, поэтому инкремент не становится точкой конкуренции.
+ *
+ * После sampleSize инкрементов все счётчики делятся пополам (старение), чтобы
+ * давняя популярность не удерживала ключ в кэше вечно.
+ */
+final class FrequencySketch {
+
+    private static final long RESET_MASK = 0x7777_7777_7777_7777L;
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = { 0x97cb3127, 0xc2b2ae35, 0x85ebca6b, 0x27d4eb2f };
+
+    private final AtomicLongArray table;
+    private final int tableMask;
+    private final int sampleSize;
+    private final AtomicInteger additions = new AtomicInteger(0);
+
+    FrequencySketch(int maximumSize) {
+        int size = Integer.highestOneBit(Math.max(16, maximumSize) - 1) << 1;
+        this.table = new AtomicLongArray(size);
+        this.tableMask = size - 1;
+        this.sampleSize = 10 * Math.max(16, maximumSize);
+    }
+
+    /**
+     * Оценка частоты ключа (0-15)
+     */
+    int frequency(int hash) {
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < SEEDS.length; row++) {
+            frequency = Math.min(frequency, counter(hash, row));
+        }
+        return frequency;
+    }
+
+    /**
+     * Учесть обращение к ключу
+     */
+    void increment(int hash) {
+        boolean added = false;
+        for (int row = 0; row < SEEDS.length; row++) {
+            added |= incrementCounter(hash, row);
+        }
+
+        if (added && additions.incrementAndGet() >= sampleSize) {
+            reset();
+        }
+    }
+
+    private int counter(int hash, int row) {
+        int index = indexOf(hash, row);
+        int shift = offsetOf(hash, row);
+        return (int) ((table.get(index) >>> shift) & 0xF);
+    }
+
+    private boolean incrementCounter(int hash, int row) {
+        int index = indexOf(hash, row);
+        int shift = offsetOf(hash, row);
+
+        while (true) {
+            long current = table.get(index);
+            if (((current >>> shift) & 0xF) == MAX_COUNT) {
+                return false;
+            }
+            if (table.compareAndSet(index, current, current + (1L << shift))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Старение: поделить все счётчики пополам. Гонка с конкурентными инкрементами
+     * допустима - оценка частоты и так приближённая
+     */
+    private void reset() {
+        additions.set(0);
+        for (int i = 0; i < table.length(); i++) {
+            table.set(i, (table.get(i) >>> 1) & RESET_MASK);
+        }
+    }
+
+    private int indexOf(int hash, int row) {
+        int h = (hash ^ SEEDS[row]) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & tableMask;
+    }
+
+    private int offsetOf(int hash, int row) {
+        // 4 счётчика на строку в каждом long: row выбирает четвертинку, хеш - позицию в ней
+        int h = hash * SEEDS[row];
+        return ((row << 2) + ((h >>> 28) & 3)) << 2;
+    }
+}
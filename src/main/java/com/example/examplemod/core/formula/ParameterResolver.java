@@ -1,77 +1,114 @@
 package com.example.examplemod.core.formula;
 
 import com.example.examplemod.core.spells.parameters.SpellParameters;
+import net.minecraft.resources.ResourceKey;
 import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.level.Level;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ParameterResolver {
     
+    // Модификаторы мира меняются не чаще раза в тик: кэш по измерению, ключ сверяется с gameTime
+    private final Map<ResourceKey<Level>, WorldModifiers> worldModifiers = new ConcurrentHashMap<>();
+    
+    /**
+     * Заполнить слоты встроенных переменных (FormulaVariables) во фрейме.
+     * Без аллокаций: значения пишутся прямо в переданный массив
+     */
+    public void resolveInto(double[] frame, SpellParameters spellParams, Player caster) {
+        resolveSpellParameters(frame, spellParams);
+        resolvePlayerAttributes(frame, caster);
+        resolveWorldModifiers(frame, caster);
+    }
+    
+    /**
+     * Карта параметров (медленный путь для отладки и внешнего кода)
+     */
     public Map<String, Double> resolveParameters(SpellParameters spellParams, Player caster) {
-        Map<String, Double> resolved = new HashMap<>();
-        
-        resolved.putAll(getSpellParameters(spellParams));
-        resolved.putAll(getPlayerAttributes(caster));
-        resolved.putAll(getWorldModifiers(caster));
+        double[] frame = new double[FormulaVariables.BUILTIN_COUNT];
+        resolveInto(frame, spellParams, caster);
         
+        Map<String, Double> resolved = new HashMap<>();
+        for (int slot = 0; slot < FormulaVariables.BUILTIN_COUNT; slot++) {
+            resolved.put(FormulaVariables.nameOf(slot), frame[slot]);
+        }
         return resolved;
     }
     
-    private Map<String, Double> getSpellParameters(SpellParameters params) {
-        Map<String, Double> spellParams = new HashMap<>();
-        
-        spellParams.put("base_damage", (double) params.getFloat("damage", 0.0f));
-        spellParams.put("base_healing", (double) params.getFloat("healing", 0.0f));
-        spellParams.put("base_range", (double) params.getFloat("range", 0.0f));
-        spellParams.put("base_radius", (double) params.getFloat("radius", 0.0f));
-        spellParams.put("base_speed", (double) params.getFloat("speed", 0.0f));
-        spellParams.put("base_duration", (double) params.getFloat("duration", 0.0f));
-        spellParams.put("base_durability", (double) params.getFloat("durability", 0.0f));
-        spellParams.put("bounce_count", (double) params.getFloat("bounce_count", 0.0f));
-        spellParams.put("pierce_count", (double) params.getFloat("pierce_count", 0.0f));
-        spellParams.put("penetration", (double) params.getFloat("penetration", 0.0f));
-        spellParams.put("homing_strength", (double) params.getFloat("homing_strength", 0.0f));
-        
-        spellParams.put("fire_element", (double) params.getFloat("fire", 0.0f));
-        spellParams.put("ice_element", (double) params.getFloat("ice", 0.0f));
-        spellParams.put("lightning_element", (double) params.getFloat("lightning", 0.0f));
-        spellParams.put("earth_element", (double) params.getFloat("earth", 0.0f));
-        spellParams.put("water_element", (double) params.getFloat("water", 0.0f));
+    private void resolveSpellParameters(double[] frame, SpellParameters params) {
+        frame[FormulaVariables.BASE_DAMAGE] = params.getFloat("damage", 0.0f);
+        frame[FormulaVariables.BASE_HEALING] = params.getFloat("healing", 0.0f);
+        frame[FormulaVariables.BASE_RANGE] = params.getFloat("range", 0.0f);
+        frame[FormulaVariables.BASE_RADIUS] = params.getFloat("radius", 0.0f);
+        frame[FormulaVariables.BASE_SPEED] = params.getFloat("speed", 0.0f);
+        frame[FormulaVariables.BASE_DURATION] = params.getFloat("duration", 0.0f);
+        frame[FormulaVariables.BASE_DURABILITY] = params.getFloat("durability", 0.0f);
+        frame[FormulaVariables.BOUNCE_COUNT] = params.getFloat("bounce_count", 0.0f);
+        frame[FormulaVariables.PIERCE_COUNT] = params.getFloat("pierce_count", 0.0f);
+        frame[FormulaVariables.PENETRATION] = params.getFloat("penetration", 0.0f);
+        frame[FormulaVariables.HOMING_STRENGTH] = params.getFloat("homing_strength", 0.0f);
         
-        return spellParams;
+        frame[FormulaVariables.FIRE_ELEMENT] = params.getFloat("fire", 0.0f);
+        frame[FormulaVariables.ICE_ELEMENT] = params.getFloat("ice", 0.0f);
+        frame[FormulaVariables.LIGHTNING_ELEMENT] = params.getFloat("lightning", 0.0f);
+        frame[FormulaVariables.EARTH_ELEMENT] = params.getFloat("earth", 0.0f);
+        frame[FormulaVariables.WATER_ELEMENT] = params.getFloat("water", 0.0f);
     }
     
-    private Map<String, Double> getPlayerAttributes(Player player) {
-        Map<String, Double> attributes = new HashMap<>();
-        
-        attributes.put("player_level", (double) player.experienceLevel);
-        attributes.put("player_health", (double) player.getHealth());
-        attributes.put("player_max_health", (double) player.getMaxHealth());
-        attributes.put("player_mana", getManaAttribute(player));
-        attributes.put("player_max_mana", getMaxManaAttribute(player));
-        
-        attributes.put("spell_power", getSpellPowerAttribute(player));
-        attributes.put("magic_resistance", getMagicResistanceAttribute(player));
-        attributes.put("cast_speed", getCastSpeedAttribute(player));
-        attributes.put("mana_efficiency", getManaEfficiencyAttribute(player));
+    private void resolvePlayerAttributes(double[] frame, Player player) {
+        frame[FormulaVariables.PLAYER_LEVEL] = player.experienceLevel;
+        frame[FormulaVariables.PLAYER_HEALTH] = player.getHealth();
+        frame[FormulaVariables.PLAYER_MAX_HEALTH] = player.getMaxHealth();
+        frame[FormulaVariables.PLAYER_MANA] = getManaAttribute(player);
+        frame[FormulaVariables.PLAYER_MAX_MANA] = getMaxManaAttribute(player);
         
-        return attributes;
+        frame[FormulaVariables.SPELL_POWER] = getSpellPowerAttribute(player);
+        frame[FormulaVariables.MAGIC_RESISTANCE] = getMagicResistanceAttribute(player);
+        frame[FormulaVariables.CAST_SPEED] = getCastSpeedAttribute(player);
+        frame[FormulaVariables.MANA_EFFICIENCY] = getManaEfficiencyAttribute(player);
     }
     
-    private Map<String, Double> getWorldModifiers(Player player) {
-        Map<String, Double> modifiers = new HashMap<>();
+    private void resolveWorldModifiers(double[] frame, Player player) {
+        WorldModifiers modifiers = worldModifiersFor(player.level());
+        frame[FormulaVariables.TIME_OF_DAY] = modifiers.timeOfDay();
+        frame[FormulaVariables.WEATHER] = modifiers.weather();
+        frame[FormulaVariables.BIOME] = getBiomeModifier(player);
+        frame[FormulaVariables.DIMENSION] = modifiers.dimension();
         
-        modifiers.put("time_of_day", getTimeModifier(player));
-        modifiers.put("weather", getWeatherModifier(player));
-        modifiers.put("biome", getBiomeModifier(player));
-        modifiers.put("dimension", getDimensionModifier(player));
-        
-        modifiers.put("global_magic_level", 1.0);
-        modifiers.put("antimagic_field", 0.0);
-        modifiers.put("mana_density", 1.0);
+        frame[FormulaVariables.GLOBAL_MAGIC_LEVEL] = 1.0;
+        frame[FormulaVariables.ANTIMAGIC_FIELD] = 0.0;
+        frame[FormulaVariables.MANA_DENSITY] = 1.0;
+    }
+    
+    /**
+     * Модификаторы измерения на текущий тик. Пересчитываются один раз за тик на измерение;
+     * гонка двух потоков на смене тика безвредна - оба посчитают одно и то же
+     */
+    private WorldModifiers worldModifiersFor(Level level) {
+        long gameTime = level.getGameTime();
+        WorldModifiers cached = worldModifiers.get(level.dimension());
+        if (cached != null && cached.gameTime() == gameTime) {
+            return cached;
+        }
         
-        return modifiers;
+        WorldModifiers computed = new WorldModifiers(
+            gameTime,
+            getTimeModifier(level),
+            getWeatherModifier(level),
+            getDimensionModifier(level.dimension())
+        );
+        worldModifiers.put(level.dimension(), computed);
+        return computed;
+    }
+    
+    /**
+     * Забыть модификаторы выгруженного измерения
+     */
+    public void forgetDimension(ResourceKey<Level> dimension) {
+        worldModifiers.remove(dimension);
     }
     
     private double getManaAttribute(Player player) {
@@ -98,19 +135,19 @@ public class ParameterResolver {
         return 1.0;
     }
     
-    private double getTimeModifier(Player player) {
-        long dayTime = player.level().getDayTime() % 24000;
+    private double getTimeModifier(Level level) {
+        long dayTime = level.getDayTime() % 24000;
         if (dayTime >= 13000 && dayTime <= 23000) {
             return 1.2;
         }
         return 1.0;
     }
     
-    private double getWeatherModifier(Player player) {
-        if (player.level().isRaining()) {
+    private double getWeatherModifier(Level level) {
+        if (level.isRaining()) {
             return 0.9;
         }
-        if (player.level().isThundering()) {
+        if (level.isThundering()) {
             return 1.3;
         }
         return 1.0;
@@ -120,11 +157,19 @@ public class ParameterResolver {
         return 1.0;
     }
     
-    private double getDimensionModifier(Player player) {
-        return switch (player.level().dimension().location().toString()) {
-            case "minecraft:the_nether" -> 1.5;
-            case "minecraft:the_end" -> 0.8;
-            default -> 1.0;
-        };
+    private double getDimensionModifier(ResourceKey<Level> dimension) {
+        if (Level.NETHER.equals(dimension)) {
+            return 1.5;
+        }
+        if (Level.END.equals(dimension)) {
+            return 0.8;
+        }
+        return 1.0;
+    }
+    
+    /**
+     * Снимок модификаторов измерения на тик gameTime
+     */
+    private record WorldModifiers(long gameTime, double timeOfDay, double weather, double dimension) {
     }
 }
\ No newline at end of file
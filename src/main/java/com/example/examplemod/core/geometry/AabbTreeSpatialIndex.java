@@ -0,0 +1,474 @@
+package com.example.examplemod.core.geometry;
+
+import net.minecraft.world.phys.AABB;
+import net.minecraft.world.phys.Vec3;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Пространственный индекс на динамическом дереве AABB (BVH)
+ *
+ * Каждое заклинание - один лист с расширенным (fat) AABB, поэтому область в 30 блоков
+ * стоит столько же, сколько снаряд. Вставка выбирает соседа по приросту площади
+ * поверхности, дерево балансируется поворотами (как AVL). Пока форма остаётся внутри
+ * расширенного AABB, updateSpell не перестраивает дерево.
+ *
+ * Дерево меняется на месте, поэтому запросы берут read lock, изменения - write lock.
+ */
+public class AabbTreeSpatialIndex implements SpatialIndex {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AabbTreeSpatialIndex.class);
+
+    private final double margin;
+    private final ReentrantReadWriteLock treeLock = new ReentrantReadWriteLock();
+
+    // Под treeLock
+    private final Map<UUID, Node> leaves = new HashMap<>();
+    private Node root;
+
+    /**
+     * @param margin запас расширенного AABB в блоках (на сколько форма может сместиться без перестроения)
+     */
+    public AabbTreeSpatialIndex(double margin) {
+        this.margin = Math.max(margin, 0.0);
+    }
+
+    @Override
+    public void addSpell(UUID spellId, SpellShape shape) {
+        treeLock.writeLock().lock();
+        try {
+            Node leaf = leaves.get(spellId);
+            if (leaf != null) {
+                moveLeaf(leaf, shape);
+                return;
+            }
+
+            leaf = new Node();
+            leaf.spellId = spellId;
+            leaf.shape = shape;
+            leaf.setFat(shape.getBoundingBox(), margin);
+            insertLeaf(leaf);
+            leaves.put(spellId, leaf);
+
+            LOGGER.trace("Added spell {} to AABB tree", spellId);
+        } finally {
+            treeLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void updateSpell(UUID spellId, SpellShape shape) {
+        addSpell(spellId, shape);
+    }
+
+    @Override
+    public void removeSpell(UUID spellId) {
+        treeLock.writeLock().lock();
+        try {
+            Node leaf = leaves.remove(spellId);
+            if (leaf != null) {
+                removeLeaf(leaf);
+                LOGGER.trace("Removed spell {} from AABB tree", spellId);
+            }
+        } finally {
+            treeLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean containsSpell(UUID spellId) {
+        treeLock.readLock().lock();
+        try {
+            return leaves.containsKey(spellId);
+        } finally {
+            treeLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void forEachSpell(BiConsumer<UUID, SpellShape> action) {
+        treeLock.readLock().lock();
+        try {
+            for (Node leaf : leaves.values()) {
+                action.accept(leaf.spellId, leaf.shape);
+            }
+        } finally {
+            treeLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<UUID> findSpellsInArea(AABB area) {
+        List<UUID> foundSpells = new ArrayList<>();
+
+        treeLock.readLock().lock();
+        try {
+            forEachOverlappingLeaf(area, leaf -> {
+                if (leaf.shape.getBoundingBox().intersects(area)) {
+                    foundSpells.add(leaf.spellId);
+                }
+            });
+        } finally {
+            treeLock.readLock().unlock();
+        }
+
+        return foundSpells;
+    }
+
+    @Override
+    public List<UUID> findIntersectingSpells(SpellShape queryShape) {
+        List<UUID> foundSpells = new ArrayList<>();
+
+        treeLock.readLock().lock();
+        try {
+            forEachOverlappingLeaf(queryShape.getBoundingBox(), leaf -> {
+                if (leaf.shape.intersects(queryShape)) {
+                    foundSpells.add(leaf.spellId);
+                }
+            });
+        } finally {
+            treeLock.readLock().unlock();
+        }
+
+        return foundSpells;
+    }
+
+    /**
+     * Поиск лучшим-первым: узлы обходятся по расстоянию от точки до их AABB.
+     * Расширенный AABB листа содержит центр формы, поэтому расстояние до него - нижняя
+     * оценка; как только она не лучше k-го найденного, поиск останавливается
+     */
+    @Override
+    public List<SpellDistance> findNearestSpells(Vec3 point, double maxDistance, int maxCount) {
+        if (maxCount <= 0 || maxDistance < 0) {
+            return new ArrayList<>();
+        }
+
+        NearestSpells nearest = new NearestSpells(maxCount);
+
+        treeLock.readLock().lock();
+        try {
+            if (root != null) {
+                PriorityQueue<NodeDistance> frontier = new PriorityQueue<>(Comparator.comparingDouble(NodeDistance::distance));
+                frontier.add(new NodeDistance(root, root.distanceTo(point)));
+
+                while (!frontier.isEmpty()) {
+                    NodeDistance next = frontier.poll();
+                    if (next.distance() > maxDistance
+                        || (nearest.isFull() && next.distance() >= nearest.worstDistance())) {
+                        break;
+                    }
+
+                    Node node = next.node();
+                    if (node.isLeaf()) {
+                        double distance = point.distanceTo(node.shape.getCenter());
+                        if (distance <= maxDistance) {
+                            nearest.offer(node.spellId, distance);
+                        }
+                    } else {
+                        frontier.add(new NodeDistance(node.child1, node.child1.distanceTo(point)));
+                        frontier.add(new NodeDistance(node.child2, node.child2.distanceTo(point)));
+                    }
+                }
+            }
+        } finally {
+            treeLock.readLock().unlock();
+        }
+
+        return nearest.drainSorted();
+    }
+
+    @Override
+    public void clear() {
+        treeLock.writeLock().lock();
+        try {
+            leaves.clear();
+            root = null;
+            LOGGER.debug("Cleared AABB tree index");
+        } finally {
+            treeLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public IndexStats getStats() {
+        treeLock.readLock().lock();
+        try {
+            int totalSpells = leaves.size();
+            int totalNodes = totalSpells > 0 ? 2 * totalSpells - 1 : 0;
+            double avgSpellsPerNode = totalNodes > 0 ? (double) totalSpells / totalNodes : 0;
+
+            return new IndexStats(Type.AABB_TREE, totalNodes, totalSpells, avgSpellsPerNode, margin);
+        } finally {
+            treeLock.readLock().unlock();
+        }
+    }
+
+    // === Обход ===
+
+    private void forEachOverlappingLeaf(AABB area, Consumer<Node> visitor) {
+        if (root == null) {
+            return;
+        }
+
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            if (!node.overlaps(area)) {
+                continue;
+            }
+            if (node.isLeaf()) {
+                visitor.accept(node);
+            } else {
+                stack.push(node.child1);
+                stack.push(node.child2);
+            }
+        }
+    }
+
+    // === Изменение дерева (под write lock) ===
+
+    private void moveLeaf(Node leaf, SpellShape shape) {
+        AABB bounds = shape.getBoundingBox();
+        leaf.shape = shape;
+
+        // Форма осталась внутри расширенного AABB - дерево не меняется
+        if (leaf.contains(bounds)) {
+            return;
+        }
+
+        removeLeaf(leaf);
+        leaf.setFat(bounds, margin);
+        insertLeaf(leaf);
+    }
+
+    private void insertLeaf(Node leaf) {
+        if (root == null) {
+            root = leaf;
+            leaf.parent = null;
+            return;
+        }
+
+        // Выбрать соседа с наименьшим приростом площади поверхности
+        Node sibling = root;
+        while (!sibling.isLeaf()) {
+            double area = sibling.surfaceArea();
+            double combinedArea = Node.combinedSurfaceArea(sibling, leaf);
+
+            // Стоимость нового родителя для sibling и leaf
+            double cost = 2.0 * combinedArea;
+            // Прирост, который наследуют все предки при спуске ниже
+            double inheritanceCost = 2.0 * (combinedArea - area);
+
+            double cost1 = descendCost(sibling.child1, leaf) + inheritanceCost;
+            double cost2 = descendCost(sibling.child2, leaf) + inheritanceCost;
+
+            if (cost < cost1 && cost < cost2) {
+                break;
+            }
+            sibling = cost1 < cost2 ? sibling.child1 : sibling.child2;
+        }
+
+        Node oldParent = sibling.parent;
+        Node newParent = new Node();
+        newParent.parent = oldParent;
+        newParent.setUnion(leaf, sibling);
+        newParent.height = sibling.height + 1;
+
+        if (oldParent != null) {
+            oldParent.replaceChild(sibling, newParent);
+        } else {
+            root = newParent;
+        }
+        newParent.child1 = sibling;
+        newParent.child2 = leaf;
+        sibling.parent = newParent;
+        leaf.parent = newParent;
+
+        refitUpwards(leaf.parent);
+    }
+
+    private static double descendCost(Node child, Node leaf) {
+        double combined = Node.combinedSurfaceArea(child, leaf);
+        return child.isLeaf() ? combined : combined - child.surfaceArea();
+    }
+
+    private void removeLeaf(Node leaf) {
+        if (leaf == root) {
+            root = null;
+            return;
+        }
+
+        Node parent = leaf.parent;
+        Node grandParent = parent.parent;
+        Node sibling = parent.child1 == leaf ? parent.child2 : parent.child1;
+
+        if (grandParent != null) {
+            grandParent.replaceChild(parent, sibling);
+            sibling.parent = grandParent;
+            refitUpwards(grandParent);
+        } else {
+            root = sibling;
+            sibling.parent = null;
+        }
+        leaf.parent = null;
+    }
+
+    /**
+     * Пересчитать высоты и AABB от узла до корня, балансируя по пути
+     */
+    private void refitUpwards(Node node) {
+        while (node != null) {
+            node = balance(node);
+            node.height = 1 + Math.max(node.child1.height, node.child2.height);
+            node.setUnion(node.child1, node.child2);
+            node = node.parent;
+        }
+    }
+
+    /**
+     * Поворот, если высоты поддеревьев различаются больше чем на 1
+     * @return узел, оказавшийся на месте a
+     */
+    private Node balance(Node a) {
+        if (a.isLeaf() || a.height < 2) {
+            return a;
+        }
+
+        Node b = a.child1;
+        Node c = a.child2;
+        int balance = c.height - b.height;
+
+        if (balance > 1) {
+            return rotateUp(a, c, b, false);
+        }
+        if (balance < -1) {
+            return rotateUp(a, b, c, true);
+        }
+        return a;
+    }
+
+    /**
+     * Поднять ребёнка up на место a; other - второй ребёнок a.
+     * Более высокий внук up остаётся под up, более низкий переходит к a
+     */
+    private Node rotateUp(Node a, Node up, Node other, boolean upIsChild1) {
+        Node f = up.child1;
+        Node g = up.child2;
+
+        up.child1 = a;
+        up.parent = a.parent;
+        a.parent = up;
+
+        if (up.parent != null) {
+            up.parent.replaceChild(a, up);
+        } else {
+            root = up;
+        }
+
+        Node kept = f.height > g.height ? f : g;
+        Node moved = kept == f ? g : f;
+
+        up.child2 = kept;
+        if (upIsChild1) {
+            a.child1 = moved;
+        } else {
+            a.child2 = moved;
+        }
+        moved.parent = a;
+
+        a.setUnion(other, moved);
+        up.setUnion(a, kept);
+        a.height = 1 + Math.max(other.height, moved.height);
+        up.height = 1 + Math.max(a.height, kept.height);
+
+        return up;
+    }
+
+    /**
+     * Узел дерева: лист (spellId, shape) или внутренний узел с двумя детьми
+     */
+    private static final class Node {
+        double minX, minY, minZ, maxX, maxY, maxZ;
+        Node parent;
+        Node child1;
+        Node child2;
+        int height; // 0 у листа
+
+        UUID spellId;
+        SpellShape shape;
+
+        boolean isLeaf() {
+            return child1 == null;
+        }
+
+        void setFat(AABB bounds, double margin) {
+            minX = bounds.minX - margin;
+            minY = bounds.minY - margin;
+            minZ = bounds.minZ - margin;
+            maxX = bounds.maxX + margin;
+            maxY = bounds.maxY + margin;
+            maxZ = bounds.maxZ + margin;
+        }
+
+        void setUnion(Node first, Node second) {
+            minX = Math.min(first.minX, second.minX);
+            minY = Math.min(first.minY, second.minY);
+            minZ = Math.min(first.minZ, second.minZ);
+            maxX = Math.max(first.maxX, second.maxX);
+            maxY = Math.max(first.maxY, second.maxY);
+            maxZ = Math.max(first.maxZ, second.maxZ);
+        }
+
+        void replaceChild(Node oldChild, Node newChild) {
+            if (child1 == oldChild) {
+                child1 = newChild;
+            } else {
+                child2 = newChild;
+            }
+        }
+
+        boolean contains(AABB bounds) {
+            return bounds.minX >= minX && bounds.maxX <= maxX
+                && bounds.minY >= minY && bounds.maxY <= maxY
+                && bounds.minZ >= minZ && bounds.maxZ <= maxZ;
+        }
+
+        boolean overlaps(AABB bounds) {
+            return bounds.minX <= maxX && bounds.maxX >= minX
+                && bounds.minY <= maxY && bounds.maxY >= minY
+                && bounds.minZ <= maxZ && bounds.maxZ >= minZ;
+        }
+
+        double distanceTo(Vec3 point) {
+            double dx = Math.max(0.0, Math.max(minX - point.x, point.x - maxX));
+            double dy = Math.max(0.0, Math.max(minY - point.y, point.y - maxY));
+            double dz = Math.max(0.0, Math.max(minZ - point.z, point.z - maxZ));
+            return Math.sqrt(dx * dx + dy * dy + dz * dz);
+        }
+
+        double surfaceArea() {
+            double dx = maxX - minX;
+            double dy = maxY - minY;
+            double dz = maxZ - minZ;
+            return 2.0 * (dx * dy + dy * dz + dz * dx);
+        }
+
+        static double combinedSurfaceArea(Node first, Node second) {
+            double dx = Math.max(first.maxX, second.maxX) - Math.min(first.minX, second.minX);
+            double dy = Math.max(first.maxY, second.maxY) - Math.min(first.minY, second.minY);
+            double dz = Math.max(first.maxZ, second.maxZ) - Math.min(first.minZ, second.minZ);
+            return 2.0 * (dx * dy + dy * dz + dz * dx);
+        }
+    }
+
+    /**
+     * Узел в очереди поиска ближайших
+     */
+    private record NodeDistance(Node node, double distance) {}
+}
\ No newline at end of file
@@ -0,0 +1,409 @@
+package com.example.examplemod.core.geometry;
+
+import net.minecraft.world.phys.AABB;
+import net.minecraft.world.phys.Vec3;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import static com.example.examplemod.core.geometry.LongCellMap.pack;
+
+/**
+ * Пространственный индекс на равномерной сетке
+ * Использует сетку для оптимизации коллизий в многопоточной среде
+ *
+ * Хорош, когда заклинания сравнимы по размеру с ячейкой; большое заклинание
+ * занимает много ячеек (см. AabbTreeSpatialIndex).
+ *
+ * Глобальной блокировки нет: каждая ячейка хранит неизменяемый массив заклинаний
+ * (copy-on-write), который заменяется атомарно через CAS в LongCellMap.
+ * Ячейки адресуются упакованным long-ключом, обход диапазона ячеек - вложенные циклы
+ * без промежуточных коллекций. Чтение не блокируется никогда и видит согласованный
+ * снимок каждой ячейки. Заклинание, занимающее несколько ячеек,
+ * во время вставки может быть видно лишь в части из них - для коллизий это допустимо,
+ * следующий запрос увидит его целиком.
+ *
+ * Обратный индекс spellId -> заклинание хранит диапазон занятых ячеек, поэтому удаление
+ * и перемещение затрагивают только ячейки самого заклинания. Все изменения одного
+ * заклинания выполняются внутри placements.compute и потому упорядочены.
+ */
+public class GridSpatialIndex implements SpatialIndex {
+    private static final Logger LOGGER = LoggerFactory.getLogger(GridSpatialIndex.class);
+    
+    private final double cellSize;
+    private final LongCellMap<IndexedSpell[]> spatialGrid = new LongCellMap<>();
+    private final ConcurrentHashMap<UUID, IndexedSpell> placements = new ConcurrentHashMap<>();
+
+    public GridSpatialIndex(double cellSize) {
+        this.cellSize = Math.max(cellSize, 1.0); // Минимальный размер ячейки
+    }
+
+    /**
+     * Добавить заклинание в индекс (для уже добавленного - то же, что updateSpell)
+     */
+    @Override
+    public void addSpell(UUID spellId, SpellShape shape) {
+        placements.compute(spellId, (id, existing) -> {
+            if (existing != null) {
+                move(existing, shape);
+                return existing;
+            }
+            
+            // Найти все ячейки, которые пересекает заклинание
+            CellRange range = cellRangeOf(shape.getBoundingBox());
+            IndexedSpell indexedSpell = new IndexedSpell(id, shape, range);
+            forEachCell(range, (x, y, z) -> spatialGrid.compute(pack(x, y, z), spells -> withSpell(spells, indexedSpell)));
+            
+            LOGGER.trace("Added spell {} to {} grid cells", id, range.cellCount());
+            return indexedSpell;
+        });
+    }
+
+    /**
+     * Обновить форму заклинания (например, после перемещения снаряда).
+     * Пока заклинание остаётся в тех же ячейках, обновляется только ссылка на форму;
+     * при пересечении границы меняются лишь покинутые и новые ячейки
+     */
+    @Override
+    public void updateSpell(UUID spellId, SpellShape shape) {
+        addSpell(spellId, shape);
+    }
+
+    /**
+     * Удалить заклинание из индекса
+     */
+    @Override
+    public void removeSpell(UUID spellId) {
+        placements.computeIfPresent(spellId, (id, indexedSpell) -> {
+            // Пустая ячейка удаляется из карты (compute вернул null)
+            forEachCell(indexedSpell.cells, (x, y, z) -> spatialGrid.computeIfPresent(pack(x, y, z), spells -> withoutSpell(spells, id)));
+            
+            LOGGER.trace("Removed spell {} from {} grid cells", id, indexedSpell.cells.cellCount());
+            return null;
+        });
+    }
+
+    /**
+     * Есть ли заклинание в индексе
+     */
+    @Override
+    public boolean containsSpell(UUID spellId) {
+        return placements.containsKey(spellId);
+    }
+
+    @Override
+    public void forEachSpell(BiConsumer<UUID, SpellShape> action) {
+        placements.forEach((id, indexedSpell) -> action.accept(id, indexedSpell.shape()));
+    }
+
+    /**
+     * Перенести заклинание в ячейки новой формы (вызывается внутри placements.compute)
+     */
+    private void move(IndexedSpell indexedSpell, SpellShape shape) {
+        CellRange oldRange = indexedSpell.cells;
+        CellRange newRange = cellRangeOf(shape.getBoundingBox());
+        indexedSpell.shape = shape;
+        
+        if (newRange.equals(oldRange)) {
+            return;
+        }
+        
+        // Сначала новые ячейки, потом освобождение старых: читатель всегда найдёт заклинание
+        forEachCell(newRange, (x, y, z) -> {
+            if (!oldRange.contains(x, y, z)) {
+                spatialGrid.compute(pack(x, y, z), spells -> withSpell(spells, indexedSpell));
+            }
+        });
+        forEachCell(oldRange, (x, y, z) -> {
+            if (!newRange.contains(x, y, z)) {
+                spatialGrid.computeIfPresent(pack(x, y, z), spells -> withoutSpell(spells, indexedSpell.spellId));
+            }
+        });
+        indexedSpell.cells = newRange;
+        
+        LOGGER.trace("Moved spell {} from {} to {} grid cells", indexedSpell.spellId, oldRange.cellCount(), newRange.cellCount());
+    }
+
+    /**
+     * Найти все заклинания в указанной области
+     */
+    @Override
+    public List<UUID> findSpellsInArea(AABB area) {
+        Set<UUID> foundSpells = new HashSet<>();
+        
+        forEachSpell(cellRangeOf(area), spell -> {
+            if (!foundSpells.contains(spell.spellId) && spell.shape().getBoundingBox().intersects(area)) {
+                foundSpells.add(spell.spellId);
+            }
+        });
+        
+        return new ArrayList<>(foundSpells);
+    }
+
+    /**
+     * Найти заклинания, пересекающиеся с данной формой
+     */
+    @Override
+    public List<UUID> findIntersectingSpells(SpellShape queryShape) {
+        Set<UUID> foundSpells = new HashSet<>();
+        
+        forEachSpell(cellRangeOf(queryShape.getBoundingBox()), spell -> {
+            if (!foundSpells.contains(spell.spellId) && spell.shape().intersects(queryShape)) {
+                foundSpells.add(spell.spellId);
+            }
+        });
+        
+        return new ArrayList<>(foundSpells);
+    }
+
+    /**
+     * Найти ближайшие заклинания к точке (по центру формы), не дальше maxDistance
+     *
+     * Поиск идёт кольцами ячеек от ячейки точки наружу, лучшие maxCount кандидатов
+     * держатся в max-куче. Центр заклинания лежит в одной из его ячеек, поэтому после
+     * обхода колец 0..r все заклинания ближе границы этого куба уже найдены: как только
+     * k-е расстояние в куче не больше расстояния до границы, поиск останавливается.
+     */
+    @Override
+    public List<SpellDistance> findNearestSpells(Vec3 point, double maxDistance, int maxCount) {
+        if (maxCount <= 0 || maxDistance < 0) {
+            return new ArrayList<>();
+        }
+        
+        // Создать область поиска
+        AABB searchArea = new AABB(
+            point.x - maxDistance, point.y - maxDistance, point.z - maxDistance,
+            point.x + maxDistance, point.y + maxDistance, point.z + maxDistance
+        );
+        CellRange bounds = cellRangeOf(searchArea);
+        
+        int centerX = (int) Math.floor(point.x / cellSize);
+        int centerY = (int) Math.floor(point.y / cellSize);
+        int centerZ = (int) Math.floor(point.z / cellSize);
+        int maxRing = Math.max(
+            Math.max(Math.max(centerX - bounds.minX, bounds.maxX - centerX),
+                     Math.max(centerY - bounds.minY, bounds.maxY - centerY)),
+            Math.max(centerZ - bounds.minZ, bounds.maxZ - centerZ));
+        
+        NearestSpells nearest = new NearestSpells(maxCount);
+        // Заклинание в нескольких ячейках учитывается один раз
+        Set<UUID> seen = new HashSet<>();
+        
+        Consumer<IndexedSpell> candidate = spell -> {
+            if (!seen.add(spell.spellId)) {
+                return;
+            }
+            double distance = point.distanceTo(spell.shape().getCenter());
+            if (distance <= maxDistance) {
+                nearest.offer(spell.spellId, distance);
+            }
+        };
+        
+        for (int ring = 0; ring <= maxRing; ring++) {
+            forEachSpellInRing(centerX, centerY, centerZ, ring, bounds, candidate);
+            
+            if (nearest.isFull()) {
+                // Расстояние от точки до границы обойдённого куба колец 0..ring
+                double outside = Math.min(
+                    Math.min(distanceToShell(point.x, centerX, ring), distanceToShell(point.y, centerY, ring)),
+                    distanceToShell(point.z, centerZ, ring));
+                if (nearest.worstDistance() <= outside) {
+                    break;
+                }
+            }
+        }
+        
+        return nearest.drainSorted();
+    }
+
+    // === Copy-on-write ячейки (чистые функции: LongCellMap может вызвать их повторно) ===
+    
+    private static IndexedSpell[] withSpell(IndexedSpell[] spells, IndexedSpell spell) {
+        if (spells == null) {
+            return new IndexedSpell[] { spell };
+        }
+        
+        if (indexOf(spells, spell.spellId) >= 0) {
+            return spells;
+        }
+        
+        IndexedSpell[] updated = Arrays.copyOf(spells, spells.length + 1);
+        updated[spells.length] = spell;
+        return updated;
+    }
+    
+    private static IndexedSpell[] withoutSpell(IndexedSpell[] spells, UUID spellId) {
+        int index = indexOf(spells, spellId);
+        if (index < 0) {
+            return spells;
+        }
+        if (spells.length == 1) {
+            return null;
+        }
+        
+        IndexedSpell[] updated = new IndexedSpell[spells.length - 1];
+        System.arraycopy(spells, 0, updated, 0, index);
+        System.arraycopy(spells, index + 1, updated, index, spells.length - index - 1);
+        return updated;
+    }
+    
+    private static int indexOf(IndexedSpell[] spells, UUID spellId) {
+        for (int i = 0; i < spells.length; i++) {
+            if (spells[i].spellId.equals(spellId)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Диапазон ячеек сетки, покрывающих AABB
+     */
+    private CellRange cellRangeOf(AABB bounds) {
+        return new CellRange(
+            (int) Math.floor(bounds.minX / cellSize),
+            (int) Math.floor(bounds.minY / cellSize),
+            (int) Math.floor(bounds.minZ / cellSize),
+            (int) Math.floor(bounds.maxX / cellSize),
+            (int) Math.floor(bounds.maxY / cellSize),
+            (int) Math.floor(bounds.maxZ / cellSize)
+        );
+    }
+
+    private static void forEachCell(CellRange range, CellVisitor visitor) {
+        for (int x = range.minX; x <= range.maxX; x++) {
+            for (int y = range.minY; y <= range.maxY; y++) {
+                for (int z = range.minZ; z <= range.maxZ; z++) {
+                    visitor.visit(x, y, z);
+                }
+            }
+        }
+    }
+
+    /**
+     * Расстояние по оси от координаты до ближайшей грани куба ячеек [center - ring, center + ring]
+     */
+    private double distanceToShell(double coordinate, int center, int ring) {
+        return Math.min(coordinate - (center - ring) * cellSize, (center + ring + 1) * cellSize - coordinate);
+    }
+
+    /**
+     * Обойти заклинания ячеек на чебышёвском расстоянии ring от центральной (в пределах bounds)
+     */
+    private void forEachSpellInRing(int centerX, int centerY, int centerZ, int ring, CellRange bounds,
+                                    Consumer<IndexedSpell> visitor) {
+        for (int x = Math.max(centerX - ring, bounds.minX); x <= Math.min(centerX + ring, bounds.maxX); x++) {
+            boolean xOnShell = Math.abs(x - centerX) == ring;
+            for (int y = Math.max(centerY - ring, bounds.minY); y <= Math.min(centerY + ring, bounds.maxY); y++) {
+                boolean onShell = xOnShell || Math.abs(y - centerY) == ring;
+                // Внутри оболочки по x и y - только две грани по z
+                int step = onShell || ring == 0 ? 1 : 2 * ring;
+                for (int z = centerZ - ring; z <= centerZ + ring; z += step) {
+                    if (z < bounds.minZ || z > bounds.maxZ) {
+                        continue;
+                    }
+                    IndexedSpell[] spells = spatialGrid.get(pack(x, y, z));
+                    if (spells != null) {
+                        for (IndexedSpell spell : spells) {
+                            visitor.accept(spell);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Обойти заклинания всех ячеек диапазона (заклинание из нескольких ячеек встретится несколько раз)
+     */
+    private void forEachSpell(CellRange range, Consumer<IndexedSpell> visitor) {
+        for (int x = range.minX; x <= range.maxX; x++) {
+            for (int y = range.minY; y <= range.maxY; y++) {
+                for (int z = range.minZ; z <= range.maxZ; z++) {
+                    IndexedSpell[] spells = spatialGrid.get(pack(x, y, z));
+                    if (spells != null) {
+                        for (IndexedSpell spell : spells) {
+                            visitor.accept(spell);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Очистить весь индекс
+     */
+    @Override
+    public void clear() {
+        placements.clear();
+        spatialGrid.clear();
+        LOGGER.debug("Cleared spatial index");
+    }
+
+    /**
+     * Получить статистику индекса
+     */
+    @Override
+    public IndexStats getStats() {
+        // Приблизительно при конкурентной записи: ячейки читаются по очереди
+        int[] totals = new int[2];
+        spatialGrid.forEachValue(spells -> {
+            totals[0]++;
+            totals[1] += spells.length;
+        });
+        int totalCells = totals[0];
+        int totalSpells = totals[1];
+        
+        double avgSpellsPerCell = totalCells > 0 ? (double) totalSpells / totalCells : 0;
+        
+        return new IndexStats(Type.GRID, totalCells, totalSpells, avgSpellsPerCell, cellSize);
+    }
+
+    /**
+     * Обход ячеек диапазона без создания объектов ячеек
+     */
+    @FunctionalInterface
+    private interface CellVisitor {
+        void visit(int x, int y, int z);
+    }
+
+    /**
+     * Диапазон ячеек (включительно), занятый заклинанием
+     */
+    private record CellRange(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        boolean contains(int x, int y, int z) {
+            return x >= minX && x <= maxX
+                && y >= minY && y <= maxY
+                && z >= minZ && z <= maxZ;
+        }
+        
+        long cellCount() {
+            return (long) (maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1);
+        }
+    }
+
+    /**
+     * Заклинание в индексе. Один объект на заклинание во всех его ячейках:
+     * смена формы без смены ячеек - одна запись volatile поля
+     */
+    private static final class IndexedSpell {
+        final UUID spellId;
+        volatile SpellShape shape;
+        CellRange cells; // меняется только внутри placements.compute
+
+        IndexedSpell(UUID spellId, SpellShape shape, CellRange cells) {
+            this.spellId = spellId;
+            this.shape = shape;
+            this.cells = cells;
+        }
+
+        SpellShape shape() {
+            return shape;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,239 @@
+package com.example.examplemod.core.geometry;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Конкурентная карта ячеек сетки: упакованный long-ключ -> значение (открытая адресация)
+ *
+ * Ключи и значения лежат в плоских массивах, поэтому поиск не создаёт объектов и не
+ * вызывает hashCode/equals. Чтение не блокируется никогда. Запись меняет значение
+ * через CAS, поэтому функция в compute должна быть чистой: при гонке она вызывается
+ * повторно.
+ *
+ * Ключ однажды занятого слота не удаляется (иначе сломались бы цепочки проб у
+ * параллельных читателей): ячейка без заклинаний хранит null и выбрасывается при
+ * следующем перестроении таблицы. Перестроение - единственная операция под
+ * эксклюзивной блокировкой, и ждут её только писатели.
+ */
+final class LongCellMap<V> {
+
+    private static final int MIN_CAPACITY = 64;
+
+    // Упакованные ключи занимают 63 младших бита, поэтому -1 никогда не встречается
+    private static final long EMPTY_KEY = -1L;
+
+    private static final int COORDINATE_BITS = 21;
+    private static final long COORDINATE_MASK = (1L << COORDINATE_BITS) - 1;
+
+    private volatile Table<V> table = new Table<>(MIN_CAPACITY);
+
+    // Писатели берут read lock (совместно), перестроение - write lock
+    private final ReentrantReadWriteLock resizeLock = new ReentrantReadWriteLock();
+
+    // === Упаковка координат ячейки ===
+
+    /**
+     * Упаковать координаты ячейки (по 21 бит на ось, до ±1 048 576 ячеек)
+     */
+    static long pack(int x, int y, int z) {
+        return ((x & COORDINATE_MASK) << (2 * COORDINATE_BITS))
+             | ((y & COORDINATE_MASK) << COORDINATE_BITS)
+             | (z & COORDINATE_MASK);
+    }
+
+    // === Чтение ===
+
+    V get(long key) {
+        Table<V> current = table;
+        int slot = current.find(key);
+        return slot >= 0 ? current.values.get(slot) : null;
+    }
+
+    void forEachValue(Consumer<V> action) {
+        Table<V> current = table;
+        for (int slot = 0; slot < current.capacity; slot++) {
+            V value = current.values.get(slot);
+            if (value != null) {
+                action.accept(value);
+            }
+        }
+    }
+
+    // === Запись ===
+
+    /**
+     * Атомарно заменить значение ячейки; null освобождает ячейку
+     * @return новое значение
+     */
+    V compute(long key, UnaryOperator<V> remapping) {
+        return update(key, remapping, true);
+    }
+
+    /**
+     * То же, что compute, но отсутствующая ячейка не создаётся
+     */
+    V computeIfPresent(long key, UnaryOperator<V> remapping) {
+        return update(key, remapping, false);
+    }
+
+    void clear() {
+        resizeLock.writeLock().lock();
+        try {
+            table = new Table<>(MIN_CAPACITY);
+        } finally {
+            resizeLock.writeLock().unlock();
+        }
+    }
+
+    private V update(long key, UnaryOperator<V> remapping, boolean create) {
+        while (true) {
+            resizeLock.readLock().lock();
+            try {
+                Table<V> current = table;
+                int slot = current.find(key);
+                if (slot < 0) {
+                    if (!create) {
+                        return null;
+                    }
+                    if (current.claimed.get() < current.threshold) {
+                        slot = current.claim(key);
+                    }
+                }
+
+                if (slot >= 0) {
+                    return current.casUpdate(slot, remapping);
+                }
+            } finally {
+                resizeLock.readLock().unlock();
+            }
+
+            // Таблица заполнена занятыми ключами - перестроить и повторить
+            rebuild();
+        }
+    }
+
+    /**
+     * Перестроить таблицу: выбросить пустые ячейки и при необходимости увеличить ёмкость
+     */
+    private void rebuild() {
+        resizeLock.writeLock().lock();
+        try {
+            Table<V> current = table;
+            if (current.claimed.get() < current.threshold) {
+                return; // Уже перестроил другой писатель
+            }
+
+            int live = current.live.get();
+            Table<V> rebuilt = new Table<>(tableSizeFor(Math.max(MIN_CAPACITY, live * 4)));
+            for (int slot = 0; slot < current.capacity; slot++) {
+                V value = current.values.get(slot);
+                if (value != null) {
+                    int target = rebuilt.claim(current.keys.get(slot));
+                    rebuilt.values.set(target, value);
+                    rebuilt.live.incrementAndGet();
+                }
+            }
+            table = rebuilt;
+        } finally {
+            resizeLock.writeLock().unlock();
+        }
+    }
+
+    private static int tableSizeFor(int size) {
+        return Integer.highestOneBit(size - 1) << 1;
+    }
+
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    /**
+     * Массивы таблицы; заменяются целиком при перестроении
+     */
+    private static final class Table<V> {
+        final int capacity;
+        final int mask;
+        final int threshold;
+        final AtomicLongArray keys;
+        final AtomicReferenceArray<V> values;
+        final AtomicInteger claimed = new AtomicInteger(0);
+        final AtomicInteger live = new AtomicInteger(0);
+
+        Table(int capacity) {
+            this.capacity = capacity;
+            this.mask = capacity - 1;
+            this.threshold = capacity / 2;
+            this.keys = new AtomicLongArray(capacity);
+            this.values = new AtomicReferenceArray<>(capacity);
+            for (int slot = 0; slot < capacity; slot++) {
+                keys.set(slot, EMPTY_KEY);
+            }
+        }
+
+        int find(long key) {
+            int slot = hash(key) & mask;
+            for (int probes = 0; probes < capacity; probes++) {
+                long current = keys.get(slot);
+                if (current == key) {
+                    return slot;
+                }
+                if (current == EMPTY_KEY) {
+                    return -1;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        /**
+         * Занять слот под ключ (или найти слот, который параллельно занял другой писатель)
+         * @return -1, если свободных слотов нет
+         */
+        int claim(long key) {
+            int slot = hash(key) & mask;
+            for (int probes = 0; probes < capacity; probes++) {
+                long current = keys.get(slot);
+                if (current == key) {
+                    return slot;
+                }
+                if (current == EMPTY_KEY) {
+                    if (keys.compareAndSet(slot, EMPTY_KEY, key)) {
+                        claimed.incrementAndGet();
+                        return slot;
+                    }
+                    if (keys.get(slot) == key) {
+                        return slot;
+                    }
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        V casUpdate(int slot, UnaryOperator<V> remapping) {
+            while (true) {
+                V current = values.get(slot);
+                V next = remapping.apply(current);
+                if (next == current) {
+                    return current;
+                }
+                if (values.compareAndSet(slot, current, next)) {
+                    if (current == null) {
+                        live.incrementAndGet();
+                    } else if (next == null) {
+                        live.decrementAndGet();
+                    }
+                    return next;
+                }
+            }
+        }
+    }
+}
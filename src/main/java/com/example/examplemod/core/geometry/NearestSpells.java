@@ -0,0 +1,69 @@
+package com.example.examplemod.core.geometry;
+
+import com.example.examplemod.core.geometry.SpatialIndex.SpellDistance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.UUID;
+
+/**
+ * Отбор k ближайших заклинаний для findNearestSpells всех реализаций SpatialIndex
+ *
+ * Ограниченная max-куча: вершина - самый дальний из лучших кандидатов, поэтому
+ * очередной кандидат сравнивается только с ней. Куча растёт по мере добавления -
+ * большой maxCount (вплоть до Integer.MAX_VALUE) не выделяет массив заранее.
+ */
+final class NearestSpells {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int maxCount;
+    private final PriorityQueue<SpellDistance> heap;
+
+    NearestSpells(int maxCount) {
+        this.maxCount = maxCount;
+        this.heap = new PriorityQueue<>(Math.min(maxCount, INITIAL_CAPACITY) + 1,
+            Comparator.comparingDouble(SpellDistance::distance).reversed());
+    }
+
+    /**
+     * Предложить кандидата: берётся, пока кандидатов меньше maxCount или он ближе самого дальнего
+     */
+    void offer(UUID spellId, double distance) {
+        if (heap.size() < maxCount) {
+            heap.add(new SpellDistance(spellId, distance));
+        } else if (distance < heap.peek().distance()) {
+            heap.poll();
+            heap.add(new SpellDistance(spellId, distance));
+        }
+    }
+
+    /**
+     * Набрано ли maxCount кандидатов (тогда worstDistance - граница для отсечения)
+     */
+    boolean isFull() {
+        return heap.size() >= maxCount;
+    }
+
+    /**
+     * Расстояние самого дальнего из отобранных кандидатов
+     */
+    double worstDistance() {
+        return heap.peek().distance();
+    }
+
+    /**
+     * Отобранные кандидаты по возрастанию расстояния (куча после этого пуста)
+     */
+    List<SpellDistance> drainSorted() {
+        // Куча отдаёт от дальнего к ближнему
+        SpellDistance[] sorted = new SpellDistance[heap.size()];
+        for (int i = sorted.length - 1; i >= 0; i--) {
+            sorted[i] = heap.poll();
+        }
+        return new ArrayList<>(Arrays.asList(sorted));
+    }
+}
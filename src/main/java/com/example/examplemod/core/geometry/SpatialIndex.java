@@ -2,256 +2,99 @@ package com.example.examplemod.core.geometry;
 
 import net.minecraft.world.phys.AABB;
 import net.minecraft.world.phys.Vec3;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
-import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.BiConsumer;
 
 /**
  * Пространственный индекс для быстрого поиска заклинаний
- * Использует сетку для оптимизации коллизий в многопоточной среде
+ *
+ * Реализации потокобезопасны: запись идёт из потоков заклинаний, запросы - из
+ * executor'а коллизий и Main Thread. Структура выбирается в конфиге (spatialIndexType).
  */
-public class SpatialIndex {
-    private static final Logger LOGGER = LoggerFactory.getLogger(SpatialIndex.class);
-    
-    private final double cellSize;
-    private final Map<GridCell, Set<IndexedSpell>> spatialGrid = new ConcurrentHashMap<>();
-    private final ReadWriteLock indexLock = new ReentrantReadWriteLock();
+public interface SpatialIndex {
 
-    public SpatialIndex(double cellSize) {
-        this.cellSize = Math.max(cellSize, 1.0); // Минимальный размер ячейки
+    /**
+     * Создать индекс выбранной структуры
+     * @param cellSize размер ячейки сетки; дерево берёт четверть ячейки как запас расширенных AABB
+     */
+    static SpatialIndex create(Type type, double cellSize) {
+        return switch (type) {
+            case GRID -> new GridSpatialIndex(cellSize);
+            case AABB_TREE -> new AabbTreeSpatialIndex(cellSize / 4.0);
+        };
     }
 
     /**
-     * Добавить заклинание в индекс
+     * Добавить заклинание в индекс (для уже добавленного - то же, что updateSpell)
      */
-    public void addSpell(UUID spellId, SpellShape shape) {
-        IndexedSpell indexedSpell = new IndexedSpell(spellId, shape);
-        
-        indexLock.writeLock().lock();
-        try {
-            // Найти все ячейки, которые пересекает заклинание
-            Set<GridCell> cells = getCellsForShape(shape);
-            
-            for (GridCell cell : cells) {
-                spatialGrid.computeIfAbsent(cell, k -> ConcurrentHashMap.newKeySet())
-                          .add(indexedSpell);
-            }
-            
-            LOGGER.trace("Added spell {} to {} grid cells", spellId, cells.size());
-        } finally {
-            indexLock.writeLock().unlock();
-        }
-    }
+    void addSpell(UUID spellId, SpellShape shape);
 
     /**
-     * Удалить заклинание из индекса
+     * Обновить форму заклинания (например, после перемещения снаряда)
      */
-    public void removeSpell(UUID spellId) {
-        indexLock.writeLock().lock();
-        try {
-            int removedCount = 0;
-            var iterator = spatialGrid.entrySet().iterator();
-            
-            while (iterator.hasNext()) {
-                var entry = iterator.next();
-                Set<IndexedSpell> spells = entry.getValue();
-                
-                boolean removed = spells.removeIf(spell -> spell.spellId.equals(spellId));
-                if (removed) removedCount++;
-                
-                // Удалить пустые ячейки
-                if (spells.isEmpty()) {
-                    iterator.remove();
-                }
-            }
-            
-            LOGGER.trace("Removed spell {} from {} grid cells", spellId, removedCount);
-        } finally {
-            indexLock.writeLock().unlock();
-        }
-    }
+    void updateSpell(UUID spellId, SpellShape shape);
 
     /**
-     * Найти все заклинания в указанной области
+     * Удалить заклинание из индекса
      */
-    public List<UUID> findSpellsInArea(AABB area) {
-        Set<UUID> foundSpells = new HashSet<>();
-        
-        indexLock.readLock().lock();
-        try {
-            Set<GridCell> searchCells = getCellsForAABB(area);
-            
-            for (GridCell cell : searchCells) {
-                Set<IndexedSpell> cellSpells = spatialGrid.get(cell);
-                if (cellSpells != null) {
-                    for (IndexedSpell spell : cellSpells) {
-                        if (spell.shape.getBoundingBox().intersects(area)) {
-                            foundSpells.add(spell.spellId);
-                        }
-                    }
-                }
-            }
-        } finally {
-            indexLock.readLock().unlock();
-        }
-        
-        return new ArrayList<>(foundSpells);
-    }
+    void removeSpell(UUID spellId);
 
     /**
-     * Найти заклинания, пересекающиеся с данной формой
+     * Есть ли заклинание в индексе
      */
-    public List<UUID> findIntersectingSpells(SpellShape queryShape) {
-        Set<UUID> foundSpells = new HashSet<>();
-        
-        indexLock.readLock().lock();
-        try {
-            Set<GridCell> searchCells = getCellsForShape(queryShape);
-            
-            for (GridCell cell : searchCells) {
-                Set<IndexedSpell> cellSpells = spatialGrid.get(cell);
-                if (cellSpells != null) {
-                    for (IndexedSpell spell : cellSpells) {
-                        if (spell.shape.intersects(queryShape)) {
-                            foundSpells.add(spell.spellId);
-                        }
-                    }
-                }
-            }
-        } finally {
-            indexLock.readLock().unlock();
-        }
-        
-        return new ArrayList<>(foundSpells);
-    }
+    boolean containsSpell(UUID spellId);
 
     /**
-     * Найти ближайшие заклинания к точке
+     * Обойти все заклинания индекса (например, для переноса в индекс другой структуры)
      */
-    public List<SpellDistance> findNearestSpells(Vec3 point, double maxDistance, int maxCount) {
-        List<SpellDistance> nearbySpells = new ArrayList<>();
-        
-        indexLock.readLock().lock();
-        try {
-            // Создать область поиска
-            AABB searchArea = new AABB(
-                point.x - maxDistance, point.y - maxDistance, point.z - maxDistance,
-                point.x + maxDistance, point.y + maxDistance, point.z + maxDistance
-            );
-            
-            Set<GridCell> searchCells = getCellsForAABB(searchArea);
-            
-            for (GridCell cell : searchCells) {
-                Set<IndexedSpell> cellSpells = spatialGrid.get(cell);
-                if (cellSpells != null) {
-                    for (IndexedSpell spell : cellSpells) {
-                        double distance = point.distanceTo(spell.shape.getCenter());
-                        if (distance <= maxDistance) {
-                            nearbySpells.add(new SpellDistance(spell.spellId, distance));
-                        }
-                    }
-                }
-            }
-            
-            // Отсортировать по расстоянию и ограничить количество
-            nearbySpells.sort(Comparator.comparingDouble(SpellDistance::distance));
-            if (nearbySpells.size() > maxCount) {
-                nearbySpells = nearbySpells.subList(0, maxCount);
-            }
-            
-        } finally {
-            indexLock.readLock().unlock();
-        }
-        
-        return nearbySpells;
-    }
+    void forEachSpell(BiConsumer<UUID, SpellShape> action);
 
     /**
-     * Получить ячейки сетки для формы
+     * Найти все заклинания, чей AABB пересекает область
      */
-    private Set<GridCell> getCellsForShape(SpellShape shape) {
-        return getCellsForAABB(shape.getBoundingBox());
-    }
+    List<UUID> findSpellsInArea(AABB area);
 
     /**
-     * Получить ячейки сетки для AABB
+     * Найти заклинания, пересекающиеся с данной формой
      */
-    private Set<GridCell> getCellsForAABB(AABB bounds) {
-        Set<GridCell> cells = new HashSet<>();
-        
-        int minX = (int) Math.floor(bounds.minX / cellSize);
-        int maxX = (int) Math.floor(bounds.maxX / cellSize);
-        int minY = (int) Math.floor(bounds.minY / cellSize);
-        int maxY = (int) Math.floor(bounds.maxY / cellSize);
-        int minZ = (int) Math.floor(bounds.minZ / cellSize);
-        int maxZ = (int) Math.floor(bounds.maxZ / cellSize);
-        
-        for (int x = minX; x <= maxX; x++) {
-            for (int y = minY; y <= maxY; y++) {
-                for (int z = minZ; z <= maxZ; z++) {
-                    cells.add(new GridCell(x, y, z));
-                }
-            }
-        }
-        
-        return cells;
-    }
+    List<UUID> findIntersectingSpells(SpellShape queryShape);
 
     /**
-     * Очистить весь индекс
+     * Найти до maxCount ближайших заклинаний к точке (по центру формы), по возрастанию расстояния
      */
-    public void clear() {
-        indexLock.writeLock().lock();
-        try {
-            spatialGrid.clear();
-            LOGGER.debug("Cleared spatial index");
-        } finally {
-            indexLock.writeLock().unlock();
-        }
-    }
+    List<SpellDistance> findNearestSpells(Vec3 point, double maxDistance, int maxCount);
 
     /**
-     * Получить статистику индекса
+     * Очистить весь индекс
      */
-    public IndexStats getStats() {
-        indexLock.readLock().lock();
-        try {
-            int totalCells = spatialGrid.size();
-            int totalSpells = spatialGrid.values().stream()
-                                       .mapToInt(Set::size)
-                                       .sum();
-            
-            double avgSpellsPerCell = totalCells > 0 ? (double) totalSpells / totalCells : 0;
-            
-            return new IndexStats(totalCells, totalSpells, avgSpellsPerCell, cellSize);
-        } finally {
-            indexLock.readLock().unlock();
-        }
-    }
+    void clear();
 
     /**
-     * Ячейка пространственной сетки
+     * Получить статистику индекса
      */
-    private record GridCell(int x, int y, int z) {}
+    IndexStats getStats();
 
     /**
-     * Заклинание в индексе
+     * Структура индекса
      */
-    private record IndexedSpell(UUID spellId, SpellShape shape) {}
+    enum Type {
+        GRID,      // Равномерная сетка: дёшево для заклинаний одного размера
+        AABB_TREE  // Динамическое дерево AABB: для смеси снарядов и больших областей
+    }
 
     /**
      * Результат поиска с расстоянием
      */
-    public record SpellDistance(UUID spellId, double distance) {}
+    record SpellDistance(UUID spellId, double distance) {}
 
     /**
      * Статистика индекса
+     * Для AABB_TREE ячейки - узлы дерева, cellSize - запас расширенных AABB
      */
-    public record IndexStats(
+    record IndexStats(
+        Type type,
         int totalCells,
         int totalSpells,
         double averageSpellsPerCell,
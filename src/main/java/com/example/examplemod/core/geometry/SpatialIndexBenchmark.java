@@ -0,0 +1,133 @@
+package com.example.examplemod.core.geometry;
+
+import com.example.examplemod.core.geometry.shapes.SphereShape;
+import net.minecraft.world.phys.Vec3;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Сравнительный замер структур SpatialIndex на синтетической смеси заклинаний
+ *
+ * Смесь: 80% снарядов (радиус 0.25-1), 15% средних форм (2-6), 5% больших областей (10-30).
+ * Снаряды движутся каждый тик. Для каждой структуры замеряются вставка, обновление
+ * позиций, запросы пересечений от каждого снаряда и поиск 5 ближайших.
+ * Одинаковая контрольная сумма у всех структур означает одинаковые ответы.
+ */
+public final class SpatialIndexBenchmark {
+
+    public static final int DEFAULT_SPELL_COUNT = 2000;
+
+    private static final double CELL_SIZE = 4.0;
+    private static final double WORLD_HORIZONTAL = 256.0;
+    private static final double WORLD_VERTICAL = 64.0;
+    private static final int SIMULATED_TICKS = 20;
+    private static final int NEAREST_QUERIES = 1000;
+    private static final double NEAREST_RADIUS = 32.0;
+    private static final int NEAREST_COUNT = 5;
+
+    private SpatialIndexBenchmark() {
+    }
+
+    /**
+     * Прогнать все структуры на одной и той же нагрузке (первый прогон - прогрев JIT)
+     */
+    public static List<Result> run(int spellCount, long seed) {
+        List<Result> results = new ArrayList<>();
+        for (SpatialIndex.Type type : SpatialIndex.Type.values()) {
+            runOnce(type, spellCount, seed);
+            results.add(runOnce(type, spellCount, seed));
+        }
+        return results;
+    }
+
+    private static Result runOnce(SpatialIndex.Type type, int spellCount, long seed) {
+        Random random = new Random(seed);
+        SpatialIndex index = SpatialIndex.create(type, CELL_SIZE);
+
+        UUID[] ids = new UUID[spellCount];
+        Vec3[] centers = new Vec3[spellCount];
+        Vec3[] velocities = new Vec3[spellCount];
+        double[] radii = new double[spellCount];
+        SpellShape[] shapes = new SpellShape[spellCount];
+
+        for (int i = 0; i < spellCount; i++) {
+            ids[i] = new UUID(seed, i);
+            centers[i] = new Vec3(random.nextDouble() * WORLD_HORIZONTAL, random.nextDouble() * WORLD_VERTICAL,
+                random.nextDouble() * WORLD_HORIZONTAL);
+
+            double kind = random.nextDouble();
+            if (kind < 0.80) {
+                radii[i] = 0.25 + random.nextDouble() * 0.75;
+                velocities[i] = new Vec3(random.nextDouble() * 4 - 2, random.nextDouble() - 0.5, random.nextDouble() * 4 - 2);
+            } else if (kind < 0.95) {
+                radii[i] = 2.0 + random.nextDouble() * 4.0;
+            } else {
+                radii[i] = 10.0 + random.nextDouble() * 20.0;
+            }
+            shapes[i] = new SphereShape(centers[i], radii[i]);
+        }
+
+        // Вставка
+        long start = System.nanoTime();
+        for (int i = 0; i < spellCount; i++) {
+            index.addSpell(ids[i], shapes[i]);
+        }
+        double insertNanos = (double) (System.nanoTime() - start) / spellCount;
+
+        // Движение снарядов
+        long updates = 0;
+        start = System.nanoTime();
+        for (int tick = 0; tick < SIMULATED_TICKS; tick++) {
+            for (int i = 0; i < spellCount; i++) {
+                if (velocities[i] != null) {
+                    centers[i] = centers[i].add(velocities[i]);
+                    shapes[i] = new SphereShape(centers[i], radii[i]);
+                    index.updateSpell(ids[i], shapes[i]);
+                    updates++;
+                }
+            }
+        }
+        double updateNanos = updates > 0 ? (double) (System.nanoTime() - start) / updates : 0;
+
+        // Пересечения от каждого снаряда (широкая фаза коллизий)
+        long checksum = 0;
+        long queries = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < spellCount; i++) {
+            if (velocities[i] != null) {
+                checksum += index.findIntersectingSpells(shapes[i]).size();
+                queries++;
+            }
+        }
+        double intersectNanos = queries > 0 ? (double) (System.nanoTime() - start) / queries : 0;
+
+        // Ближайшие (наведение, цепные цели)
+        start = System.nanoTime();
+        for (int q = 0; q < NEAREST_QUERIES; q++) {
+            Vec3 point = new Vec3(random.nextDouble() * WORLD_HORIZONTAL, random.nextDouble() * WORLD_VERTICAL,
+                random.nextDouble() * WORLD_HORIZONTAL);
+            checksum += 31L * index.findNearestSpells(point, NEAREST_RADIUS, NEAREST_COUNT).size();
+        }
+        double nearestNanos = (double) (System.nanoTime() - start) / NEAREST_QUERIES;
+
+        return new Result(type, spellCount, insertNanos, updateNanos, intersectNanos, nearestNanos,
+            checksum, index.getStats());
+    }
+
+    /**
+     * Результат замера одной структуры (времена - наносекунды на операцию)
+     */
+    public record Result(
+        SpatialIndex.Type type,
+        int spellCount,
+        double insertNanos,
+        double updateNanos,
+        double intersectNanos,
+        double nearestNanos,
+        long checksum,
+        SpatialIndex.IndexStats stats
+    ) {}
+}
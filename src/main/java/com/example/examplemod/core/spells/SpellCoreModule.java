@@ -6,11 +6,13 @@ import com.example.examplemod.core.spells.computation.SpellComputationTaskResult
 import com.example.examplemod.core.spells.parameters.SpellParameters;
 import com.example.examplemod.core.spells.instances.SpellInstance;
 import com.example.examplemod.core.spells.collision.CollisionSnapshot;
+import com.example.examplemod.core.spells.collision.CollisionSnapshotPool;
 import com.example.examplemod.core.geometry.CollisionDetector;
 import com.example.examplemod.core.geometry.SpellShape;
 import com.example.examplemod.core.threads.MainThreadSynchronizer;
 import com.example.examplemod.api.threads.MainThreadSynchronizerAPI;
 import com.example.examplemod.api.threads.IMainThreadSynchronizer;
+import com.example.examplemod.api.threads.ThreadMonitoringService;
 
 import net.minecraft.world.entity.player.Player;
 import net.minecraft.world.level.Level;
@@ -129,6 +131,9 @@ public class SpellCoreModule {
     public CompletableFuture<SpellComputationTaskResult> castSpell(SpellDefinition definition, 
                                                                   SpellParameters parameters,
                                                                   Level level, Player caster) {
+        // Начало end-to-end измерения задержки каста (до применения в Main Thread)
+        long castStartNanos = System.nanoTime();
+        
         // Создаём thread-safe контекст (снепшоты данных, без ссылок на Minecraft объекты)
         SpellComputationContext context = createSafeContext(definition, level, caster);
         
@@ -153,7 +158,8 @@ public class SpellCoreModule {
             .thenComposeAsync(this::processResources, resourceThread)        // Resource Thread
             .thenComposeAsync(this::processCollisions, collisionThread)      // Collision Thread
             .thenComposeAsync(this::aggregateResults, aggregationThread)     // Aggregation Thread
-            .whenComplete(this::scheduleMainThreadApplication);              // Schedule for Main Thread
+            .whenComplete((result, error) -> 
+                scheduleMainThreadApplication(result, error, castStartNanos));  // Schedule for Main Thread
     }
     
     /**
@@ -167,7 +173,8 @@ public class SpellCoreModule {
             caster.getX() - 16, caster.getY() - 8, caster.getZ() - 16,
             caster.getX() + 16, caster.getY() + 8, caster.getZ() + 16
         );
-        CollisionSnapshot collisionSnapshot = new CollisionSnapshot(level, searchArea);
+        // Касты одного тика рядом друг с другом делят снепшот (его освобождает GC вместе с контекстом)
+        CollisionSnapshot collisionSnapshot = CollisionSnapshotPool.getInstance().acquire(level, searchArea);
         
         // Создаём снепшоты данных без ссылок на Minecraft объекты
         return new SpellComputationContext(
@@ -278,12 +285,20 @@ public class SpellCoreModule {
     /**
      * Запланировать применение в Main Thread (НЕ выполняется в Main Thread!)
      */
-    private void scheduleMainThreadApplication(SpellComputationTaskResult result, Throwable error) {
+    private void scheduleMainThreadApplication(SpellComputationTaskResult result, Throwable error, long castStartNanos) {
         // Используем API для планирования в Main Thread
         String taskName = "SpellCore_ApplySpell_" + result.getSpellInstanceId().toString().substring(0, 8);
         
         // Используем высокий приоритет для применения заклинаний - это критично для геймплея
-        MainThreadSynchronizerAPI.executeHighPriority(taskName, () -> applyToMainThread(result, error));
+        // Планируем через handle модуля, чтобы задача учитывалась весами SpellCore
+        moduleHandle.execute(taskName, () -> {
+            try {
+                applyToMainThread(result, error);
+            } finally {
+                // Упавшие касты тоже входят в задержку, иначе хвост перцентилей теряет самые медленные
+                ThreadMonitoringService.getInstance().recordCastLatency(System.nanoTime() - castStartNanos);
+            }
+        }, IMainThreadSynchronizer.TaskPriority.HIGH);
     }
     
     /**
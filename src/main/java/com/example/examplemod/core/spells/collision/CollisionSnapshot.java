@@ -5,15 +5,21 @@ import net.minecraft.world.entity.LivingEntity;
 import net.minecraft.world.phys.AABB;
 import net.minecraft.world.phys.Vec3;
 import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.EmptyBlockGetter;
 import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.phys.shapes.VoxelShape;
 import net.minecraft.world.level.Level;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Thread-safe снепшот состояния мира для детекции коллизий
- * НЕ содержит прямых ссылок на Minecraft объекты
+ * НЕ содержит ссылок на изменяемые Minecraft объекты (Level, Entity, чанки) -
+ * только на неизменяемые копии секций и BlockState
  * 
  * Соответствует архитектуре: Main Thread -> Collision Thread (ВОТ МЫ ЗДЕСЬ)
  */
@@ -26,62 +32,193 @@ public class CollisionSnapshot {
     // Снепшоты сущностей - копии данных без ссылок
     private final Map<UUID, EntitySnapshot> nearbyEntities;
     
-    // Снепшоты блоков - копии BlockState без ссылок на Level
-    private final Map<BlockPos, BlockSnapshot> nearbyBlocks;
+    // Блоки - ссылки на общие неизменяемые копии секций чанков.
+    // null - секция ещё не разрешена: при первом обращении из кэша берутся все такие секции сразу
+    // UNAVAILABLE - блоки секции неизвестны (чанк не загружен или копию не успели снять)
+    private final SectionSnapshotCache cache;
+    private final long captureTick;
+    private final AtomicReferenceArray<SectionSnapshotCache.SectionCopy> sections;
+    private final int minSectionX, minSectionY, minSectionZ;
+    private final int sectionsX, sectionsY, sectionsZ;
+    
+    // Захваченная область блоков (включительно)
+    private final int minBlockX, minBlockY, minBlockZ;
+    private final int maxBlockX, maxBlockY, maxBlockZ;
+    
+    // Список блоков собирается при первом запросе в потоке вычислений (разрешает все секции)
+    private volatile List<BlockSnapshot> materializedBlocks;
     
     // Границы области снепшота
     private final AABB snapshotBounds;
     
+    // Область, по которой сняты сущности и блоки
+    private final AABB captureArea;
+    
     public CollisionSnapshot(Level level, AABB searchArea) {
+        this(level, searchArea, null);
+    }
+    
+    /**
+     * Снепшот той же области на основе предыдущего (см. refresh)
+     */
+    private CollisionSnapshot(Level level, AABB searchArea, CollisionSnapshot previous) {
         this.snapshotTime = System.currentTimeMillis();
         this.dimensionId = level.dimension().hashCode();
         this.snapshotBounds = searchArea.inflate(1.0); // Небольшое расширение
+        this.captureArea = searchArea;
         this.nearbyEntities = new ConcurrentHashMap<>();
-        this.nearbyBlocks = new ConcurrentHashMap<>();
+        
+        this.minBlockX = (int) Math.floor(searchArea.minX);
+        this.minBlockY = (int) Math.floor(searchArea.minY);
+        this.minBlockZ = (int) Math.floor(searchArea.minZ);
+        this.maxBlockX = (int) Math.ceil(searchArea.maxX);
+        this.maxBlockY = (int) Math.ceil(searchArea.maxY);
+        this.maxBlockZ = (int) Math.ceil(searchArea.maxZ);
+        
+        this.minSectionX = SectionPos.blockToSectionCoord(minBlockX);
+        this.minSectionY = SectionPos.blockToSectionCoord(minBlockY);
+        this.minSectionZ = SectionPos.blockToSectionCoord(minBlockZ);
+        this.sectionsX = SectionPos.blockToSectionCoord(maxBlockX) - minSectionX + 1;
+        this.sectionsY = SectionPos.blockToSectionCoord(maxBlockY) - minSectionY + 1;
+        this.sectionsZ = SectionPos.blockToSectionCoord(maxBlockZ) - minSectionZ + 1;
+        this.sections = new AtomicReferenceArray<>(sectionsX * sectionsY * sectionsZ);
+        this.cache = SectionSnapshotCache.forLevel(level);
+        this.captureTick = level.getGameTime();
         
         // Создаём снепшоты в Main Thread (безопасно)
-        captureEntities(level, searchArea);
-        captureBlocks(level, searchArea);
+        captureEntities(level, searchArea, previous);
+        captureSections(level, previous != null);
     }
     
     /**
-     * Захватить снепшоты сущностей (Main Thread only)
+     * Снепшот той же области на основе этого (Main Thread only; см. CollisionSnapshotPool).
+     * Инкрементально обновляются только блоки: копии нетронутых секций переносятся,
+     * на изменённые секции накладываются изменения блоков, записанные кэшем секций.
+     * Сущности запрашиваются заново, переиспользуются лишь снепшоты неизменившихся.
+     * Этот снепшот остаётся прежним - его могут читать другие потоки
      */
-    private void captureEntities(Level level, AABB searchArea) {
+    public CollisionSnapshot refresh(Level level) {
+        return new CollisionSnapshot(level, captureArea, this);
+    }
+    
+    /**
+     * Захватить снепшоты сущностей (Main Thread only).
+     * Снепшот сущности, которая не сдвинулась и не изменилась, берётся из предыдущего
+     */
+    private void captureEntities(Level level, AABB searchArea, CollisionSnapshot previous) {
         List<Entity> entities = level.getEntitiesOfClass(Entity.class, searchArea);
         
         for (Entity entity : entities) {
             if (entity != null && entity.isAlive()) {
-                EntitySnapshot snapshot = new EntitySnapshot(entity);
+                EntitySnapshot old = previous != null ? previous.nearbyEntities.get(entity.getUUID()) : null;
+                EntitySnapshot snapshot = old != null && old.isUnchanged(entity) ? old : new EntitySnapshot(entity);
                 nearbyEntities.put(entity.getUUID(), snapshot);
             }
         }
     }
     
     /**
-     * Захватить снепшоты блоков (Main Thread only)
+     * Запомнить уже свежие копии секций области (Main Thread only).
+     * Здесь ничего не копируется: остальные секции разрешаются лениво в resolveSection.
+     * При обновлении секции с немногими изменениями сразу получают копию-патч
+     */
+    private void captureSections(Level level, boolean patchChanged) {
+        for (int sx = 0; sx < sectionsX; sx++) {
+            for (int sy = 0; sy < sectionsY; sy++) {
+                for (int sz = 0; sz < sectionsZ; sz++) {
+                    long key = SectionPos.asLong(minSectionX + sx, minSectionY + sy, minSectionZ + sz);
+                    sections.set(sectionIndex(sx, sy, sz), patchChanged
+                        ? cache.peekOrPatch(level, key)
+                        : cache.peekFresh(level, key));
+                }
+            }
+        }
+    }
+    
+    /**
+     * Копия секции по индексу; первое обращение разрешает все недостающие секции (любой поток)
      */
-    private void captureBlocks(Level level, AABB searchArea) {
-        int minX = (int) Math.floor(searchArea.minX);
-        int minY = (int) Math.floor(searchArea.minY);
-        int minZ = (int) Math.floor(searchArea.minZ);
-        int maxX = (int) Math.ceil(searchArea.maxX);
-        int maxY = (int) Math.ceil(searchArea.maxY);
-        int maxZ = (int) Math.ceil(searchArea.maxZ);
+    private SectionSnapshotCache.SectionCopy resolveSection(int sx, int sy, int sz) {
+        int index = sectionIndex(sx, sy, sz);
+        SectionSnapshotCache.SectionCopy section = sections.get(index);
+        if (section == null) {
+            resolveMissingSections();
+            section = sections.get(index);
+        }
+        return section;
+    }
+    
+    /**
+     * Разрешить все ещё не разрешённые секции одним пакетом: на холодном кэше поток
+     * вычислений ждёт Main Thread один раз, а не по тику на каждую секцию
+     */
+    private void resolveMissingSections() {
+        int[] indices = new int[sections.length()];
+        long[] keys = new long[sections.length()];
+        int missing = 0;
+        for (int sx = 0; sx < sectionsX; sx++) {
+            for (int sy = 0; sy < sectionsY; sy++) {
+                for (int sz = 0; sz < sectionsZ; sz++) {
+                    int index = sectionIndex(sx, sy, sz);
+                    if (sections.get(index) == null) {
+                        indices[missing] = index;
+                        keys[missing] = SectionPos.asLong(minSectionX + sx, minSectionY + sy, minSectionZ + sz);
+                        missing++;
+                    }
+                }
+            }
+        }
+        if (missing == 0) {
+            return;
+        }
         
-        for (int x = minX; x <= maxX; x++) {
-            for (int y = minY; y <= maxY; y++) {
-                for (int z = minZ; z <= maxZ; z++) {
-                    BlockPos pos = new BlockPos(x, y, z);
-                    BlockState state = level.getBlockState(pos);
-                    
-                    if (!state.isAir()) {
-                        BlockSnapshot snapshot = new BlockSnapshot(pos, state);
-                        nearbyBlocks.put(pos, snapshot);
+        SectionSnapshotCache.SectionCopy[] resolved = cache.resolveAll(Arrays.copyOf(keys, missing), captureTick);
+        for (int i = 0; i < missing; i++) {
+            sections.compareAndSet(indices[i], null, resolved[i]);
+        }
+    }
+    
+    private int sectionIndex(int sx, int sy, int sz) {
+        return (sx * sectionsY + sy) * sectionsZ + sz;
+    }
+    
+    /**
+     * Тип блока из копии секции; null - вне снепшота или блок неизвестен (см. isKnownAt)
+     */
+    private BlockType typeAt(int x, int y, int z) {
+        if (x < minBlockX || x > maxBlockX || y < minBlockY || y > maxBlockY || z < minBlockZ || z > maxBlockZ) {
+            return null;
+        }
+        SectionSnapshotCache.SectionCopy section = resolveSection(
+            SectionPos.blockToSectionCoord(x) - minSectionX,
+            SectionPos.blockToSectionCoord(y) - minSectionY,
+            SectionPos.blockToSectionCoord(z) - minSectionZ);
+        if (section == SectionSnapshotCache.UNAVAILABLE) {
+            return null;
+        }
+        return section.get(x & 15, y & 15, z & 15);
+    }
+    
+    private List<BlockSnapshot> materializeBlocks() {
+        List<BlockSnapshot> blocks = materializedBlocks;
+        if (blocks != null) {
+            return blocks;
+        }
+        
+        blocks = new ArrayList<>();
+        for (int x = minBlockX; x <= maxBlockX; x++) {
+            for (int y = minBlockY; y <= maxBlockY; y++) {
+                for (int z = minBlockZ; z <= maxBlockZ; z++) {
+                    BlockType type = typeAt(x, y, z);
+                    if (type != null && !type.isAir()) {
+                        blocks.add(new BlockSnapshot(new BlockPos(x, y, z), type));
                     }
                 }
             }
         }
+        blocks = Collections.unmodifiableList(blocks);
+        materializedBlocks = blocks;
+        return blocks;
     }
     
     // === THREAD-SAFE ГЕТТЕРЫ ===
@@ -96,16 +233,71 @@ public class CollisionSnapshot {
                 .toList();
     }
     
+    /**
+     * Все не-воздушные блоки области. Блоков неизвестных секций здесь нет -
+     * проверяйте hasUnknownSections, прежде чем считать их отсутствие воздухом
+     */
     public Collection<BlockSnapshot> getAllBlocks() {
-        return new ArrayList<>(nearbyBlocks.values());
+        return materializeBlocks();
     }
     
     public Optional<EntitySnapshot> getEntity(UUID entityId) {
         return Optional.ofNullable(nearbyEntities.get(entityId));
     }
     
+    /**
+     * Блок в точке; empty - воздух, точка вне снепшота или блок неизвестен (см. isKnownAt)
+     */
     public Optional<BlockSnapshot> getBlock(BlockPos pos) {
-        return Optional.ofNullable(nearbyBlocks.get(pos));
+        BlockType type = typeAt(pos.getX(), pos.getY(), pos.getZ());
+        if (type == null || type.isAir()) {
+            return Optional.empty();
+        }
+        return Optional.of(new BlockSnapshot(pos.immutable(), type));
+    }
+    
+    /**
+     * Твёрдый ли блок в точке - без создания BlockSnapshot.
+     * false и для неизвестного блока: где это важно, проверяйте isKnownAt
+     */
+    public boolean isSolidAt(int x, int y, int z) {
+        BlockType type = typeAt(x, y, z);
+        return type != null && type.isSolid();
+    }
+    
+    /**
+     * Известен ли блок в точке: она внутри снепшота и копию её секции удалось получить.
+     * Неизвестный блок - это не воздух: чанк не был загружен или Main Thread не успел снять копию
+     */
+    public boolean isKnownAt(int x, int y, int z) {
+        if (x < minBlockX || x > maxBlockX || y < minBlockY || y > maxBlockY || z < minBlockZ || z > maxBlockZ) {
+            return false;
+        }
+        return resolveSection(
+            SectionPos.blockToSectionCoord(x) - minSectionX,
+            SectionPos.blockToSectionCoord(y) - minSectionY,
+            SectionPos.blockToSectionCoord(z) - minSectionZ) != SectionSnapshotCache.UNAVAILABLE;
+    }
+    
+    /**
+     * Есть ли в области секции с неизвестными блоками (разрешает все секции)
+     */
+    public boolean hasUnknownSections() {
+        resolveMissingSections();
+        for (int index = 0; index < sections.length(); index++) {
+            if (sections.get(index) == SectionSnapshotCache.UNAVAILABLE) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Покрывает ли снепшот область целиком (для пула снепшотов)
+     */
+    boolean covers(AABB area) {
+        return captureArea.minX <= area.minX && captureArea.minY <= area.minY && captureArea.minZ <= area.minZ
+            && captureArea.maxX >= area.maxX && captureArea.maxY >= area.maxY && captureArea.maxZ >= area.maxZ;
     }
     
     public AABB getSnapshotBounds() {
@@ -125,11 +317,16 @@ public class CollisionSnapshot {
     }
     
     public int getBlockCount() {
-        return nearbyBlocks.size();
+        return materializeBlocks().size();
+    }
+    
+    public long getCaptureTick() {
+        return captureTick;
     }
     
     /**
-     * Проверить истекло ли время снепшота (для кэширования)
+     * Проверить истекло ли время снепшота (для кэширования).
+     * Поддерживаемым заклинаниям вместо пересоздания лучше вызывать refresh
      */
     public boolean isExpired(long maxAgeMs) {
         return System.currentTimeMillis() - snapshotTime > maxAgeMs;
@@ -180,6 +377,18 @@ public class CollisionSnapshot {
         public float getMaxHealth() { return maxHealth; }
         public boolean isOnGround() { return isOnGround; }
         
+        /**
+         * Совпадает ли снепшот с текущим состоянием сущности (Main Thread only)
+         */
+        private boolean isUnchanged(Entity entity) {
+            if (entity.onGround() != isOnGround || !entity.position().equals(position)
+                    || !entity.getBoundingBox().equals(boundingBox)) {
+                return false;
+            }
+            return !(entity instanceof LivingEntity living)
+                || (living.getHealth() == health && living.getMaxHealth() == maxHealth);
+        }
+        
         /**
          * Проверить пересечение с областью
          */
@@ -196,44 +405,126 @@ public class CollisionSnapshot {
     }
     
     /**
-     * Thread-safe снепшот блока без ссылки на BlockState
+     * Общие данные всех блоков одного BlockState: считаются один раз на состояние
+     * и разделяются всеми палитрами секций
      */
-    public static class BlockSnapshot {
-        private final BlockPos position;
-        private final String blockType;
+    public static final class BlockType {
+        private static final Map<BlockState, BlockType> TYPES = new ConcurrentHashMap<>();
+        
+        // Форма полного блока в локальных координатах
+        private static final AABB FULL_BLOCK = new AABB(0, 0, 0, 1, 1, 1);
+        
+        static final BlockType AIR = of(Blocks.AIR.defaultBlockState());
+        
+        private final BlockState state;
+        private final String name;
         private final boolean isSolid;
         private final boolean isAir;
-        private final AABB shape;
         private final float hardness;
         private final boolean canOcclude;
+        // null - форма зависит от позиции блока и считается на каждый блок (см. shapeAt)
+        private final AABB localShape;
         
-        private BlockSnapshot(BlockPos pos, BlockState state) {
-            this.position = pos.immutable(); // Defensive copy
-            this.blockType = state.getBlock().toString();
-            this.isSolid = !state.isAir() && state.canOcclude();
+        private BlockType(BlockState state) {
+            this.state = state;
+            this.name = state.getBlock().toString();
             this.isAir = state.isAir();
-            this.hardness = state.getBlock().defaultDestroyTime();
             this.canOcclude = state.canOcclude();
+            this.isSolid = !isAir && canOcclude;
+            this.hardness = state.getBlock().defaultDestroyTime();
             
-            // Создаём AABB блока
-            this.shape = new AABB(pos.getX(), pos.getY(), pos.getZ(),
-                                 pos.getX() + 1, pos.getY() + 1, pos.getZ() + 1);
+            if (state.hasDynamicShape()) {
+                // Форма зависит от окружения (поршень в движении, шалкер): из потока
+                // вычислений её не узнать, поэтому берём полный куб
+                this.localShape = FULL_BLOCK;
+            } else if (state.hasOffsetFunction()) {
+                // Бамбук, сталактиты: форма сдвинута на смещение, зависящее от позиции
+                this.localShape = null;
+            } else {
+                this.localShape = boundsOf(state.getCollisionShape(EmptyBlockGetter.INSTANCE, BlockPos.ZERO));
+            }
         }
         
-        // Thread-safe геттеры
-        public BlockPos getPosition() { return position; }
-        public String getBlockType() { return blockType; }
+        /**
+         * Границы формы коллизии в локальных координатах; блок без коллизии
+         * (трава, факел) считается полным кубом, как и раньше
+         */
+        private static AABB boundsOf(VoxelShape collision) {
+            return collision.isEmpty() ? FULL_BLOCK : collision.bounds();
+        }
+        
+        static BlockType of(BlockState state) {
+            return TYPES.computeIfAbsent(state, BlockType::new);
+        }
+        
+        public BlockState getState() { return state; }
+        public String getName() { return name; }
         public boolean isSolid() { return isSolid; }
         public boolean isAir() { return isAir; }
-        public AABB getShape() { return shape; }
         public float getHardness() { return hardness; }
         public boolean canOcclude() { return canOcclude; }
         
+        /**
+         * Зависит ли форма коллизии от позиции блока (тогда getLocalShape - null)
+         */
+        public boolean isPositionDependent() { return localShape == null; }
+        
+        /**
+         * Общая форма коллизии в локальных координатах блока (0-1);
+         * null для типов, зависящих от позиции
+         */
+        public AABB getLocalShape() { return localShape; }
+        
+        /**
+         * Форма коллизии в локальных координатах для блока в данной позиции.
+         * Смещение зависит только от позиции, поэтому считается в любом потоке
+         */
+        public AABB localShapeAt(BlockPos pos) {
+            if (localShape != null) {
+                return localShape;
+            }
+            return boundsOf(state.getCollisionShape(EmptyBlockGetter.INSTANCE, pos));
+        }
+    }
+    
+    /**
+     * Thread-safe снепшот блока: позиция и ссылка на общий BlockType
+     */
+    public static class BlockSnapshot {
+        private final BlockPos position;
+        private final BlockType type;
+        
+        private BlockSnapshot(BlockPos pos, BlockType type) {
+            this.position = pos;
+            this.type = type;
+        }
+        
+        // Thread-safe геттеры
+        public BlockPos getPosition() { return position; }
+        public BlockType getType() { return type; }
+        public String getBlockType() { return type.getName(); }
+        public boolean isSolid() { return type.isSolid(); }
+        public boolean isAir() { return type.isAir(); }
+        public float getHardness() { return type.getHardness(); }
+        public boolean canOcclude() { return type.canOcclude(); }
+        
+        /**
+         * Форма коллизии в мировых координатах (создаётся по запросу из формы типа)
+         */
+        public AABB getShape() {
+            return type.localShapeAt(position).move(position);
+        }
+        
         /**
          * Проверить пересечение с областью
          */
         public boolean intersects(AABB area) {
-            return shape.intersects(area);
+            AABB local = type.localShapeAt(position);
+            double x = position.getX();
+            double y = position.getY();
+            double z = position.getZ();
+            return area.intersects(local.minX + x, local.minY + y, local.minZ + z,
+                                   local.maxX + x, local.maxY + y, local.maxZ + z);
         }
     }
 }
\ No newline at end of file
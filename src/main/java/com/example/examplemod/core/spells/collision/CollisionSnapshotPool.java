@@ -0,0 +1,136 @@
+package com.example.examplemod.core.spells.collision;
+
+import net.minecraft.core.SectionPos;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.phys.AABB;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Пул снепшотов коллизий региона
+ *
+ * Касты одного тика в одном регионе (REGION_SIZE блоков по каждой оси, по центру
+ * запрошенной области) получают общий снепшот. Если уже выданный снепшот не покрывает
+ * новую область, снимается один снепшот на их объединение и заменяет прежний в пуле -
+ * держатели прежнего продолжают работать с ним, он неизменяем.
+ *
+ * В следующих тиках снепшот региона повторно не выдаётся: мир уже другой. Но пока он
+ * не старше REFRESH_WINDOW_TICKS и покрывает запрошенную область, новый снепшот
+ * строится через refresh - нетронутые секции переносятся, на изменённые накладываются
+ * только изменения блоков. Так повторные и поддерживаемые касты в одном месте не
+ * платят за полный захват каждый раз.
+ *
+ * Владение снепшотами не отслеживается: снепшот неизменяем и не держит ресурсов,
+ * кроме памяти, поэтому его освобождает GC, когда последний каст перестаёт на него
+ * ссылаться, а пул - после REFRESH_WINDOW_TICKS тиков без обращений к региону.
+ */
+public final class CollisionSnapshotPool {
+
+    private static final int REGION_SIZE = 32;
+
+    // Сколько тиков снепшот региона годится как основа для refresh (1 секунда)
+    private static final long REFRESH_WINDOW_TICKS = 20;
+
+    private static volatile CollisionSnapshotPool INSTANCE;
+
+    // Последний снепшот каждого региона (пишет только Main Thread)
+    private final Map<RegionKey, PooledSnapshot> regions = new ConcurrentHashMap<>();
+
+    // Счётчик endTick: по нему выбрасываются регионы без обращений (только Main Thread)
+    private long poolTick;
+
+    // === Статистика ===
+    private final AtomicLong created = new AtomicLong(0);
+    private final AtomicLong reused = new AtomicLong(0);
+    private final AtomicLong extended = new AtomicLong(0);
+    private final AtomicLong refreshed = new AtomicLong(0);
+
+    private CollisionSnapshotPool() {
+    }
+
+    public static CollisionSnapshotPool getInstance() {
+        if (INSTANCE == null) {
+            synchronized (CollisionSnapshotPool.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new CollisionSnapshotPool();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    // === Main Thread API ===
+
+    /**
+     * Получить снепшот, покрывающий область (Main Thread only).
+     * Освобождать не нужно: снепшот живёт, пока на него ссылаются касты
+     */
+    public CollisionSnapshot acquire(Level level, AABB area) {
+        long gameTime = level.getGameTime();
+        RegionKey key = new RegionKey(level.dimension(), SectionPos.asLong(
+            regionCoord(area.getCenter().x), regionCoord(area.getCenter().y), regionCoord(area.getCenter().z)));
+
+        PooledSnapshot pooled = regions.get(key);
+        CollisionSnapshot snapshot;
+        if (pooled != null && pooled.gameTime == gameTime && pooled.snapshot.covers(area)) {
+            snapshot = pooled.snapshot;
+            reused.incrementAndGet();
+        } else if (pooled != null && pooled.gameTime == gameTime) {
+            AABB union = pooled.area.minmax(area);
+            snapshot = new CollisionSnapshot(level, union);
+            regions.put(key, new PooledSnapshot(snapshot, union, gameTime, poolTick));
+            extended.incrementAndGet();
+        } else if (pooled != null && gameTime > pooled.gameTime && gameTime - pooled.gameTime <= REFRESH_WINDOW_TICKS
+                   && pooled.snapshot.covers(area)) {
+            // Снепшот прошлых тиков: переносим нетронутое, накладываем изменения блоков
+            snapshot = pooled.snapshot.refresh(level);
+            regions.put(key, new PooledSnapshot(snapshot, pooled.area, gameTime, poolTick));
+            refreshed.incrementAndGet();
+        } else {
+            snapshot = new CollisionSnapshot(level, area);
+            regions.put(key, new PooledSnapshot(snapshot, area, gameTime, poolTick));
+            created.incrementAndGet();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Конец тика: регионы без обращений дольше REFRESH_WINDOW_TICKS забываются (Main Thread)
+     */
+    public void endTick() {
+        poolTick++;
+        regions.values().removeIf(pooled -> poolTick - pooled.poolTick > REFRESH_WINDOW_TICKS);
+    }
+
+    /**
+     * Уровень выгружен
+     */
+    public void forgetDimension(ResourceKey<Level> dimension) {
+        regions.keySet().removeIf(key -> key.dimension().equals(dimension));
+    }
+
+    public PoolStats getStats() {
+        return new PoolStats(created.get(), reused.get(), extended.get(), refreshed.get(), regions.size());
+    }
+
+    private static int regionCoord(double coordinate) {
+        return Math.floorDiv((int) Math.floor(coordinate), REGION_SIZE);
+    }
+
+    private record RegionKey(ResourceKey<Level> dimension, long region) {}
+
+    private record PooledSnapshot(CollisionSnapshot snapshot, AABB area, long gameTime, long poolTick) {}
+
+    /**
+     * Статистика пула: created/reused/extended/refreshed - счётчики выдач за всё время
+     */
+    public record PoolStats(
+        long created,
+        long reused,
+        long extended,
+        long refreshed,
+        int pooledRegions
+    ) {}
+}
@@ -0,0 +1,125 @@
+package com.example.examplemod.core.spells.collision;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * Секция 16x16x16 в сжатом виде: плотный массив индексов в маленькую палитру типов блоков
+ *
+ * Индекс блока - (y << 8) | (z << 4) | x по локальным координатам, как в самом Minecraft.
+ * Палитра до 256 типов хранится байтами, больше - short'ами; однородной секции массив
+ * не нужен вовсе. Типы (CollisionSnapshot.BlockType) общие для всех секций, поэтому
+ * строка типа и форма коллизии не повторяются на каждый блок.
+ *
+ * Сама секция не знает о Minecraft: состояние блока (S) превращается в тип палитры (T)
+ * переданной функцией, поэтому распаковка и наложение изменений проверяются без игры.
+ */
+final class PackedSection<T> {
+
+    static final int SECTION_VOLUME = 16 * 16 * 16;
+
+    private final Object[] palette;
+    private final byte[] byteIndices;
+    private final short[] shortIndices;
+
+    private PackedSection(Object[] palette, byte[] byteIndices, short[] shortIndices) {
+        this.palette = palette;
+        this.byteIndices = byteIndices;
+        this.shortIndices = shortIndices;
+    }
+
+    static <T> PackedSection<T> uniform(T type) {
+        return new PackedSection<>(new Object[] { type }, null, null);
+    }
+
+    /**
+     * Распаковать неизменяемую копию секции (любой поток).
+     * Состояния сравниваются по ссылке (BlockState канонические), typeOf вызывается раз на состояние
+     * @param stateAt состояние блока по индексу
+     */
+    static <S, T> PackedSection<T> pack(IntFunction<S> stateAt, Function<S, T> typeOf) {
+        Map<S, Integer> paletteIds = new IdentityHashMap<>();
+        List<T> palette = new ArrayList<>();
+        short[] ids = new short[SECTION_VOLUME];
+
+        for (int index = 0; index < SECTION_VOLUME; index++) {
+            S state = stateAt.apply(index);
+            Integer id = paletteIds.get(state);
+            if (id == null) {
+                id = palette.size();
+                paletteIds.put(state, id);
+                palette.add(typeOf.apply(state));
+            }
+            ids[index] = id.shortValue();
+        }
+
+        return fromIds(palette.toArray(), ids);
+    }
+
+    /**
+     * Новая секция с наложенными изменениями блоков (эта остаётся неизменной)
+     */
+    <S> PackedSection<T> withChanges(List<Change<S>> changes, Function<S, T> typeOf) {
+        List<Object> types = new ArrayList<>(List.of(palette));
+        short[] ids = new short[SECTION_VOLUME];
+        for (int index = 0; index < SECTION_VOLUME; index++) {
+            ids[index] = (short) paletteId(index);
+        }
+
+        for (Change<S> change : changes) {
+            T type = typeOf.apply(change.state());
+            int id = types.indexOf(type);
+            if (id < 0) {
+                id = types.size();
+                types.add(type);
+            }
+            ids[change.index()] = (short) id;
+        }
+        return fromIds(types.toArray(), ids);
+    }
+
+    private static <T> PackedSection<T> fromIds(Object[] types, short[] ids) {
+        if (types.length == 1) {
+            return new PackedSection<>(types, null, null);
+        }
+        if (types.length <= 256) {
+            byte[] bytes = new byte[SECTION_VOLUME];
+            for (int index = 0; index < SECTION_VOLUME; index++) {
+                bytes[index] = (byte) ids[index];
+            }
+            return new PackedSection<>(types, bytes, null);
+        }
+        return new PackedSection<>(types, null, ids);
+    }
+
+    static int index(int localX, int localY, int localZ) {
+        return (localY << 8) | (localZ << 4) | localX;
+    }
+
+    /**
+     * Тип блока по локальным координатам 0-15
+     */
+    @SuppressWarnings("unchecked")
+    T get(int localX, int localY, int localZ) {
+        return (T) palette[paletteId(index(localX, localY, localZ))];
+    }
+
+    private int paletteId(int index) {
+        if (byteIndices != null) {
+            return byteIndices[index] & 0xFF;
+        }
+        if (shortIndices != null) {
+            return shortIndices[index];
+        }
+        return 0;
+    }
+
+    /**
+     * Изменение блока: локальный индекс в секции и новое состояние
+     */
+    record Change<S>(int index, S state) {}
+}
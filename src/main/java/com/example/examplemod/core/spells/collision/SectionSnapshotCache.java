@@ -0,0 +1,396 @@
+package com.example.examplemod.core.spells.collision;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.chunk.PalettedContainer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Кэш неизменяемых копий секций чанков (16x16x16) одного измерения
+ *
+ * Копия палитры секции (PalettedContainer.copy) снимается только в Main Thread, не чаще раза за тик и только
+ * если секция изменилась с прошлой копии. Снепшот коллизий при захвате лишь запоминает
+ * уже свежие копии (peekFresh); остальные секции он разрешает при первом обращении
+ * из потока вычислений (resolveAll): запросы всех недостающих секций ставятся в очередь
+ * одним пакетом, и Main Thread снимает их копии в конце тика (publishRequested).
+ * Секции снепшотов, к которым никто не обратился, не копируются вовсе.
+ *
+ * Изменения приходят из LevelChunk.setBlockState (LevelChunkMixin -> onBlockChanged)
+ * вместе с новым состоянием блока - это любая установка блока в загруженном чанке,
+ * с уведомлением соседей или без. Пока изменений немного, новая копия секции - это
+ * прежняя копия плюс список изменений (накладывается при распаковке); иначе, а также
+ * после MAX_PATCH_DEPTH патчей подряд, палитра копируется заново.
+ */
+public final class SectionSnapshotCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SectionSnapshotCache.class);
+
+    // Копия, которую не запрашивали столько тиков, выбрасывается (10 секунд)
+    private static final long EVICT_AFTER_TICKS = 200;
+
+    // Больше изменений в секции - дешевле скопировать её целиком
+    private static final int MAX_PATCH_CHANGES = 64;
+
+    // Длина цепочки патчей, не собранных в PackedSection, ограничена: каждый держит прежнюю копию
+    private static final int MAX_PATCH_DEPTH = 16;
+
+    // Сколько поток вычислений ждёт копию от Main Thread (тик + запас на лаг сервера)
+    private static final long RESOLVE_TIMEOUT_MS = 250;
+
+    /**
+     * Секция недоступна: чанк не загружен или Main Thread не успел снять копию
+     */
+    static final SectionCopy UNAVAILABLE = SectionCopy.empty(Long.MIN_VALUE);
+
+    private static final Map<ResourceKey<Level>, SectionSnapshotCache> CACHES = new ConcurrentHashMap<>();
+
+    private final ResourceKey<Level> dimension;
+    private final Map<Long, SectionCopy> copies = new ConcurrentHashMap<>();
+    private final Map<Long, SectionChanges> changes = new ConcurrentHashMap<>();
+    private final Map<Long, CompletableFuture<SectionCopy>> requests = new ConcurrentHashMap<>();
+    private long lastEvictionTick;
+
+    // Main Thread этого измерения - ему ждать самого себя нельзя
+    private volatile Thread ownerThread;
+    private volatile Level level;
+
+    private SectionSnapshotCache(ResourceKey<Level> dimension) {
+        this.dimension = dimension;
+    }
+
+    // === Реестр по измерениям ===
+
+    public static SectionSnapshotCache forLevel(Level level) {
+        return CACHES.computeIfAbsent(level.dimension(), SectionSnapshotCache::new);
+    }
+
+    /**
+     * Блок изменился (Main Thread, из LevelChunk.setBlockState)
+     */
+    public static void onBlockChanged(Level level, BlockPos pos, BlockState newState) {
+        SectionSnapshotCache cache = CACHES.get(level.dimension());
+        if (cache != null) {
+            cache.recordChange(SectionPos.asLong(pos),
+                PackedSection.index(pos.getX() & 15, pos.getY() & 15, pos.getZ() & 15), newState);
+        }
+    }
+
+    /**
+     * Уровень выгружен - выбросить все копии его секций
+     */
+    public static void forgetDimension(ResourceKey<Level> dimension) {
+        SectionSnapshotCache removed = CACHES.remove(dimension);
+        if (removed != null) {
+            removed.requests.values().forEach(request -> request.complete(UNAVAILABLE));
+            removed.requests.clear();
+            removed.level = null;
+            LOGGER.debug("Dropped {} section copies for unloaded level {}",
+                removed.copies.size(), dimension.location());
+        }
+    }
+
+    /**
+     * Снять копии секций, запрошенных потоками вычислений за этот тик (Main Thread, конец тика)
+     */
+    public static void publishRequested(Level level) {
+        SectionSnapshotCache cache = CACHES.get(level.dimension());
+        if (cache != null) {
+            cache.publish(level);
+        }
+    }
+
+    // === Копии секций ===
+
+    /**
+     * Свежая копия секции, если она уже есть (Main Thread only, ничего не копирует)
+     * @return null - секцию разрешит resolve при первом обращении
+     */
+    SectionCopy peekFresh(Level level, long key) {
+        bind(level);
+        long gameTime = level.getGameTime();
+        evictUnused(gameTime);
+
+        SectionCopy existing = copies.get(key);
+        if (existing != null && isFresh(existing, key, gameTime)) {
+            existing.lastUsedTick = gameTime;
+            return existing;
+        }
+        return null;
+    }
+
+    /**
+     * То же, что peekFresh, но секцию с немногими изменениями сразу обновляет
+     * копией-патч: это O(число изменений), распаковка всё равно ленивая (Main Thread only)
+     */
+    SectionCopy peekOrPatch(Level level, long key) {
+        SectionCopy fresh = peekFresh(level, key);
+        if (fresh != null) {
+            return fresh;
+        }
+        SectionCopy existing = copies.get(key);
+        SectionChanges pending = changes.get(key);
+        if (existing != null && isPatchable(existing, pending)) {
+            return copySection(level, key);
+        }
+        return null;
+    }
+
+    /**
+     * Разрешить секции не старше тика захвата (любой поток).
+     * Недостающие копии запрашиваются у Main Thread одним пакетом, и поток вычислений
+     * ждёт их один раз - все они снимаются в конце одного и того же тика
+     * @return копии в порядке keys; UNAVAILABLE для секций, копию которых получить не удалось
+     */
+    SectionCopy[] resolveAll(long[] keys, long capturedTick) {
+        SectionCopy[] result = new SectionCopy[keys.length];
+        CompletableFuture<?>[] pending = new CompletableFuture<?>[keys.length];
+        int pendingCount = 0;
+
+        Level boundLevel = level;
+        boolean onOwnerThread = Thread.currentThread() == ownerThread;
+        for (int i = 0; i < keys.length; i++) {
+            SectionCopy copy = copies.get(keys[i]);
+            if (copy != null && copy.copiedTick >= capturedTick) {
+                copy.lastUsedTick = Math.max(copy.lastUsedTick, capturedTick);
+                result[i] = copy;
+            } else if (boundLevel == null) {
+                result[i] = UNAVAILABLE; // Уровень уже выгружен
+            } else if (onOwnerThread) {
+                result[i] = copySection(boundLevel, keys[i]); // Сами и есть Main Thread
+            } else {
+                pending[i] = requests.computeIfAbsent(keys[i], k -> new CompletableFuture<>());
+                pendingCount++;
+            }
+        }
+        if (pendingCount == 0) {
+            return result;
+        }
+
+        CompletableFuture<?>[] batch = new CompletableFuture<?>[pendingCount];
+        int next = 0;
+        for (CompletableFuture<?> request : pending) {
+            if (request != null) {
+                batch[next++] = request;
+            }
+        }
+        try {
+            CompletableFuture.allOf(batch).get(RESOLVE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            LOGGER.debug("{} section copies were not published within {} ms", pendingCount, RESOLVE_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // Ниже такие секции станут UNAVAILABLE
+        }
+
+        for (int i = 0; i < keys.length; i++) {
+            if (pending[i] != null) {
+                @SuppressWarnings("unchecked")
+                CompletableFuture<SectionCopy> request = (CompletableFuture<SectionCopy>) pending[i];
+                result[i] = request.isDone() && !request.isCompletedExceptionally() ? request.join() : UNAVAILABLE;
+            }
+        }
+        return result;
+    }
+
+    private void publish(Level level) {
+        bind(level);
+        if (requests.isEmpty()) {
+            return;
+        }
+        for (Long key : requests.keySet()) {
+            CompletableFuture<SectionCopy> request = requests.remove(key);
+            if (request != null) {
+                request.complete(copySection(level, key));
+            }
+        }
+    }
+
+    private void bind(Level level) {
+        this.level = level;
+        this.ownerThread = Thread.currentThread();
+    }
+
+    /**
+     * Снять копию секции, если нет свежей (Main Thread only)
+     */
+    private SectionCopy copySection(Level level, long key) {
+        long gameTime = level.getGameTime();
+        SectionCopy existing = copies.get(key);
+        if (existing != null && isFresh(existing, key, gameTime)) {
+            existing.lastUsedTick = gameTime;
+            return existing;
+        }
+
+        SectionChanges pending = changes.get(key);
+        if (existing != null && isPatchable(existing, pending)) {
+            return cache(key, SectionCopy.patched(existing, List.copyOf(pending.changes), gameTime));
+        }
+
+        int sectionX = SectionPos.x(key);
+        int sectionY = SectionPos.y(key);
+        int sectionZ = SectionPos.z(key);
+
+        int sectionIndex = level.getSectionIndexFromSectionY(sectionY);
+        if (sectionIndex < 0 || sectionIndex >= level.getSectionsCount()) {
+            return cache(key, SectionCopy.empty(gameTime));
+        }
+
+        // getChunkNow не загружает и не генерирует чанк
+        LevelChunk chunk = level.getChunkSource().getChunkNow(sectionX, sectionZ);
+        if (chunk == null) {
+            return UNAVAILABLE;
+        }
+
+        LevelChunkSection section = chunk.getSection(sectionIndex);
+        SectionCopy copy = section.hasOnlyAir()
+            ? SectionCopy.empty(gameTime)
+            : SectionCopy.of(section.getStates().copy(), gameTime);
+        return cache(key, copy);
+    }
+
+    public int getCopyCount() {
+        return copies.size();
+    }
+
+    private boolean isFresh(SectionCopy copy, long key, long gameTime) {
+        if (copy.copiedTick == gameTime) {
+            return true; // Не чаще раза за тик, даже если секция уже снова изменилась
+        }
+        // Каждое изменение блока записано в changes, поэтому копия без изменений актуальна
+        return !changes.containsKey(key);
+    }
+
+    private static boolean isPatchable(SectionCopy copy, SectionChanges pending) {
+        return pending != null && !pending.overflow && copy.patchDepth < MAX_PATCH_DEPTH;
+    }
+
+    private SectionCopy cache(long key, SectionCopy copy) {
+        copies.put(key, copy);
+        changes.remove(key);
+        return copy;
+    }
+
+    private void recordChange(long key, int index, BlockState newState) {
+        // Секции без копии отслеживать незачем - их всё равно скопируют при первом запросе
+        if (!copies.containsKey(key)) {
+            return;
+        }
+        SectionChanges pending = changes.computeIfAbsent(key, k -> new SectionChanges());
+        if (!pending.overflow) {
+            pending.changes.add(new PackedSection.Change<>(index, newState));
+            if (pending.changes.size() > MAX_PATCH_CHANGES) {
+                pending.overflow = true;
+                pending.changes.clear();
+            }
+        }
+    }
+
+    private void evictUnused(long gameTime) {
+        if (gameTime - lastEvictionTick < EVICT_AFTER_TICKS) {
+            return;
+        }
+        lastEvictionTick = gameTime;
+        copies.entrySet().removeIf(entry -> {
+            boolean unused = gameTime - entry.getValue().lastUsedTick > EVICT_AFTER_TICKS;
+            if (unused) {
+                changes.remove(entry.getKey());
+            }
+            return unused;
+        });
+    }
+
+    /**
+     * Изменения секции с момента её последней копии (пишет только Main Thread)
+     */
+    private static final class SectionChanges {
+        final List<PackedSection.Change<BlockState>> changes = new ArrayList<>();
+        boolean overflow;
+    }
+
+    /**
+     * Неизменяемая копия секции. Копия палитры Minecraft снимается в Main Thread, а в
+     * PackedSection распаковывается при первом чтении уже в потоке вычислений. Копия-патч
+     * хранит прежнюю копию и изменения и тоже собирается при первом чтении
+     */
+    static final class SectionCopy {
+        private static final PackedSection<CollisionSnapshot.BlockType> AIR =
+            PackedSection.uniform(CollisionSnapshot.BlockType.AIR);
+
+        private volatile PalettedContainer<BlockState> source;
+        private volatile SectionCopy base;
+        private volatile List<PackedSection.Change<BlockState>> patch;
+        private volatile PackedSection<CollisionSnapshot.BlockType> packed;
+        final long copiedTick;
+        final int patchDepth;
+        volatile long lastUsedTick;
+
+        private SectionCopy(PalettedContainer<BlockState> source, SectionCopy base,
+                            List<PackedSection.Change<BlockState>> patch,
+                            PackedSection<CollisionSnapshot.BlockType> packed, long copiedTick, int patchDepth) {
+            this.source = source;
+            this.base = base;
+            this.patch = patch;
+            this.packed = packed;
+            this.copiedTick = copiedTick;
+            this.patchDepth = patchDepth;
+            this.lastUsedTick = copiedTick;
+        }
+
+        static SectionCopy of(PalettedContainer<BlockState> states, long copiedTick) {
+            return new SectionCopy(states, null, null, null, copiedTick, 0);
+        }
+
+        static SectionCopy empty(long copiedTick) {
+            return new SectionCopy(null, null, null, AIR, copiedTick, 0);
+        }
+
+        static SectionCopy patched(SectionCopy base, List<PackedSection.Change<BlockState>> patch, long copiedTick) {
+            return new SectionCopy(null, base, patch, null, copiedTick, base.patchDepth + 1);
+        }
+
+        /**
+         * Тип блока по локальным координатам 0-15 (thread-safe: копию никто не меняет)
+         */
+        CollisionSnapshot.BlockType get(int localX, int localY, int localZ) {
+            return packed().get(localX, localY, localZ);
+        }
+
+        private PackedSection<CollisionSnapshot.BlockType> packed() {
+            PackedSection<CollisionSnapshot.BlockType> result = packed;
+            if (result == null) {
+                synchronized (this) {
+                    result = packed;
+                    if (result == null) {
+                        PalettedContainer<BlockState> states = source;
+                        result = states != null
+                            ? PackedSection.pack(index -> states.get(index & 15, index >> 8, (index >> 4) & 15),
+                                                 CollisionSnapshot.BlockType::of)
+                            : base.packed().withChanges(patch, CollisionSnapshot.BlockType::of);
+                        packed = result;
+                        // Исходные данные больше не нужны (и не держат цепочку прежних копий)
+                        source = null;
+                        base = null;
+                        patch = null;
+                    }
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.examplemod.core.threads;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Ограниченная lock-free очередь на кольцевом буфере для MainThreadSynchronizer
+ *
+ * Алгоритм Вьюкова (bounded MPMC): у каждой ячейки есть номер последовательности,
+ * производители резервируют слот одним CAS по enqueuePos, потребитель - по dequeuePos.
+ *
+ * Используется как MPSC: много производителей (ForkJoin computation pool, collision/aggregation
+ * executors) и один потребитель (Main Thread). Сторона потребителя тоже построена на CAS,
+ * поэтому производитель может безопасно выкинуть самую старую задачу (политика DROP_OLDEST_LOW).
+ *
+ * В отличие от ConcurrentLinkedQueue:
+ * - Нет аллокации узла на каждый offer (массив выделяется один раз)
+ * - size() - O(1) приближённая оценка (разница счётчиков), а не обход списка
+ * - Ёмкость ограничена, переполнение обрабатывается политикой вызывающего кода
+ */
+final class BoundedTaskQueue<E> {
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<E> buffer;
+    private final AtomicLongArray sequences;
+
+    // Позиции производителей и потребителя (монотонно растут)
+    private final AtomicLong enqueuePos = new AtomicLong(0);
+    private final AtomicLong dequeuePos = new AtomicLong(0);
+
+    /**
+     * @param requestedCapacity Желаемая ёмкость, округляется вверх до степени двойки
+     */
+    BoundedTaskQueue(int requestedCapacity) {
+        if (requestedCapacity < 2) {
+            throw new IllegalArgumentException("Capacity must be at least 2: " + requestedCapacity);
+        }
+
+        this.capacity = Integer.highestOneBit(requestedCapacity - 1) << 1;
+        this.mask = capacity - 1;
+        this.buffer = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Добавить элемент (thread-safe для любого числа производителей)
+     * @return false если очередь заполнена
+     */
+    boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException("element");
+        }
+
+        long pos = enqueuePos.get();
+        int index;
+
+        while (true) {
+            index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+
+            if (diff == 0) {
+                // Слот свободен - пытаемся его зарезервировать
+                if (enqueuePos.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = enqueuePos.get();
+            } else if (diff < 0) {
+                // Слот ещё не освобождён потребителем - очередь заполнена
+                return false;
+            } else {
+                // Другой производитель нас опередил
+                pos = enqueuePos.get();
+            }
+        }
+
+        buffer.lazySet(index, element);
+        sequences.set(index, pos + 1); // Публикуем элемент для потребителя
+        return true;
+    }
+
+    /**
+     * Извлечь самый старый элемент
+     * @return null если очередь пуста
+     */
+    E poll() {
+        long pos = dequeuePos.get();
+        int index;
+
+        while (true) {
+            index = (int) (pos & mask);
+            long diff = sequences.get(index) - (pos + 1);
+
+            if (diff == 0) {
+                if (dequeuePos.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = dequeuePos.get();
+            } else if (diff < 0) {
+                // Элемент ещё не опубликован - очередь пуста
+                return null;
+            } else {
+                pos = dequeuePos.get();
+            }
+        }
+
+        E element = buffer.get(index);
+        buffer.lazySet(index, null);
+        sequences.set(index, pos + capacity); // Освобождаем слот для следующего круга
+        return element;
+    }
+
+    /**
+     * Посмотреть самый старый элемент без извлечения (только для потребителя)
+     */
+    E peek() {
+        long pos = dequeuePos.get();
+        int index = (int) (pos & mask);
+        if (sequences.get(index) - (pos + 1) != 0) {
+            return null;
+        }
+        return buffer.get(index);
+    }
+
+    /**
+     * Обойти ожидающие элементы без извлечения (для фонового потока)
+     * Обход не атомарен: элементы, извлечённые во время обхода, пропускаются,
+     * поэтому action должен сам проверять, актуален ли элемент
+     */
+    void forEachPending(Consumer<? super E> action) {
+        long head = dequeuePos.get();
+        long tail = Math.min(enqueuePos.get(), head + capacity);
+
+        for (long pos = head; pos < tail; pos++) {
+            int index = (int) (pos & mask);
+            if (sequences.get(index) != pos + 1) {
+                continue; // Ещё не опубликован или уже извлечён
+            }
+            E element = buffer.get(index);
+            if (element != null) {
+                action.accept(element);
+            }
+        }
+    }
+
+    /**
+     * Приближённый размер очереди за O(1)
+     * При конкурентных вставках может отставать на число производителей в процессе offer
+     */
+    int size() {
+        // Читаем dequeuePos первым, чтобы разница не стала отрицательной
+        long head = dequeuePos.get();
+        long tail = enqueuePos.get();
+        long size = tail - head;
+        return (int) Math.max(0, Math.min(capacity, size));
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Очистить очередь
+     * @return количество удалённых элементов
+     */
+    int clear() {
+        int cleared = 0;
+        while (poll() != null) {
+            cleared++;
+        }
+        return cleared;
+    }
+}
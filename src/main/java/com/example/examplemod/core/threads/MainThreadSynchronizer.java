@@ -3,12 +3,19 @@ package com.example.examplemod.core.threads;
 import net.minecraft.server.level.ServerLevel;
 import net.neoforged.bus.api.SubscribeEvent;
 import net.neoforged.neoforge.event.tick.ServerTickEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Consumer;
 
 /**
@@ -38,23 +45,63 @@ import java.util.function.Consumer;
  *    - 3 будут NORMAL priority (33.3%)
  *    - 1 будет LOW priority (11.1%)
  * 
+ * 4. Бюджет времени на тик (вместо фиксированного лимита итераций):
+ *    - Цикл WRR работает, пока не исчерпан бюджет tickBudgetNanos: если кредиты раунда
+ *      кончились раньше бюджета, а задачи ещё есть, начинается новый раунд с полными весами
+ *    - HIGH гарантированно получает highPriorityReserveNanos даже если
+ *      бюджет уже съеден NORMAL/LOW задачами
+ *    - Неизрасходованные кредиты очередей, в которых остались задачи,
+ *      переносятся на следующий тик (с ограничением MAX_CREDIT_CARRYOVER)
+ * 
+ * 5. Иерархический WRR (класс приоритета -> модуль):
+ *    - Внутри каждого класса приоритета у каждого модуля своя очередь
+ *    - Очереди модулей обслуживаются пропорционально весам модуля (SchedulerModule),
+ *      поэтому один модуль не может монополизировать NORMAL полосу
+ * 
+ * 6. Выборочный замер времени:
+ *    - Часы (System.nanoTime) читаются раз в TIMING_SAMPLE_INTERVAL задач, а перед каждой
+ *      задачей - вблизи исчерпания бюджета или когда оценка стоимости задачи такова, что
+ *      окно из TIMING_SAMPLE_INTERVAL задач не помещается в остаток бюджета
+ *    - Медленные задачи не логируются из Main Thread: они агрегируются в SlowTaskReport,
+ *      а сводку раз в SLOW_TASK_REPORT_INTERVAL_NANOS выводит фоновый поток
+ * 
  * Архитектура:
  * Worker Threads -> [MainThreadSynchronizer] -> Main Thread (Game Thread)
  */
 public class MainThreadSynchronizer {
     
+    private static final Logger LOGGER = LoggerFactory.getLogger(MainThreadSynchronizer.class);
+    
     private static MainThreadSynchronizer INSTANCE;
     
     // === THREAD-SAFE ОЧЕРЕДИ ===
+    // Полоса на каждый приоритет, внутри - ограниченные lock-free кольцевые буферы по модулям
     
     // Высокоприоритетные задачи (ресурсы, критические операции)
-    private final ConcurrentLinkedQueue<MainThreadTask> highPriorityTasks = new ConcurrentLinkedQueue<>();
+    private final PriorityLane<MainThreadTask> highPriorityTasks = new PriorityLane<>(TaskPriority.HIGH, HIGH_PRIORITY_QUEUE_CAPACITY);
     
     // Обычные задачи (применение заклинаний, визуальные эффекты)
-    private final ConcurrentLinkedQueue<MainThreadTask> normalPriorityTasks = new ConcurrentLinkedQueue<>();
+    private final PriorityLane<MainThreadTask> normalPriorityTasks = new PriorityLane<>(TaskPriority.NORMAL, NORMAL_PRIORITY_QUEUE_CAPACITY);
     
     // Низкоприоритетные задачи (статистика, очистка)
-    private final ConcurrentLinkedQueue<MainThreadTask> lowPriorityTasks = new ConcurrentLinkedQueue<>();
+    private final PriorityLane<MainThreadTask> lowPriorityTasks = new PriorityLane<>(TaskPriority.LOW, LOW_PRIORITY_QUEUE_CAPACITY);
+    
+    // === МОДУЛИ (второй уровень WRR) ===
+    
+    // Интернированные дескрипторы модулей: одно имя - один объект
+    private final ConcurrentHashMap<String, SchedulerModule> modules = new ConcurrentHashMap<>();
+    
+    // Модуль для задач, поставленных без указания модуля
+    private final SchedulerModule defaultModule = getOrCreateModule(DEFAULT_MODULE_NAME);
+    
+    // Что делать, когда очередь заполнена
+    private volatile OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST_LOW;
+    
+    // Main Thread (потребитель) - его нельзя блокировать политикой BLOCK
+    private volatile Thread consumerThread;
+    
+    // Последняя поставленная задача для каждого ключа слияния (coalescing)
+    private final ConcurrentHashMap<String, MainThreadTask> latestByCoalescingKey = new ConcurrentHashMap<>();
     
     // === СИНХРОНИЗИРУЮЩИЙ ПОТОК ===
     
@@ -83,11 +130,82 @@ public class MainThreadSynchronizer {
     // Счётчик циклов для отладки
     private volatile int roundRobinCycle = 0;
     
+    // === БЮДЖЕТ ВРЕМЕНИ НА ТИК ===
+    
+    // Сколько времени Main Thread может потратить на задачи за один тик (из 50ms)
+    private volatile long tickBudgetNanos = DEFAULT_TICK_BUDGET_NANOS;
+    
+    // Гарантированный минимум для HIGH задач, даже если общий бюджет исчерпан
+    private volatile long highPriorityReserveNanos = DEFAULT_HIGH_PRIORITY_RESERVE_NANOS;
+    
+    // Время, потраченное HIGH задачами в текущем тике
+    private long highPrioritySpentNanos = 0;
+    
+    // === ВЫБОРОЧНЫЕ ЧАСЫ ТИКА (только Main Thread) ===
+    
+    // Последнее прочитанное значение System.nanoTime()
+    private long clockNanos = 0;
+    
+    // Задачи, выполненные после последнего чтения часов (окно без индивидуального замера)
+    private final MainThreadTask[] clockWindow = new MainThreadTask[TIMING_SAMPLE_INTERVAL];
+    private int clockWindowSize = 0;
+    private int highTasksInClockWindow = 0;
+    
+    // Оценка стоимости одной задачи по закрытым окнам: растёт сразу, снижается плавно
+    private long taskCostEstimateNanos = 0;
+    
+    // Сводка медленных задач (выводится фоновым потоком)
+    private final SlowTaskReport slowTaskReport = new SlowTaskReport(SLOW_TASK_THRESHOLD_NANOS, SLOW_TASK_REPORT_INTERVAL_NANOS);
+    
+    // Статистика бюджета
+    private volatile long lastTickExecutionNanos = 0;
+    private final AtomicInteger budgetExhaustedTicks = new AtomicInteger(0);
+    
+    // Статистика переполнения очередей
+    private final AtomicLong rejectedTasks = new AtomicLong(0);
+    private final AtomicLong droppedTasks = new AtomicLong(0);
+    
+    // Последнее предупреждение о переполнении и потери на тот момент (только фоновый поток)
+    private long lastOverflowWarningNanos = 0;
+    private long lostTasksAtLastWarning = 0;
+    
+    // Статистика оптимизации очередей
+    private final AtomicLong coalescedTasks = new AtomicLong(0);
+    private final AtomicLong expiredTasks = new AtomicLong(0);
+    
     // === КОНФИГУРАЦИЯ ===
     
-    private static final int MAX_HIGH_PRIORITY_TASKS_PER_TICK = 5;
-    private static final int MAX_NORMAL_TASKS_PER_TICK = 10;
-    private static final int MAX_LOW_PRIORITY_TASKS_PER_TICK = 3;
+    // Бюджет по умолчанию: 10ms из 50ms тика, из них 2ms гарантированы HIGH
+    public static final long DEFAULT_TICK_BUDGET_NANOS = 10_000_000L;
+    public static final long DEFAULT_HIGH_PRIORITY_RESERVE_NANOS = 2_000_000L;
+    
+    // Максимум кредитов, которые очередь может накопить (в единицах своего веса)
+    private static final int MAX_CREDIT_CARRYOVER = 3;
+    
+    // Имя модуля по умолчанию
+    public static final String DEFAULT_MODULE_NAME = "Unknown";
+    
+    // Ёмкости очередей одного модуля (округляются до степени двойки)
+    private static final int HIGH_PRIORITY_QUEUE_CAPACITY = 1024;
+    private static final int NORMAL_PRIORITY_QUEUE_CAPACITY = 4096;
+    private static final int LOW_PRIORITY_QUEUE_CAPACITY = 2048;
+    
+    // Предупреждение о переполнении очередей - не чаще раза в 10 секунд
+    private static final int OVERFLOW_WARNING_PENDING_TASKS = 1000;
+    private static final long OVERFLOW_WARNING_INTERVAL_NANOS = 10_000_000_000L;
+    
+    // Сколько производитель максимум ждёт места в очереди при политике BLOCK
+    private static final long MAX_BLOCK_NANOS = 50_000_000L;
+    
+    // Часы читаются не реже чем раз в столько задач
+    private static final int TIMING_SAMPLE_INTERVAL = 8;
+    
+    // Ближе к дедлайну часы читаются перед каждой задачей, а задачи замеряются индивидуально
+    private static final long NEAR_EXHAUSTION_NANOS = 2_000_000L;
+    
+    // Порог медленной задачи и интервал между сводками в логе
+    private static final long SLOW_TASK_THRESHOLD_NANOS = 1_000_000L;
+    private static final long SLOW_TASK_REPORT_INTERVAL_NANOS = 10_000_000_000L;
     
     // Anti-starvation параметры
     private static final int MAX_TICKS_WITHOUT_LOW_PRIORITY = 20;
@@ -127,39 +245,246 @@ public class MainThreadSynchronizer {
     
     /**
      * Запланировать высокоприоритетную задачу (ресурсы, критические операции)
+     * @return false если задача отклонена из-за переполнения очереди
      */
-    public void scheduleHighPriority(String taskName, Runnable task) {
-        MainThreadTask wrappedTask = new MainThreadTask(taskName, task, TaskPriority.HIGH);
-        highPriorityTasks.offer(wrappedTask);
-        
-        System.out.println("Scheduled HIGH priority task: " + taskName);
+    public boolean scheduleHighPriority(String taskName, Runnable task) {
+        return schedule(defaultModule, taskName, task, TaskPriority.HIGH, null, 0L);
     }
     
     /**
      * Запланировать обычную задачу (применение заклинаний)
+     * @return false если задача отклонена из-за переполнения очереди
      */
-    public void scheduleNormal(String taskName, Runnable task) {
-        MainThreadTask wrappedTask = new MainThreadTask(taskName, task, TaskPriority.NORMAL);
-        normalPriorityTasks.offer(wrappedTask);
+    public boolean scheduleNormal(String taskName, Runnable task) {
+        return schedule(defaultModule, taskName, task, TaskPriority.NORMAL, null, 0L);
     }
     
     /**
      * Запланировать низкоприоритетную задачу (статистика, очистка)
+     * @return false если задача отклонена из-за переполнения очереди
      */
-    public void scheduleLowPriority(String taskName, Runnable task) {
-        MainThreadTask wrappedTask = new MainThreadTask(taskName, task, TaskPriority.LOW);
-        lowPriorityTasks.offer(wrappedTask);
+    public boolean scheduleLowPriority(String taskName, Runnable task) {
+        return schedule(defaultModule, taskName, task, TaskPriority.LOW, null, 0L);
     }
     
     /**
      * Запланировать задачу с автоопределением приоритета
+     * @return false если задача отклонена из-за переполнения очереди
+     */
+    public boolean schedule(String taskName, Runnable task, TaskPriority priority) {
+        return schedule(defaultModule, taskName, task, priority, null, 0L);
+    }
+    
+    /**
+     * Запланировать задачу с ключом слияния и/или сроком актуальности
+     * 
+     * @param coalescingKey Ключ слияния (например "SyncSpellEntity_<id>"): из задач с одинаковым ключом
+     *                      выполнится только последняя поставленная. null - без слияния
+     * @param maxAgeMs Через сколько мс задача устаревает и отбрасывается без выполнения.
+     *                 0 или меньше - бессрочно. HIGH задачи никогда не устаревают
+     * @return false если задача отклонена из-за переполнения очереди
+     */
+    public boolean schedule(String taskName, Runnable task, TaskPriority priority, String coalescingKey, long maxAgeMs) {
+        return schedule(defaultModule, taskName, task, priority, coalescingKey, maxAgeMs);
+    }
+    
+    /**
+     * Запланировать задачу от имени модуля
+     * Внутри класса приоритета задачи модулей обрабатываются пропорционально весам модулей
+     * 
+     * @param module Дескриптор модуля из {@link #getOrCreateModule(String)}
+     * @return false если задача отклонена из-за переполнения очереди модуля
+     */
+    public boolean schedule(SchedulerModule module, String taskName, Runnable task, TaskPriority priority,
+                            String coalescingKey, long maxAgeMs) {
+        return schedule(module, taskName, task, priority, coalescingKey, maxAgeMs, null);
+    }
+    
+    /**
+     * Запланировать задачу от имени модуля с обработчиком отказа
+     * 
+     * @param onDiscard Вызывается ровно один раз, если задача так и не будет выполнена
+     *                  (отклонена, вытеснена из очереди и т.д.), в потоке, который её отбросил.
+     *                  null - без уведомления
+     * @return false если задача отклонена из-за переполнения очереди модуля (onDiscard уже вызван)
+     */
+    public boolean schedule(SchedulerModule module, String taskName, Runnable task, TaskPriority priority,
+                            String coalescingKey, long maxAgeMs, Consumer<DiscardReason> onDiscard) {
+        long deadlineNanos = (maxAgeMs > 0 && priority != TaskPriority.HIGH) 
+            ? System.nanoTime() + maxAgeMs * 1_000_000L : 0L;
+        
+        // Задачи снятого с регистрации модуля уходят в модуль по умолчанию
+        PriorityLane<MainThreadTask> lane = getLane(priority);
+        SchedulerModule target = module;
+        BoundedTaskQueue<MainThreadTask> queue = module.isRetired() ? null : lane.queueFor(module);
+        if (queue == null) {
+            target = defaultModule;
+            queue = lane.queueFor(defaultModule);
+        }
+        MainThreadTask wrappedTask = new MainThreadTask(taskName, task, priority, target, coalescingKey, deadlineNanos, onDiscard);
+        
+        boolean accepted = enqueue(queue, wrappedTask);
+        if (accepted && target.isRetired()) {
+            // Модуль сняли между выбором очереди и вставкой: его очередь могла быть уже переложена
+            lane.transfer(queue, defaultModule, this::dropOrphanedTask);
+        }
+        return accepted;
+    }
+    
+    private PriorityLane<MainThreadTask> getLane(TaskPriority priority) {
+        return switch (priority) {
+            case HIGH -> highPriorityTasks;
+            case NORMAL -> normalPriorityTasks;
+            case LOW -> lowPriorityTasks;
+        };
+    }
+    
+    // === МОДУЛИ ===
+    
+    /**
+     * Получить интернированный дескриптор модуля (создаётся с весами 1:1:1 при первом обращении)
+     */
+    public SchedulerModule getOrCreateModule(String moduleName) {
+        return modules.computeIfAbsent(moduleName, SchedulerModule::new);
+    }
+    
+    /**
+     * Дескриптор зарегистрированного модуля или модуль по умолчанию, если такого нет.
+     * В отличие от getOrCreateModule не создаёт модуль (и его очереди) на каждое новое имя
+     */
+    public SchedulerModule getModuleOrDefault(String moduleName) {
+        return modules.getOrDefault(moduleName, defaultModule);
+    }
+    
+    /**
+     * Снять модуль с регистрации: его очереди убираются из всех полос, ожидающие задачи
+     * перекладываются в очереди модуля по умолчанию и будут выполнены как обычно
+     */
+    public void unregisterModule(SchedulerModule module) {
+        if (module == defaultModule) {
+            throw new IllegalArgumentException("Модуль по умолчанию нельзя снять с регистрации");
+        }
+        if (!modules.remove(module.getName(), module)) {
+            return;
+        }
+        
+        module.retire();
+        for (TaskPriority priority : TaskPriority.values()) {
+            getLane(priority).removeModule(module, defaultModule, this::dropOrphanedTask);
+        }
+    }
+    
+    /**
+     * Задача снятого модуля не поместилась в очередь модуля по умолчанию
+     */
+    private void dropOrphanedTask(MainThreadTask task) {
+        if (task.tryTransition(MainThreadTask.STATE_DROPPED)) {
+            droppedTasks.incrementAndGet();
+            task.discard(DiscardReason.DROPPED);
+        }
+    }
+    
+    /**
+     * Зарегистрировать модуль с весами внутри каждого класса приоритета
+     */
+    public SchedulerModule registerModule(String moduleName, int highWeight, int normalWeight, int lowWeight) {
+        SchedulerModule module = getOrCreateModule(moduleName);
+        module.setWeights(highWeight, normalWeight, lowWeight);
+        return module;
+    }
+    
+    /**
+     * Количество ожидающих задач модуля во всех полосах
+     */
+    public int getPendingTaskCount(SchedulerModule module) {
+        return highPriorityTasks.pendingFor(module) + normalPriorityTasks.pendingFor(module) + lowPriorityTasks.pendingFor(module);
+    }
+    
+    /**
+     * Поставить задачу в очередь и зарегистрировать её ключ слияния
+     */
+    private boolean enqueue(BoundedTaskQueue<MainThreadTask> queue, MainThreadTask task) {
+        if (!offerWithOverflowPolicy(queue, task)) {
+            task.discard(DiscardReason.REJECTED);
+            return false;
+        }
+        
+        if (task.getCoalescingKey() != null) {
+            registerCoalescedTask(task);
+        }
+        return true;
+    }
+    
+    /**
+     * Запомнить задачу как последнюю для своего ключа; предыдущая версия помечается вытесненной
+     * и будет пропущена при извлечении из очереди
+     */
+    private void registerCoalescedTask(MainThreadTask task) {
+        MainThreadTask[] superseded = new MainThreadTask[1];
+        latestByCoalescingKey.compute(task.getCoalescingKey(), (key, previous) -> {
+            if (previous == null || previous.getSequence() < task.getSequence()) {
+                if (previous != null && previous.tryTransition(MainThreadTask.STATE_SUPERSEDED)) {
+                    coalescedTasks.incrementAndGet();
+                    superseded[0] = previous;
+                }
+                return task;
+            }
+            
+            // Конкурентный производитель успел поставить более новую версию
+            if (task.tryTransition(MainThreadTask.STATE_SUPERSEDED)) {
+                coalescedTasks.incrementAndGet();
+                superseded[0] = task;
+            }
+            return previous;
+        });
+        
+        // Обработчик вызывается вне compute: он чужой код и не должен держать блокировку ключа
+        if (superseded[0] != null) {
+            superseded[0].discard(DiscardReason.SUPERSEDED);
+        }
+    }
+    
+    /**
+     * Поставить задачу в очередь с учётом политики переполнения
      */
-    public void schedule(String taskName, Runnable task, TaskPriority priority) {
-        switch (priority) {
-            case HIGH -> scheduleHighPriority(taskName, task);
-            case NORMAL -> scheduleNormal(taskName, task);
-            case LOW -> scheduleLowPriority(taskName, task);
+    private boolean offerWithOverflowPolicy(BoundedTaskQueue<MainThreadTask> queue, MainThreadTask task) {
+        if (queue.offer(task)) {
+            return true;
         }
+        
+        switch (overflowPolicy) {
+            case DROP_OLDEST_LOW -> {
+                // Жертвуем самыми старыми LOW задачами; HIGH/NORMAL ничего не вытесняют
+                if (task.getPriority() == TaskPriority.LOW) {
+                    while (!queue.offer(task)) {
+                        MainThreadTask oldest = queue.poll();
+                        if (oldest != null && oldest.tryTransition(MainThreadTask.STATE_DROPPED)) {
+                            droppedTasks.incrementAndGet();
+                            oldest.discard(DiscardReason.DROPPED);
+                        }
+                    }
+                    return true;
+                }
+            }
+            case BLOCK -> {
+                // Main Thread не может ждать сам себя - для него BLOCK равносильно REJECT
+                if (Thread.currentThread() != consumerThread) {
+                    long deadline = System.nanoTime() + MAX_BLOCK_NANOS;
+                    while (System.nanoTime() < deadline) {
+                        LockSupport.parkNanos(50_000L);
+                        if (queue.offer(task)) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            case REJECT -> {
+                // Просто отклоняем
+            }
+        }
+        
+        rejectedTasks.incrementAndGet();
+        return false;
     }
     
     // === ОБРАБОТКА В MAIN THREAD ===
@@ -172,114 +497,267 @@ public class MainThreadSynchronizer {
     public void onServerTick(ServerTickEvent.Pre event) {
         if (!isRunning.get()) return;
         
+        consumerThread = Thread.currentThread();
         long currentTime = System.currentTimeMillis();
+        long tickStartNanos = System.nanoTime();
+        long deadlineNanos = tickStartNanos + tickBudgetNanos;
         int processedThisTick = 0;
+        highPrioritySpentNanos = 0;
+        resetClock(tickStartNanos);
         
         try {
-            // WEIGHTED ROUND-ROBIN: Пополняем кредиты в начале каждого тика
+            // WEIGHTED ROUND-ROBIN: Пополняем кредиты в начале каждого тика (с учётом перенесённых)
             replenishCredits();
+            int highProcessed = 0;
+            int normalProcessed = 0;
+            int lowProcessed = 0;
             
-            // Обрабатываем задачи в Round-Robin порядке пока есть кредиты
-            int totalCredits = highPriorityCredits + normalPriorityCredits + lowPriorityCredits;
-            int iterations = 0;
-            final int MAX_ITERATIONS = 20; // Защита от бесконечного цикла
-            
-            while (totalCredits > 0 && iterations < MAX_ITERATIONS) {
+            // Обрабатываем задачи в Round-Robin порядке пока есть бюджет времени и задачи
+            while (true) {
                 boolean taskProcessed = false;
                 
-                // Обрабатываем HIGH priority если есть кредиты и задачи
-                if (highPriorityCredits > 0 && !highPriorityTasks.isEmpty()) {
-                    int processed = processTasks(highPriorityTasks, 1, "HIGH");
+                // Обрабатываем HIGH priority если есть кредиты и задачи (с учётом гарантированного резерва)
+                if (highPriorityCredits > 0 && !highPriorityTasks.isEmpty() && hasHighPriorityBudget(deadlineNanos)) {
+                    int processed = processTasks(highPriorityTasks, 1, "HIGH", deadlineNanos);
                     if (processed > 0) {
                         highPriorityCredits--;
-                        processedThisTick++;
+                        highProcessed++;
                         taskProcessed = true;
                     }
                 }
                 
                 // Обрабатываем NORMAL priority если есть кредиты и задачи  
-                if (normalPriorityCredits > 0 && !normalPriorityTasks.isEmpty()) {
-                    int processed = processTasks(normalPriorityTasks, 1, "NORMAL");
+                if (normalPriorityCredits > 0 && !normalPriorityTasks.isEmpty() && clockNanos < deadlineNanos) {
+                    int processed = processTasks(normalPriorityTasks, 1, "NORMAL", deadlineNanos);
                     if (processed > 0) {
                         normalPriorityCredits--;
-                        processedThisTick++;
+                        normalProcessed++;
                         taskProcessed = true;
                     }
                 }
                 
                 // Обрабатываем LOW priority если есть кредиты и задачи
-                if (lowPriorityCredits > 0 && !lowPriorityTasks.isEmpty()) {
-                    int processed = processTasks(lowPriorityTasks, 1, "LOW");
+                if (lowPriorityCredits > 0 && !lowPriorityTasks.isEmpty() && clockNanos < deadlineNanos) {
+                    int processed = processTasks(lowPriorityTasks, 1, "LOW", deadlineNanos);
                     if (processed > 0) {
                         lowPriorityCredits--;
-                        processedThisTick++;
+                        lowProcessed++;
                         taskProcessed = true;
                     }
                 }
                 
-                // Пересчитываем общие кредиты
-                totalCredits = highPriorityCredits + normalPriorityCredits + lowPriorityCredits;
+                int totalCredits = highPriorityCredits + normalPriorityCredits + lowPriorityCredits;
+                if (taskProcessed && totalCredits > 0) {
+                    continue;
+                }
                 
-                // Если ни одной задачи не обработано, выходим (все очереди пусты)
-                if (!taskProcessed) {
+                // Кредиты раунда кончились (или остались только у пустых очередей): если бюджет
+                // ещё есть, а задачи ждут, начинаем новый раунд WRR вместо того, чтобы ждать тика
+                advanceClock(System.nanoTime());
+                if (clockNanos >= deadlineNanos || getTotalPendingTasks() == 0) {
                     break;
                 }
-                
-                iterations++;
+                startNextRound();
             }
+            processedThisTick = highProcessed + normalProcessed + lowProcessed;
             
-            // CREDIT REDISTRIBUTION: Перераспределяем неиспользованные кредиты
-            redistributeUnusedCredits();
+            // Закрываем окно невыборочных задач: дальше нужны точные часы
+            advanceClock(System.nanoTime());
+            boolean budgetExhausted = clockNanos >= deadlineNanos;
             
-            if (processedThisTick > 0) {
-                System.out.println("WRR Cycle " + roundRobinCycle + ": processed " + processedThisTick + 
-                                 " tasks (HIGH:" + (highPriorityWeight - highPriorityCredits) + 
-                                 ", NORMAL:" + (normalPriorityWeight - normalPriorityCredits) + 
-                                 ", LOW:" + (lowPriorityWeight - lowPriorityCredits) + ")");
+            // CREDIT REDISTRIBUTION: Перераспределяем неиспользованные кредиты, пока есть бюджет
+            if (!budgetExhausted) {
+                processedThisTick += redistributeUnusedCredits(deadlineNanos);
+                advanceClock(System.nanoTime());
+                budgetExhausted = clockNanos >= deadlineNanos;
+            }
+            
+            if (budgetExhausted) {
+                budgetExhaustedTicks.incrementAndGet();
+            }
+            
+            // CARRY-OVER: Кредиты очередей с оставшимися задачами переносятся на следующий тик
+            carryOverCredits();
+            
+            // Учитываем отложенные задачи по модулям
+            highPriorityTasks.recordDeferred();
+            normalPriorityTasks.recordDeferred();
+            lowPriorityTasks.recordDeferred();
+            
+            if (processedThisTick > 0 && LOGGER.isDebugEnabled()) {
+                LOGGER.debug("WRR Cycle {}: processed {} tasks (HIGH:{}, NORMAL:{}, LOW:{}){}",
+                        roundRobinCycle, processedThisTick,
+                        highProcessed, normalProcessed, lowProcessed,
+                        budgetExhausted ? " [budget exhausted, " + getTotalPendingTasks() + " deferred]" : "");
             }
             
         } catch (Exception e) {
-            System.err.println("Error in MainThreadSynchronizer tick processing: " + e.getMessage());
-            e.printStackTrace();
+            LOGGER.error("Error in MainThreadSynchronizer tick processing", e);
         }
         
         // Обновляем статистику
         totalTasksProcessed.addAndGet(processedThisTick);
         tasksPerTick.set(processedThisTick);
+        lastTickExecutionNanos = clockNanos - tickStartNanos;
         lastTickTime = currentTime;
     }
     
     /**
-     * Обработать задачи из конкретной очереди
+     * Может ли HIGH очередь выполнить ещё одну задачу в этом тике:
+     * либо общий бюджет ещё не исчерпан, либо HIGH не израсходовала свой гарантированный резерв
+     */
+    private boolean hasHighPriorityBudget(long deadlineNanos) {
+        return clockNanos < deadlineNanos || highPrioritySpentNanos < highPriorityReserveNanos;
+    }
+    
+    /**
+     * Обработать задачи из конкретной очереди, не выходя за бюджет времени тика
      */
-    private int processTasks(ConcurrentLinkedQueue<MainThreadTask> queue, int maxTasks, String priorityName) {
+    private int processTasks(PriorityLane<MainThreadTask> queue, int maxTasks, String priorityName, long deadlineNanos) {
         int processed = 0;
-        MainThreadTask task;
+        boolean isHigh = queue == highPriorityTasks;
         
-        while ((task = queue.poll()) != null && processed < maxTasks) {
+        while (processed < maxTasks) {
+            // Часы читаются выборочно: окно не длиннее, чем помещается в остаток бюджета
+            boolean measureEachTask = shouldMeasureEachTask(deadlineNanos);
+            if (measureEachTask || clockWindowSize >= TIMING_SAMPLE_INTERVAL) {
+                advanceClock(System.nanoTime());
+                measureEachTask = shouldMeasureEachTask(deadlineNanos);
+            }
+            
+            // Бюджет исчерпан - оставшиеся задачи остаются в очереди до следующего тика
+            if (clockNanos >= deadlineNanos && !(isHigh && highPrioritySpentNanos < highPriorityReserveNanos)) {
+                break;
+            }
+            
+            MainThreadTask task = queue.poll();
+            if (task == null) {
+                break;
+            }
+            
+            // Вытесненные более новой версией и устаревшие задачи пропускаем без траты кредитов
+            if (!claimForExecution(task, clockNanos)) {
+                continue;
+            }
+            
             try {
-                long startTime = System.nanoTime();
-                
                 // ВЫПОЛНЯЕМ В MAIN THREAD - здесь безопасно использовать Minecraft API
                 task.getTask().run();
-                
-                long duration = System.nanoTime() - startTime;
-                processed++;
-                
-                // Логируем только медленные задачи
-                if (duration > 1_000_000) { // > 1ms
-                    System.out.println("Executed " + priorityName + " task '" + task.getName() + 
-                                     "' in " + (duration / 1_000_000.0) + "ms");
-                }
-                
             } catch (Exception e) {
-                System.err.println("Error executing " + priorityName + " task '" + task.getName() + "': " + e.getMessage());
+                LOGGER.error("Error executing {} task '{}'", priorityName, task.getName(), e);
+            } finally {
+                if (task.getCoalescingKey() != null) {
+                    latestByCoalescingKey.remove(task.getCoalescingKey(), task);
+                }
+            }
+            
+            processed++;
+            task.getModule().recordExecuted();
+            
+            clockWindow[clockWindowSize++] = task;
+            if (isHigh) {
+                highTasksInClockWindow++;
+            }
+            
+            // Дорогие задачи и задачи вблизи дедлайна замеряются индивидуально (окно из одной задачи)
+            if (measureEachTask) {
+                advanceClock(System.nanoTime());
             }
         }
         
         return processed;
     }
     
+    /**
+     * Читать ли часы после каждой задачи: вблизи дедлайна или когда окно из
+     * TIMING_SAMPLE_INTERVAL задач по текущей оценке стоимости не помещается в остаток бюджета
+     */
+    private boolean shouldMeasureEachTask(long deadlineNanos) {
+        long remainingNanos = deadlineNanos - clockNanos;
+        return remainingNanos < NEAR_EXHAUSTION_NANOS 
+            || taskCostEstimateNanos * TIMING_SAMPLE_INTERVAL >= remainingNanos;
+    }
+    
+    /**
+     * Начать новый тик на выборочных часах
+     */
+    private void resetClock(long nowNanos) {
+        clockNanos = nowNanos;
+        clearClockWindow();
+    }
+    
+    /**
+     * Продвинуть выборочные часы и закрыть окно задач, выполненных с прошлого чтения
+     * 
+     * Время окна распределяется между HIGH и остальными задачами пропорционально их числу
+     * (для резерва HIGH). Окно из одной задачи - это точный замер; если окно медленное,
+     * его задачи попадают в сводку SlowTaskReport, каждая со своей долей времени окна.
+     * Средняя стоимость задачи в окне обновляет оценку, по которой выбирается размер окна.
+     */
+    private void advanceClock(long nowNanos) {
+        int windowSize = clockWindowSize;
+        if (windowSize > 0) {
+            long windowNanos = nowNanos - clockNanos;
+            
+            if (highTasksInClockWindow > 0) {
+                highPrioritySpentNanos += windowNanos * highTasksInClockWindow / windowSize;
+            }
+            
+            // Дорогое окно сразу переключает на замер каждой задачи, дешёвые возвращают окна постепенно
+            long averageNanos = windowNanos / windowSize;
+            taskCostEstimateNanos = averageNanos >= taskCostEstimateNanos 
+                ? averageNanos 
+                : taskCostEstimateNanos - (taskCostEstimateNanos - averageNanos) / 4;
+            
+            if (windowNanos >= SLOW_TASK_THRESHOLD_NANOS) {
+                if (windowSize == 1) {
+                    MainThreadTask task = clockWindow[0];
+                    slowTaskReport.record(task.getName(), task.getPriority().name(), windowNanos);
+                } else {
+                    for (int i = 0; i < windowSize; i++) {
+                        MainThreadTask task = clockWindow[i];
+                        slowTaskReport.recordSlowWindow(task.getName(), task.getPriority().name(), averageNanos);
+                    }
+                }
+            }
+            clearClockWindow();
+        }
+        clockNanos = nowNanos;
+    }
+    
+    private void clearClockWindow() {
+        for (int i = 0; i < clockWindowSize; i++) {
+            clockWindow[i] = null;
+        }
+        clockWindowSize = 0;
+        highTasksInClockWindow = 0;
+    }
+    
+    /**
+     * Захватить задачу для выполнения
+     * @return false если задача уже вытеснена/устарела и выполнять её не нужно
+     */
+    private boolean claimForExecution(MainThreadTask task, long nowNanos) {
+        if (task.isExpired(nowNanos)) {
+            expireTask(task);
+            return false;
+        }
+        return task.tryTransition(MainThreadTask.STATE_EXECUTING);
+    }
+    
+    /**
+     * Пометить задачу устаревшей (её слот освободится при извлечении из очереди)
+     */
+    private void expireTask(MainThreadTask task) {
+        if (task.tryTransition(MainThreadTask.STATE_EXPIRED)) {
+            expiredTasks.incrementAndGet();
+            if (task.getCoalescingKey() != null) {
+                latestByCoalescingKey.remove(task.getCoalescingKey(), task);
+            }
+            task.discard(DiscardReason.EXPIRED);
+        }
+    }
+    
     // === ФОНОВАЯ ОБРАБОТКА ===
     
     /**
@@ -292,6 +770,9 @@ public class MainThreadSynchronizer {
                     // Фоновая обработка: группировка задач, оптимизация очередей и т.д.
                     optimizeTaskQueues();
                     
+                    // Сводка медленных задач Main Thread (не чаще раза в интервал)
+                    slowTaskReport.flushIfDue(System.nanoTime());
+                    
                     // Спим 50ms между итерациями
                     Thread.sleep(50);
                     
@@ -309,14 +790,43 @@ public class MainThreadSynchronizer {
      * Оптимизация очередей задач (фоновый поток)
      */
     private void optimizeTaskQueues() {
-        // TODO: Группировка похожих задач
-        // TODO: Удаление устаревших задач
-        // TODO: Балансировка приоритетов
+        // Группировка/дедупликация: задачи с одинаковым ключом слияния вытесняются уже при постановке
+        // (см. registerCoalescedTask), здесь только чистим ключи задач, которые больше не ожидают выполнения
+        latestByCoalescingKey.values().removeIf(task -> !task.isPending());
+        
+        // Удаление устаревших задач: помечаем NORMAL/LOW задачи с истёкшим сроком,
+        // Main Thread пропустит их без выполнения
+        long now = System.nanoTime();
+        normalPriorityTasks.forEachPending(task -> {
+            if (task.isPending() && task.isExpired(now)) expireTask(task);
+        });
+        lowPriorityTasks.forEachPending(task -> {
+            if (task.isPending() && task.isExpired(now)) expireTask(task);
+        });
+        
+        warnOnOverflow(now);
+    }
+    
+    /**
+     * Предупредить о переполнении (фоновый поток): очереди ограничены, поэтому важны
+     * отвергнутые и вытесненные задачи, а не только длина очередей. Не чаще раза в интервал
+     */
+    private void warnOnOverflow(long nowNanos) {
+        if (lastOverflowWarningNanos != 0 && nowNanos - lastOverflowWarningNanos < OVERFLOW_WARNING_INTERVAL_NANOS) {
+            return;
+        }
         
-        // Пока что простая проверка переполнения
-        if (getTotalPendingTasks() > 1000) {
-            System.err.println("WARNING: MainThreadSynchronizer queue overflow: " + getTotalPendingTasks() + " tasks pending!");
+        int pending = getTotalPendingTasks(); // size() - O(1) счётчик
+        long lostTasks = rejectedTasks.get() + droppedTasks.get();
+        long lostSinceWarning = lostTasks - lostTasksAtLastWarning;
+        if (pending <= OVERFLOW_WARNING_PENDING_TASKS && lostSinceWarning == 0) {
+            return;
         }
+        
+        LOGGER.warn("MainThreadSynchronizer queue overflow: {} tasks pending, {} tasks rejected or dropped since last warning (rejected: {}, dropped: {})",
+                pending, lostSinceWarning, rejectedTasks.get(), droppedTasks.get());
+        lastOverflowWarningNanos = nowNanos;
+        lostTasksAtLastWarning = lostTasks;
     }
     
     // === СТАТИСТИКА И МОНИТОРИНГ ===
@@ -339,10 +849,32 @@ public class MainThreadSynchronizer {
             getNormalPriorityPendingTasks(), 
             getLowPriorityPendingTasks(),
             getTotalTasksProcessed(),
-            getTasksPerTick()
+            getTasksPerTick(),
+            lastTickExecutionNanos,
+            budgetExhaustedTicks.get(),
+            rejectedTasks.get(),
+            droppedTasks.get(),
+            coalescedTasks.get(),
+            expiredTasks.get(),
+            getModuleStats()
         );
     }
     
+    /**
+     * Статистика планирования по модулям: кто сколько выполнил и сколько задач откладывалось
+     */
+    public Map<String, ModuleSchedulingStats> getModuleStats() {
+        Map<String, ModuleSchedulingStats> result = new HashMap<>();
+        for (SchedulerModule module : modules.values()) {
+            result.put(module.getName(), new ModuleSchedulingStats(
+                module.getExecutedTasks(),
+                module.getDeferredTasks(),
+                getPendingTaskCount(module)
+            ));
+        }
+        return result;
+    }
+    
     // === SHUTDOWN ===
     
     public void shutdown() {
@@ -352,10 +884,7 @@ public class MainThreadSynchronizer {
         synchronizerThread.shutdown();
         
         // Очищаем очереди
-        int clearedTasks = highPriorityTasks.size() + normalPriorityTasks.size() + lowPriorityTasks.size();
-        highPriorityTasks.clear();
-        normalPriorityTasks.clear();
-        lowPriorityTasks.clear();
+        int clearedTasks = highPriorityTasks.clear() + normalPriorityTasks.clear() + lowPriorityTasks.clear();
         
         System.out.println("MainThreadSynchronizer shutdown complete. Cleared " + clearedTasks + " pending tasks.");
     }
@@ -367,45 +896,57 @@ public class MainThreadSynchronizer {
      * Вызывается в начале каждого тика
      */
     private void replenishCredits() {
-        highPriorityCredits = highPriorityWeight;
-        normalPriorityCredits = normalPriorityWeight; 
-        lowPriorityCredits = lowPriorityWeight;
+        // Перенесённые с прошлого тика кредиты суммируются с новыми, но не больше MAX_CREDIT_CARRYOVER весов
+        highPriorityCredits = Math.min(highPriorityCredits + highPriorityWeight, highPriorityWeight * MAX_CREDIT_CARRYOVER);
+        normalPriorityCredits = Math.min(normalPriorityCredits + normalPriorityWeight, normalPriorityWeight * MAX_CREDIT_CARRYOVER);
+        lowPriorityCredits = Math.min(lowPriorityCredits + lowPriorityWeight, lowPriorityWeight * MAX_CREDIT_CARRYOVER);
         
         roundRobinCycle++;
         
         // Отладочный вывод каждые 100 циклов
         if (roundRobinCycle % 100 == 0) {
-            System.out.println("WRR: Starting cycle " + roundRobinCycle + 
-                             " with credits HIGH:" + highPriorityCredits + 
-                             ", NORMAL:" + normalPriorityCredits + 
-                             ", LOW:" + lowPriorityCredits);
+            LOGGER.debug("WRR: Starting cycle {} with credits HIGH:{}, NORMAL:{}, LOW:{}",
+                    roundRobinCycle, highPriorityCredits, normalPriorityCredits, lowPriorityCredits);
         }
     }
     
+    /**
+     * Начать следующий раунд WRR внутри тика (бюджет ещё есть, а кредиты раунда кончились).
+     * Пустые очереди теряют остаток кредитов, остальные получают полный вес сверху;
+     * ограничение MAX_CREDIT_CARRYOVER применяется только к переносу на следующий тик
+     */
+    private void startNextRound() {
+        highPriorityCredits = (highPriorityTasks.isEmpty() ? 0 : highPriorityCredits) + highPriorityWeight;
+        normalPriorityCredits = (normalPriorityTasks.isEmpty() ? 0 : normalPriorityCredits) + normalPriorityWeight;
+        lowPriorityCredits = (lowPriorityTasks.isEmpty() ? 0 : lowPriorityCredits) + lowPriorityWeight;
+    }
+    
     /**
      * Перераспределить неиспользованные кредиты между доступными очередями
-     * Вызывается после основного Round-Robin цикла
+     * Вызывается после основного Round-Robin цикла, только если остался бюджет времени
+     * 
+     * @return количество задач, обработанных за счёт перераспределённых кредитов
      */
-    private void redistributeUnusedCredits() {
-        // Собираем неиспользованные кредиты
-        int unusedCredits = highPriorityCredits + normalPriorityCredits + lowPriorityCredits;
-        if (unusedCredits == 0) {
-            return; // Нет неиспользованных кредитов
-        }
-        
-        // Определяем какие очереди имеют задачи
+    private int redistributeUnusedCredits(long deadlineNanos) {
+        // Неиспользованными считаются только кредиты очередей без задач
         boolean hasHighTasks = !highPriorityTasks.isEmpty();
         boolean hasNormalTasks = !normalPriorityTasks.isEmpty();
         boolean hasLowTasks = !lowPriorityTasks.isEmpty();
         
+        int unusedCredits = (hasHighTasks ? 0 : highPriorityCredits) 
+                          + (hasNormalTasks ? 0 : normalPriorityCredits) 
+                          + (hasLowTasks ? 0 : lowPriorityCredits);
+        if (unusedCredits == 0) {
+            return 0; // Нет неиспользованных кредитов
+        }
+        
         int availableQueues = (hasHighTasks ? 1 : 0) + (hasNormalTasks ? 1 : 0) + (hasLowTasks ? 1 : 0);
         
         if (availableQueues == 0) {
-            return; // Нет задач для обработки
+            return 0; // Нет задач для обработки
         }
         
-        System.out.println("CREDIT REDISTRIBUTION: " + unusedCredits + " unused credits, " + 
-                         availableQueues + " queues with tasks");
+        LOGGER.debug("CREDIT REDISTRIBUTION: {} unused credits, {} queues with tasks", unusedCredits, availableQueues);
         
         int processedInRedistribution = 0;
         
@@ -418,9 +959,9 @@ public class MainThreadSynchronizer {
             int extraHigh = creditsPerQueue + (remainingCredits > 0 ? 1 : 0);
             if (remainingCredits > 0) remainingCredits--;
             
-            int processed = processTasks(highPriorityTasks, extraHigh, "HIGH (redistributed)");
+            int processed = processTasks(highPriorityTasks, extraHigh, "HIGH (redistributed)", deadlineNanos);
             processedInRedistribution += processed;
-            System.out.println("HIGH: used " + processed + "/" + extraHigh + " redistributed credits");
+            LOGGER.debug("HIGH: used {}/{} redistributed credits", processed, extraHigh);
         }
         
         // NORMAL priority получает дополнительные кредиты если есть задачи
@@ -428,29 +969,42 @@ public class MainThreadSynchronizer {
             int extraNormal = creditsPerQueue + (remainingCredits > 0 ? 1 : 0);
             if (remainingCredits > 0) remainingCredits--;
             
-            int processed = processTasks(normalPriorityTasks, extraNormal, "NORMAL (redistributed)");
+            int processed = processTasks(normalPriorityTasks, extraNormal, "NORMAL (redistributed)", deadlineNanos);
             processedInRedistribution += processed;
-            System.out.println("NORMAL: used " + processed + "/" + extraNormal + " redistributed credits");
+            LOGGER.debug("NORMAL: used {}/{} redistributed credits", processed, extraNormal);
         }
         
         // LOW priority получает дополнительные кредиты если есть задачи
         if (hasLowTasks && creditsPerQueue > 0) {
             int extraLow = creditsPerQueue + (remainingCredits > 0 ? 1 : 0);
             
-            int processed = processTasks(lowPriorityTasks, extraLow, "LOW (redistributed)");
+            int processed = processTasks(lowPriorityTasks, extraLow, "LOW (redistributed)", deadlineNanos);
             processedInRedistribution += processed;
-            System.out.println("LOW: used " + processed + "/" + extraLow + " redistributed credits");
+            LOGGER.debug("LOW: used {}/{} redistributed credits", processed, extraLow);
         }
         
-        // Обнуляем все кредиты после перераспределения
-        highPriorityCredits = 0;
-        normalPriorityCredits = 0;
-        lowPriorityCredits = 0;
+        // Кредиты пустых очередей израсходованы перераспределением
+        if (!hasHighTasks) highPriorityCredits = 0;
+        if (!hasNormalTasks) normalPriorityCredits = 0;
+        if (!hasLowTasks) lowPriorityCredits = 0;
         
         if (processedInRedistribution > 0) {
-            System.out.println("CREDIT REDISTRIBUTION: processed " + processedInRedistribution + 
-                             " additional tasks using unused credits");
+            LOGGER.debug("CREDIT REDISTRIBUTION: processed {} additional tasks using unused credits", processedInRedistribution);
         }
+        
+        return processedInRedistribution;
+    }
+    
+    /**
+     * Перенести неизрасходованные кредиты на следующий тик
+     * Кредит сохраняется только у очередей, в которых остались задачи (бюджет кончился раньше кредитов),
+     * и не больше MAX_CREDIT_CARRYOVER весов; пустые очереди не копят кредит,
+     * иначе после простоя они монополизировали бы тик
+     */
+    private void carryOverCredits() {
+        highPriorityCredits = highPriorityTasks.isEmpty() ? 0 : Math.min(highPriorityCredits, highPriorityWeight * MAX_CREDIT_CARRYOVER);
+        normalPriorityCredits = normalPriorityTasks.isEmpty() ? 0 : Math.min(normalPriorityCredits, normalPriorityWeight * MAX_CREDIT_CARRYOVER);
+        lowPriorityCredits = lowPriorityTasks.isEmpty() ? 0 : Math.min(lowPriorityCredits, lowPriorityWeight * MAX_CREDIT_CARRYOVER);
     }
     
     // === КОНФИГУРИРОВАНИЕ ВЕСОВ ===
@@ -484,6 +1038,35 @@ public class MainThreadSynchronizer {
         configureWeights(5, 3, 1);
     }
     
+    /**
+     * Установить бюджет времени Main Thread на тик
+     * @param budgetNanos Общий бюджет на обработку задач за тик (1ms-50ms)
+     * @param highReserveNanos Гарантированный минимум для HIGH задач (0 - budgetNanos)
+     */
+    public void configureTickBudget(long budgetNanos, long highReserveNanos) {
+        budgetNanos = Math.max(1_000_000L, Math.min(50_000_000L, budgetNanos));
+        highReserveNanos = Math.max(0L, Math.min(budgetNanos, highReserveNanos));
+        
+        this.tickBudgetNanos = budgetNanos;
+        this.highPriorityReserveNanos = highReserveNanos;
+        
+        LOGGER.info("Tick budget configured: {}ms (HIGH reserve: {}ms)",
+                budgetNanos / 1_000_000.0, highReserveNanos / 1_000_000.0);
+    }
+    
+    public long getTickBudgetNanos() { return tickBudgetNanos; }
+    public long getHighPriorityReserveNanos() { return highPriorityReserveNanos; }
+    
+    /**
+     * Установить политику переполнения очередей
+     */
+    public void setOverflowPolicy(OverflowPolicy policy) {
+        this.overflowPolicy = policy;
+        LOGGER.info("Queue overflow policy: {}", policy);
+    }
+    
+    public OverflowPolicy getOverflowPolicy() { return overflowPolicy; }
+    
     /**
      * Получить текущие веса
      */
@@ -550,24 +1133,97 @@ public class MainThreadSynchronizer {
         LOW      // Статистика, очистка
     }
     
-    private static class MainThreadTask {
+    /**
+     * Поведение при заполненной очереди
+     */
+    public enum OverflowPolicy {
+        REJECT,          // Отклонить новую задачу
+        DROP_OLDEST_LOW, // LOW очередь вытесняет свою самую старую задачу, HIGH/NORMAL отклоняют
+        BLOCK            // Производитель ждёт места (до MAX_BLOCK_NANOS), Main Thread не блокируется
+    }
+    
+    /**
+     * Почему задача так и не была выполнена
+     */
+    public enum DiscardReason {
+        REJECTED,   // Очередь переполнена, задача не принята
+        DROPPED,    // Вытеснена более новой LOW задачей (DROP_OLDEST_LOW)
+        SUPERSEDED, // Заменена более новой задачей с тем же ключом слияния
+        EXPIRED     // Срок актуальности истёк до выполнения
+    }
+    
+    static class MainThreadTask {
+        // Жизненный цикл задачи: PENDING -> EXECUTING | SUPERSEDED | EXPIRED | DROPPED
+        static final int STATE_PENDING = 0;
+        static final int STATE_EXECUTING = 1;
+        static final int STATE_SUPERSEDED = 2;
+        static final int STATE_EXPIRED = 3;
+        static final int STATE_DROPPED = 4;
+        
+        private static final AtomicIntegerFieldUpdater<MainThreadTask> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(MainThreadTask.class, "state");
+        private static final AtomicLong COALESCING_SEQUENCE = new AtomicLong(0);
+        
         private final String name;
         private final Runnable task;
         private final TaskPriority priority;
+        private final SchedulerModule module;
         private final long creationTime;
+        private final String coalescingKey;
+        private final long deadlineNanos;
+        private final long sequence;
+        private final Consumer<DiscardReason> onDiscard;
+        private volatile int state = STATE_PENDING;
         
-        public MainThreadTask(String name, Runnable task, TaskPriority priority) {
+        public MainThreadTask(String name, Runnable task, TaskPriority priority, SchedulerModule module,
+                              String coalescingKey, long deadlineNanos, Consumer<DiscardReason> onDiscard) {
             this.name = name;
             this.task = task;
             this.priority = priority;
+            this.module = module;
             this.creationTime = System.currentTimeMillis();
+            this.coalescingKey = coalescingKey;
+            this.deadlineNanos = deadlineNanos;
+            // Порядковый номер нужен только для определения "последней версии" при слиянии
+            this.sequence = coalescingKey != null ? COALESCING_SEQUENCE.incrementAndGet() : 0L;
+            this.onDiscard = onDiscard;
         }
         
         public String getName() { return name; }
         public Runnable getTask() { return task; }
         public TaskPriority getPriority() { return priority; }
+        public SchedulerModule getModule() { return module; }
         public long getCreationTime() { return creationTime; }
         public long getAge() { return System.currentTimeMillis() - creationTime; }
+        public String getCoalescingKey() { return coalescingKey; }
+        public long getSequence() { return sequence; }
+        
+        public boolean isPending() { return state == STATE_PENDING; }
+        
+        public boolean isExpired(long nowNanos) {
+            return deadlineNanos != 0L && nowNanos - deadlineNanos > 0;
+        }
+        
+        /**
+         * Перевести задачу из PENDING в новое состояние; выигрывает только один поток
+         */
+        public boolean tryTransition(int newState) {
+            return STATE.compareAndSet(this, STATE_PENDING, newState);
+        }
+        
+        /**
+         * Уведомить владельца, что задача не будет выполнена (вызывается тем, кто выиграл переход)
+         */
+        void discard(DiscardReason reason) {
+            if (onDiscard == null) {
+                return;
+            }
+            try {
+                onDiscard.accept(reason);
+            } catch (Exception e) {
+                LOGGER.error("Discard handler of task '{}' failed", name, e);
+            }
+        }
     }
     
     public record SynchronizerStats(
@@ -576,7 +1232,23 @@ public class MainThreadSynchronizer {
         int normalPriorityPending,
         int lowPriorityPending,
         int totalProcessed,
-        int tasksPerTick
+        int tasksPerTick,
+        long lastTickExecutionNanos,
+        int budgetExhaustedTicks,
+        long rejectedTasks,
+        long droppedTasks,
+        long coalescedTasks,
+        long expiredTasks,
+        Map<String, ModuleSchedulingStats> moduleStats
+    ) {}
+    
+    /**
+     * Статистика планирования одного модуля
+     */
+    public record ModuleSchedulingStats(
+        long executedTasks,
+        long deferredTasks,
+        int pendingTasks
     ) {}
     
     /**
@@ -0,0 +1,234 @@
+package com.example.examplemod.core.threads;
+
+import java.util.function.Consumer;
+
+/**
+ * Полоса одного класса приоритета в MainThreadSynchronizer
+ *
+ * Содержит по одной ограниченной очереди на модуль и выбирает следующую задачу
+ * взвешенным Round-Robin между модулями (второй уровень иерархического WRR):
+ * - Курсор стоит на очереди модуля, пока она не израсходует кредиты (= вес модуля)
+ * - Пустые очереди не копят кредиты
+ * - После полного прохода по всем модулям кредиты пополняются
+ *
+ * Потоки:
+ * - offer/queueFor - любые производители
+ * - poll - только Main Thread (курсор и кредиты не синхронизированы)
+ * - size/forEachPending - любые потоки (приближённо)
+ */
+final class PriorityLane<E> {
+
+    private final MainThreadSynchronizer.TaskPriority priority;
+    private final int moduleQueueCapacity;
+
+    // Copy-on-write массив очередей модулей: новые модули добавляются редко
+    private volatile ModuleQueue<E>[] queues;
+    private final Object queuesLock = new Object();
+
+    // Состояние WRR между модулями (только Main Thread)
+    private int cursor = 0;
+
+    @SuppressWarnings("unchecked")
+    PriorityLane(MainThreadSynchronizer.TaskPriority priority, int moduleQueueCapacity) {
+        this.priority = priority;
+        this.moduleQueueCapacity = moduleQueueCapacity;
+        this.queues = new ModuleQueue[0];
+    }
+
+    MainThreadSynchronizer.TaskPriority getPriority() { return priority; }
+
+    /**
+     * Получить (или лениво создать) очередь модуля в этой полосе
+     * @return null если модуль снят с регистрации - очередь для него больше не создаётся
+     */
+    @SuppressWarnings("unchecked")
+    BoundedTaskQueue<E> queueFor(SchedulerModule module) {
+        for (ModuleQueue<E> queue : queues) {
+            if (queue.module == module) {
+                return queue.tasks;
+            }
+        }
+
+        synchronized (queuesLock) {
+            ModuleQueue<E>[] current = queues;
+            for (ModuleQueue<E> queue : current) {
+                if (queue.module == module) {
+                    return queue.tasks;
+                }
+            }
+            if (module.isRetired()) {
+                return null;
+            }
+
+            ModuleQueue<E>[] updated = new ModuleQueue[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, current.length);
+            ModuleQueue<E> created = new ModuleQueue<>(module, new BoundedTaskQueue<>(moduleQueueCapacity));
+            updated[current.length] = created;
+            queues = updated;
+            return created.tasks;
+        }
+    }
+
+    /**
+     * Убрать очередь модуля из полосы и переложить её задачи в очередь модуля target.
+     * Модуль должен быть уже помечен снятым, иначе queueFor создаст очередь заново
+     *
+     * @param overflow Получает задачи, не поместившиеся в очередь target
+     */
+    @SuppressWarnings("unchecked")
+    void removeModule(SchedulerModule module, SchedulerModule target, Consumer<? super E> overflow) {
+        BoundedTaskQueue<E> removed = null;
+        synchronized (queuesLock) {
+            ModuleQueue<E>[] current = queues;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i].module == module) {
+                    removed = current[i].tasks;
+                    ModuleQueue<E>[] updated = new ModuleQueue[current.length - 1];
+                    System.arraycopy(current, 0, updated, 0, i);
+                    System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                    queues = updated;
+                    break;
+                }
+            }
+        }
+
+        if (removed != null) {
+            transfer(removed, target, overflow);
+        }
+    }
+
+    /**
+     * Переложить все задачи из очереди (обычно уже убранной из полосы) в очередь модуля target.
+     * Безопасно из любого потока: извлечение из BoundedTaskQueue построено на CAS
+     */
+    void transfer(BoundedTaskQueue<E> from, SchedulerModule target, Consumer<? super E> overflow) {
+        BoundedTaskQueue<E> to = queueFor(target);
+        E task;
+        while ((task = from.poll()) != null) {
+            if (!to.offer(task)) {
+                overflow.accept(task);
+            }
+        }
+    }
+
+    /**
+     * Извлечь следующую задачу по WRR между модулями (только Main Thread)
+     * @return null если все очереди модулей пусты
+     */
+    E poll() {
+        ModuleQueue<E>[] snapshot = queues;
+        int count = snapshot.length;
+        if (count == 0) {
+            return null;
+        }
+
+        // Два полных прохода: второй - после пополнения кредитов
+        for (int attempts = 0; attempts <= 2 * count; attempts++) {
+            if (cursor >= count) {
+                cursor = 0;
+                replenishCredits(snapshot);
+            }
+
+            ModuleQueue<E> queue = snapshot[cursor];
+            if (queue.credits > 0) {
+                E task = queue.tasks.poll();
+                if (task != null) {
+                    if (--queue.credits == 0) {
+                        cursor++;
+                    }
+                    return task;
+                }
+                // Пустая очередь не копит кредиты
+                queue.credits = 0;
+            }
+            cursor++;
+        }
+
+        return null;
+    }
+
+    /**
+     * Первая задача в первой непустой очереди модуля (приближение к самой старой)
+     */
+    E peek() {
+        for (ModuleQueue<E> queue : queues) {
+            E task = queue.tasks.peek();
+            if (task != null) {
+                return task;
+            }
+        }
+        return null;
+    }
+
+    int size() {
+        int size = 0;
+        for (ModuleQueue<E> queue : queues) {
+            size += queue.tasks.size();
+        }
+        return size;
+    }
+
+    boolean isEmpty() {
+        for (ModuleQueue<E> queue : queues) {
+            if (!queue.tasks.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void forEachPending(Consumer<? super E> action) {
+        for (ModuleQueue<E> queue : queues) {
+            queue.tasks.forEachPending(action);
+        }
+    }
+
+    /**
+     * Учесть задачи, оставшиеся в очередях модулей на конец тика
+     */
+    void recordDeferred() {
+        for (ModuleQueue<E> queue : queues) {
+            int pending = queue.tasks.size();
+            if (pending > 0) {
+                queue.module.recordDeferred(pending);
+            }
+        }
+    }
+
+    /**
+     * Количество ожидающих задач конкретного модуля в этой полосе
+     */
+    int pendingFor(SchedulerModule module) {
+        for (ModuleQueue<E> queue : queues) {
+            if (queue.module == module) {
+                return queue.tasks.size();
+            }
+        }
+        return 0;
+    }
+
+    int clear() {
+        int cleared = 0;
+        for (ModuleQueue<E> queue : queues) {
+            cleared += queue.tasks.clear();
+        }
+        return cleared;
+    }
+
+    private void replenishCredits(ModuleQueue<E>[] snapshot) {
+        for (ModuleQueue<E> queue : snapshot) {
+            queue.credits = queue.module.getWeight(priority);
+        }
+    }
+
+    private static final class ModuleQueue<E> {
+        final SchedulerModule module;
+        final BoundedTaskQueue<E> tasks;
+        int credits; // Только Main Thread
+
+        ModuleQueue(SchedulerModule module, BoundedTaskQueue<E> tasks) {
+            this.module = module;
+            this.tasks = tasks;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.examplemod.core.threads;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Интернированный дескриптор модуля в MainThreadSynchronizer
+ *
+ * Второй уровень иерархического WRR: внутри каждого класса приоритета (HIGH/NORMAL/LOW)
+ * задачи разных модулей лежат в отдельных очередях и обрабатываются пропорционально
+ * весам модуля. Один "болтливый" модуль не может занять всю NORMAL полосу.
+ *
+ * Экземпляры создаются только через {@link MainThreadSynchronizer#getOrCreateModule(String)},
+ * поэтому для одного имени всегда возвращается один и тот же объект - задачи ссылаются
+ * на модуль напрямую, без разбора имени задачи.
+ */
+public final class SchedulerModule {
+
+    private final String name;
+
+    // Веса модуля внутри каждого класса приоритета (1-10)
+    private volatile int highWeight = 1;
+    private volatile int normalWeight = 1;
+    private volatile int lowWeight = 1;
+
+    // Статистика планирования
+    private final AtomicLong executedTasks = new AtomicLong(0);
+    private final AtomicLong deferredTasks = new AtomicLong(0);
+
+    // Модуль снят с регистрации: его задачи уходят в модуль по умолчанию
+    private volatile boolean retired = false;
+
+    SchedulerModule(String name) {
+        this.name = name;
+    }
+
+    public String getName() { return name; }
+
+    /**
+     * Установить веса модуля (значения ограничиваются диапазоном 1-10)
+     */
+    public void setWeights(int high, int normal, int low) {
+        this.highWeight = clampWeight(high);
+        this.normalWeight = clampWeight(normal);
+        this.lowWeight = clampWeight(low);
+    }
+
+    public int getWeight(MainThreadSynchronizer.TaskPriority priority) {
+        return switch (priority) {
+            case HIGH -> highWeight;
+            case NORMAL -> normalWeight;
+            case LOW -> lowWeight;
+        };
+    }
+
+    /**
+     * Сколько задач модуля выполнено в Main Thread
+     */
+    public long getExecutedTasks() { return executedTasks.get(); }
+
+    /**
+     * Сколько раз задачи модуля оставались в очереди на конец тика (сумма по тикам)
+     */
+    public long getDeferredTasks() { return deferredTasks.get(); }
+
+    /**
+     * Снят ли модуль с регистрации ({@link MainThreadSynchronizer#unregisterModule(SchedulerModule)})
+     */
+    public boolean isRetired() { return retired; }
+
+    void retire() {
+        retired = true;
+    }
+
+    void recordExecuted() {
+        executedTasks.incrementAndGet();
+    }
+
+    void recordDeferred(int count) {
+        deferredTasks.addAndGet(count);
+    }
+
+    private static int clampWeight(int weight) {
+        return Math.max(1, Math.min(10, weight));
+    }
+
+    @Override
+    public String toString() {
+        return "SchedulerModule[" + name + " " + highWeight + ":" + normalWeight + ":" + lowWeight + "]";
+    }
+}
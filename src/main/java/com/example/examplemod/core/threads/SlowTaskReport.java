@@ -0,0 +1,149 @@
+package com.example.examplemod.core.threads;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Агрегированный отчёт о медленных задачах Main Thread
+ *
+ * Main Thread только записывает выборку в агрегат по имени задачи (без логирования и
+ * без форматирования строк), а фоновый поток MainThreadSynchronizer раз в интервал
+ * выводит сводку через SLF4J. Так вывод в лог не стоит Main Thread ни одной миллисекунды,
+ * а поток одинаковых медленных задач превращается в одну строку с количеством.
+ *
+ * Потоки:
+ * - record/recordSlowWindow - только Main Thread
+ * - flushIfDue - только фоновый поток
+ */
+final class SlowTaskReport {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SlowTaskReport.class);
+
+    // Сколько имён задач выводить в одной сводке
+    private static final int MAX_REPORTED_TASKS = 10;
+
+    private final long thresholdNanos;
+    private final long reportIntervalNanos;
+
+    // Текущее окно агрегации; фоновый поток подменяет его целиком при выводе
+    private volatile ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    // Время последней сводки (только фоновый поток)
+    private long lastReportNanos = System.nanoTime();
+
+    private final AtomicLong totalSlowTasks = new AtomicLong(0);
+
+    SlowTaskReport(long thresholdNanos, long reportIntervalNanos) {
+        this.thresholdNanos = thresholdNanos;
+        this.reportIntervalNanos = reportIntervalNanos;
+    }
+
+    long getThresholdNanos() { return thresholdNanos; }
+
+    long getTotalSlowTasks() { return totalSlowTasks.get(); }
+
+    /**
+     * Учесть точно измеренную задачу (выборочный замер)
+     */
+    void record(String taskName, String priorityName, long durationNanos) {
+        if (durationNanos < thresholdNanos) {
+            return;
+        }
+        entry(taskName, priorityName).add(durationNanos, true);
+        totalSlowTasks.incrementAndGet();
+    }
+
+    /**
+     * Учесть задачу из медленного окна без индивидуального замера:
+     * shareNanos - её доля времени окна (время окна, делённое на число задач в нём),
+     * поэтому суммы по задачам не превышают реально потраченного времени
+     */
+    void recordSlowWindow(String taskName, String priorityName, long shareNanos) {
+        entry(taskName, priorityName).add(shareNanos, false);
+    }
+
+    /**
+     * Вывести сводку, если прошёл интервал (фоновый поток)
+     */
+    void flushIfDue(long nowNanos) {
+        if (nowNanos - lastReportNanos < reportIntervalNanos) {
+            return;
+        }
+        lastReportNanos = nowNanos;
+
+        ConcurrentHashMap<String, Entry> snapshot = entries;
+        if (snapshot.isEmpty()) {
+            return;
+        }
+        // Записи, попавшие в старое окно после подмены, теряются - для сводки это допустимо
+        entries = new ConcurrentHashMap<>();
+
+        List<Entry> sorted = new ArrayList<>(snapshot.values());
+        sorted.sort(Comparator.comparingLong((Entry e) -> e.totalNanos.get()).reversed());
+
+        LOGGER.warn("Slow main-thread tasks in the last {}s: {} distinct (threshold {}ms)",
+                reportIntervalNanos / 1_000_000_000L, sorted.size(), thresholdNanos / 1_000_000.0);
+
+        int limit = Math.min(MAX_REPORTED_TASKS, sorted.size());
+        for (int i = 0; i < limit; i++) {
+            Entry entry = sorted.get(i);
+            LOGGER.warn("  {} [{}]: {} measured, {} in slow windows, max {}ms, total {}ms",
+                    entry.taskName, entry.priorityName, entry.measured.get(), entry.windowed.get(),
+                    String.format("%.2f", entry.maxNanos.get() / 1_000_000.0),
+                    String.format("%.2f", entry.totalNanos.get() / 1_000_000.0));
+        }
+    }
+
+    private Entry entry(String taskName, String priorityName) {
+        String key = normalizeTaskName(taskName);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = entries.computeIfAbsent(key, k -> new Entry(k, priorityName));
+        }
+        return entry;
+    }
+
+    /**
+     * Убрать из имени задачи суффикс-идентификатор (например "SpellCore_ApplySpell_1a2b3c4d"),
+     * чтобы задачи одного вида агрегировались вместе
+     */
+    static String normalizeTaskName(String taskName) {
+        int separator = taskName.lastIndexOf('_');
+        if (separator <= 0 || taskName.length() - separator - 1 < 6) {
+            return taskName;
+        }
+
+        for (int i = separator + 1; i < taskName.length(); i++) {
+            if (Character.digit(taskName.charAt(i), 16) < 0 && taskName.charAt(i) != '-') {
+                return taskName;
+            }
+        }
+        return taskName.substring(0, separator) + "_*";
+    }
+
+    private static final class Entry {
+        final String taskName;
+        final String priorityName;
+        final AtomicLong measured = new AtomicLong(0);
+        final AtomicLong windowed = new AtomicLong(0);
+        final AtomicLong totalNanos = new AtomicLong(0);
+        final AtomicLong maxNanos = new AtomicLong(0);
+
+        Entry(String taskName, String priorityName) {
+            this.taskName = taskName;
+            this.priorityName = priorityName;
+        }
+
+        void add(long nanos, boolean exact) {
+            (exact ? measured : windowed).incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.examplemod.mixin;
+
+import com.example.examplemod.core.spells.collision.SectionSnapshotCache;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+/**
+ * Источник всех изменений блоков загруженных чанков для SectionSnapshotCache
+ *
+ * Через LevelChunk.setBlockState проходит любая установка блока в мире - в том числе
+ * без уведомления соседей (флаг 2, /setblock, размещение структур), для которых
+ * NeighborNotifyEvent не срабатывает.
+ */
+@Mixin(LevelChunk.class)
+public abstract class LevelChunkMixin {
+
+    @Inject(method = "setBlockState", at = @At("RETURN"))
+    private void combatmetaphysics$onBlockStateSet(BlockPos pos, BlockState state, int flags,
+                                                   CallbackInfoReturnable<BlockState> cir) {
+        // null - состояние не изменилось
+        if (cir.getReturnValue() == null) {
+            return;
+        }
+        Level level = ((LevelChunk) (Object) this).getLevel();
+        if (!level.isClientSide()) {
+            SectionSnapshotCache.onBlockChanged(level, pos, state);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.examplemod.core.formula;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * FormulaOptimizer: порядок слотов общих подвыражений в прологе
+ */
+class FormulaOptimizerTest {
+
+    private static final FormulaNode X = variable("x");
+    private static final FormulaNode Y = variable("y");
+
+    @Test
+    void innerSharedSubexpressionIsComputedBeforeOuter() {
+        // sqrt(x + y) * sqrt(x + y) + (x + y)
+        FormulaNode sum = new FormulaNode.Add(X, Y);
+        FormulaNode root = new FormulaNode.Add(
+            new FormulaNode.Multiply(sqrt(sum), sqrt(new FormulaNode.Add(X, Y))),
+            new FormulaNode.Add(X, Y));
+
+        FormulaOptimizer.Result result = new FormulaOptimizer(Map.of()).optimize(root);
+        FormulaNode.Shared[] shared = result.shared();
+
+        assertEquals(2, shared.length);
+        assertEquals(sum.toString(), shared[0].definition.toString());
+        assertTrue(shared[1].definition.toString().contains(shared[0].name),
+            "внешнее подвыражение должно читать слот внутреннего: " + shared[1].definition);
+        assertNotEquals(shared[0].slot, shared[1].slot);
+
+        assertEquals(root.evaluate(frame(shared, 3.0, 6.0)), evaluate(result, 3.0, 6.0), 1e-12);
+    }
+
+    @Test
+    void sharedSlotsFollowPrologueOrder() {
+        // (x * y) и (x * y + 1) оба используются дважды
+        FormulaNode product = new FormulaNode.Multiply(X, Y);
+        FormulaNode shifted = new FormulaNode.Add(product, new FormulaNode.Constant(1.0));
+        FormulaNode root = new FormulaNode.Add(
+            new FormulaNode.Divide(shifted, new FormulaNode.Add(new FormulaNode.Multiply(X, Y), new FormulaNode.Constant(1.0))),
+            new FormulaNode.Subtract(new FormulaNode.Multiply(X, Y), X));
+
+        FormulaOptimizer.Result result = new FormulaOptimizer(Map.of()).optimize(root);
+        FormulaNode.Shared[] shared = result.shared();
+
+        assertEquals(2, shared.length);
+        for (int i = 0; i < shared.length; i++) {
+            assertEquals("$t" + i, shared[i].name);
+            assertEquals(FormulaVariables.slotOf(shared[i].name), shared[i].slot);
+        }
+        assertEquals(product.toString(), shared[0].definition.toString());
+
+        assertEquals(root.evaluate(frame(shared, 2.0, 5.0)), evaluate(result, 2.0, 5.0), 1e-12);
+    }
+
+    @Test
+    void leavesAreNotShared() {
+        FormulaNode root = new FormulaNode.Multiply(new FormulaNode.Add(X, X), X);
+
+        FormulaOptimizer.Result result = new FormulaOptimizer(Map.of()).optimize(root);
+
+        assertEquals(0, result.shared().length);
+    }
+
+    @Test
+    void constantsAreSubstitutedAndFolded() {
+        FormulaNode root = new FormulaNode.Add(
+            new FormulaNode.Multiply(variable("scale"), new FormulaNode.Constant(2.0)),
+            new FormulaNode.Constant(1.0));
+
+        FormulaOptimizer.Result result = new FormulaOptimizer(Map.of("scale", 3.0)).optimize(root);
+
+        FormulaNode.Constant folded = assertInstanceOf(FormulaNode.Constant.class, result.root());
+        assertEquals(7.0, folded.value);
+    }
+
+    private static FormulaNode variable(String name) {
+        return new FormulaNode.Variable(name, FormulaVariables.slotOf(name));
+    }
+
+    private static FormulaNode sqrt(FormulaNode argument) {
+        return new FormulaNode.Call("sqrt", Math::sqrt, argument);
+    }
+
+    /**
+     * Выполнить пролог в порядке массива shared, затем корень - как CompiledFormula
+     */
+    private static double evaluate(FormulaOptimizer.Result result, double x, double y) {
+        double[] frame = frame(result.shared(), x, y);
+        for (FormulaNode.Shared node : result.shared()) {
+            frame[node.slot] = node.definition.evaluate(frame);
+        }
+        return result.root().evaluate(frame);
+    }
+
+    private static double[] frame(FormulaNode.Shared[] shared, double x, double y) {
+        int size = FormulaVariables.size();
+        for (FormulaNode.Shared node : shared) {
+            size = Math.max(size, node.slot + 1);
+        }
+        double[] frame = new double[size];
+        frame[FormulaVariables.slotOf("x")] = x;
+        frame[FormulaVariables.slotOf("y")] = y;
+        return frame;
+    }
+}
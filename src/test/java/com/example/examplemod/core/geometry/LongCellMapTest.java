@@ -0,0 +1,121 @@
+package com.example.examplemod.core.geometry;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * LongCellMap: перестроение таблицы и повтор CAS при гонке писателей (однопоточно)
+ */
+class LongCellMapTest {
+
+    @Test
+    void packKeepsNegativeCoordinatesDistinct() {
+        long origin = LongCellMap.pack(0, 0, 0);
+        long negative = LongCellMap.pack(-1, -1, -1);
+        long positive = LongCellMap.pack(1, 1, 1);
+
+        assertEquals(3, List.of(origin, negative, positive).stream().distinct().count());
+        assertEquals(0L, negative >>> 63, "упакованный ключ не должен совпасть с EMPTY_KEY");
+    }
+
+    @Test
+    void rebuildKeepsLiveCellsAndDropsReleasedOnes() {
+        LongCellMap<String> map = new LongCellMap<>();
+
+        // Больше порога начальной таблицы (64 / 2): по пути произойдёт перестроение
+        for (int i = 0; i < 100; i++) {
+            int cell = i;
+            map.compute(LongCellMap.pack(cell, 0, 0), current -> "cell" + cell);
+        }
+        for (int i = 0; i < 100; i += 2) {
+            map.compute(LongCellMap.pack(i, 0, 0), current -> null);
+        }
+
+        // Ещё одна волна новых ключей заставляет перестроить таблицу с освобождёнными ячейками
+        for (int i = 100; i < 200; i++) {
+            int cell = i;
+            map.compute(LongCellMap.pack(cell, 0, 0), current -> "cell" + cell);
+        }
+
+        for (int i = 0; i < 200; i++) {
+            String value = map.get(LongCellMap.pack(i, 0, 0));
+            if (i < 100 && i % 2 == 0) {
+                assertNull(value, "освобождённая ячейка " + i);
+            } else {
+                assertEquals("cell" + i, value);
+            }
+        }
+
+        List<String> values = new ArrayList<>();
+        map.forEachValue(values::add);
+        assertEquals(150, values.size());
+    }
+
+    @Test
+    void releasedCellsAreDroppedOnRebuild() {
+        LongCellMap<Integer> map = new LongCellMap<>();
+
+        // Каждая ячейка живёт недолго: занятые ключи копятся, перестроение их выбрасывает
+        for (int i = 0; i < 10_000; i++) {
+            long key = LongCellMap.pack(i, i, -i);
+            map.compute(key, current -> 1);
+            map.compute(key, current -> null);
+        }
+        map.compute(LongCellMap.pack(7, 7, 7), current -> 42);
+
+        List<Integer> values = new ArrayList<>();
+        map.forEachValue(values::add);
+        assertEquals(List.of(42), values);
+    }
+
+    @Test
+    void computeReappliesRemappingWhenValueChangedConcurrently() {
+        LongCellMap<Integer> map = new LongCellMap<>();
+        long key = LongCellMap.pack(3, 4, 5);
+        map.compute(key, current -> 1);
+
+        // Вложенная запись в тот же слот имитирует писателя, опередившего CAS
+        int[] calls = {0};
+        Integer result = map.compute(key, current -> {
+            if (calls[0]++ == 0) {
+                map.compute(key, inner -> inner + 10);
+            }
+            return current + 1;
+        });
+
+        assertEquals(2, calls[0], "функция должна быть вызвана повторно с новым значением");
+        assertEquals(12, result);
+        assertEquals(12, map.get(key));
+    }
+
+    @Test
+    void computeIfPresentDoesNotClaimMissingCells() {
+        LongCellMap<String> map = new LongCellMap<>();
+        long key = LongCellMap.pack(1, 2, 3);
+
+        assertNull(map.computeIfPresent(key, current -> "value"));
+        assertNull(map.get(key));
+
+        map.compute(key, current -> "value");
+        assertEquals("value!", map.computeIfPresent(key, current -> current + "!"));
+    }
+
+    @Test
+    void clearDropsAllCells() {
+        LongCellMap<String> map = new LongCellMap<>();
+        for (int i = 0; i < 50; i++) {
+            map.compute(LongCellMap.pack(0, i, 0), current -> "value");
+        }
+        map.clear();
+
+        List<String> values = new ArrayList<>();
+        map.forEachValue(values::add);
+        assertEquals(0, values.size());
+        assertNull(map.get(LongCellMap.pack(0, 1, 0)));
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.examplemod.core.geometry;
+
+import com.example.examplemod.core.geometry.SpatialIndex.SpellDistance;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * NearestSpells: отбор k ближайших и неограниченный maxCount
+ */
+class NearestSpellsTest {
+
+    @Test
+    void keepsClosestCandidatesInAscendingOrder() {
+        NearestSpells nearest = new NearestSpells(3);
+        double[] distances = { 5.0, 1.0, 4.0, 2.0, 3.0 };
+        for (double distance : distances) {
+            nearest.offer(UUID.randomUUID(), distance);
+        }
+
+        assertTrue(nearest.isFull());
+        assertEquals(3.0, nearest.worstDistance());
+
+        List<SpellDistance> sorted = nearest.drainSorted();
+        assertEquals(List.of(1.0, 2.0, 3.0), sorted.stream().map(SpellDistance::distance).toList());
+    }
+
+    @Test
+    void unboundedMaxCountDoesNotPreallocate() {
+        NearestSpells nearest = new NearestSpells(Integer.MAX_VALUE);
+        for (int i = 100; i > 0; i--) {
+            nearest.offer(UUID.randomUUID(), i);
+        }
+
+        assertFalse(nearest.isFull());
+        List<SpellDistance> sorted = nearest.drainSorted();
+        assertEquals(100, sorted.size());
+        assertEquals(1.0, sorted.get(0).distance());
+        assertEquals(100.0, sorted.get(99).distance());
+    }
+}
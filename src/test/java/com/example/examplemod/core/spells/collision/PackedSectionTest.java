@@ -0,0 +1,98 @@
+package com.example.examplemod.core.spells.collision;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * PackedSection: секция-патч (withChanges) должна совпадать со свежей распаковкой
+ * того же содержимого - на этом держится инкрементальный refresh снепшотов
+ */
+class PackedSectionTest {
+
+    // Канонические состояния, как BlockState: одно состояние - один объект
+    private record State(int id) {}
+
+    private static final Function<State, String> TYPE_OF = state -> "type" + state.id();
+
+    private static State[] states(int count) {
+        State[] states = new State[count];
+        for (int i = 0; i < count; i++) {
+            states[i] = new State(i);
+        }
+        return states;
+    }
+
+    private static void assertSameBlocks(State[] expected, PackedSection<String> actual) {
+        for (int x = 0; x < 16; x++) {
+            for (int y = 0; y < 16; y++) {
+                for (int z = 0; z < 16; z++) {
+                    int index = PackedSection.index(x, y, z);
+                    assertEquals(TYPE_OF.apply(expected[index]), actual.get(x, y, z), "блок " + index);
+                }
+            }
+        }
+    }
+
+    /**
+     * Наложить случайные изменения и сравнить результат со свежей распаковкой
+     */
+    private static void assertPatchMatchesFreshPack(int paletteSize, int changeCount, long seed) {
+        Random random = new Random(seed);
+        State[] palette = states(paletteSize);
+        State[] blocks = new State[PackedSection.SECTION_VOLUME];
+        for (int index = 0; index < blocks.length; index++) {
+            blocks[index] = palette[random.nextInt(Math.min(paletteSize, 8))];
+        }
+        PackedSection<String> base = PackedSection.pack(index -> blocks[index], TYPE_OF);
+
+        List<PackedSection.Change<State>> changes = new ArrayList<>();
+        for (int i = 0; i < changeCount; i++) {
+            int index = random.nextInt(PackedSection.SECTION_VOLUME);
+            State state = palette[random.nextInt(paletteSize)];
+            changes.add(new PackedSection.Change<>(index, state));
+            blocks[index] = state; // Поздние изменения того же блока перекрывают ранние
+        }
+
+        PackedSection<String> patched = base.withChanges(changes, TYPE_OF);
+        PackedSection<String> fresh = PackedSection.pack(index -> blocks[index], TYPE_OF);
+
+        assertSameBlocks(blocks, fresh);
+        assertSameBlocks(blocks, patched);
+    }
+
+    @Test
+    void patchMatchesFreshPackWithSmallPalette() {
+        for (long seed = 0; seed < 20; seed++) {
+            assertPatchMatchesFreshPack(12, 64, seed);
+        }
+    }
+
+    @Test
+    void patchOfUniformSectionMatchesFreshPack() {
+        State[] palette = states(3);
+        State[] blocks = new State[PackedSection.SECTION_VOLUME];
+        Arrays.fill(blocks, palette[0]);
+        PackedSection<String> base = PackedSection.uniform(TYPE_OF.apply(palette[0]));
+
+        List<PackedSection.Change<State>> changes = List.of(
+            new PackedSection.Change<>(PackedSection.index(0, 0, 0), palette[1]),
+            new PackedSection.Change<>(PackedSection.index(15, 15, 15), palette[2]),
+            new PackedSection.Change<>(PackedSection.index(0, 0, 0), palette[0]));
+        blocks[PackedSection.index(15, 15, 15)] = palette[2];
+
+        assertSameBlocks(blocks, base.withChanges(changes, TYPE_OF));
+    }
+
+    @Test
+    void patchGrowingPaletteBeyondByteIndicesMatchesFreshPack() {
+        // Больше 256 типов: секция-патч переходит на short-индексы
+        assertPatchMatchesFreshPack(400, 2000, 42);
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.examplemod.core.threads;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * BoundedTaskQueue: кольцо Вьюкова при многократном переходе через границу буфера
+ */
+class BoundedTaskQueueTest {
+
+    @Test
+    void capacityIsRoundedUpToPowerOfTwo() {
+        assertEquals(4, new BoundedTaskQueue<String>(4).capacity());
+        assertEquals(8, new BoundedTaskQueue<String>(5).capacity());
+        assertEquals(1024, new BoundedTaskQueue<String>(1000).capacity());
+        assertThrows(IllegalArgumentException.class, () -> new BoundedTaskQueue<String>(1));
+    }
+
+    @Test
+    void fillAndDrainAcrossManyWrapArounds() {
+        BoundedTaskQueue<Integer> queue = new BoundedTaskQueue<>(4);
+        int next = 0;
+
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 4; i++) {
+                assertTrue(queue.offer(next + i), "раунд " + round);
+            }
+            assertFalse(queue.offer(-1), "заполненная очередь должна отклонять элементы");
+            assertEquals(4, queue.size());
+
+            for (int i = 0; i < 4; i++) {
+                assertEquals(next + i, queue.poll());
+            }
+            assertNull(queue.poll());
+            assertTrue(queue.isEmpty());
+            next += 4;
+        }
+    }
+
+    @Test
+    void interleavedOfferAndPollKeepFifoOrderOverWrap() {
+        BoundedTaskQueue<Integer> queue = new BoundedTaskQueue<>(4);
+        int produced = 0;
+        int consumed = 0;
+
+        // Голова и хвост всё время в разных местах кольца
+        for (int step = 0; step < 100; step++) {
+            while (queue.offer(produced)) {
+                produced++;
+            }
+            assertEquals(4, queue.size());
+
+            for (int i = 0; i < 1 + step % 3; i++) {
+                assertEquals(consumed++, queue.poll());
+            }
+            assertEquals(produced - consumed, queue.size());
+        }
+    }
+
+    @Test
+    void peekAndForEachPendingSeeWrappedElementsInOrder() {
+        BoundedTaskQueue<String> queue = new BoundedTaskQueue<>(4);
+        for (int i = 0; i < 6; i++) {
+            queue.offer("old" + i);
+            queue.poll();
+        }
+        queue.offer("a");
+        queue.offer("b");
+        queue.offer("c");
+
+        assertEquals("a", queue.peek());
+
+        List<String> pending = new ArrayList<>();
+        queue.forEachPending(pending::add);
+        assertEquals(List.of("a", "b", "c"), pending);
+    }
+
+    @Test
+    void clearReturnsRemovedCountAndFreesSlots() {
+        BoundedTaskQueue<Integer> queue = new BoundedTaskQueue<>(4);
+        for (int i = 0; i < 3; i++) {
+            queue.offer(i);
+        }
+
+        assertEquals(3, queue.clear());
+        assertTrue(queue.isEmpty());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertFalse(queue.offer(4));
+    }
+
+    @Test
+    void offerRejectsNull() {
+        BoundedTaskQueue<String> queue = new BoundedTaskQueue<>(4);
+        assertThrows(NullPointerException.class, () -> queue.offer(null));
+    }
+}